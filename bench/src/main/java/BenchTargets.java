@@ -0,0 +1,57 @@
+import bench.MapTarget;
+
+/**
+ * Adapts the map implementations in the default package to the benchmarks' MapTarget.
+ * @author Yanlin Li
+ */
+public class BenchTargets implements MapTarget.Factory {
+    
+    @Override
+    public MapTarget create(String impl, int size) {
+        switch (impl) {
+            case "LINEAR":
+                return fixedSize(new FixedSizeHashMap<>(size, FixedSizeHashMap.Probing.LINEAR));
+            case "ROBIN_HOOD":
+                return fixedSize(new FixedSizeHashMap<>(size, FixedSizeHashMap.Probing.ROBIN_HOOD));
+            case "LINEAR_SEEDED":
+                return fixedSize(new FixedSizeHashMap<>(size, FixedSizeHashMap.Probing.LINEAR, Hasher.seeded()));
+            case "SWISS":
+                final SwissFixedSizeHashMap<Object> swiss = new SwissFixedSizeHashMap<>(size);
+                return new MapTarget() {
+                    public boolean set(String key, Object value) { return swiss.set(key, value); }
+                    public Object get(String key) { return swiss.get(key); }
+                    public Object delete(String key) { return swiss.delete(key); }
+                };
+            case "SHARDED":
+                final ShardedFixedSizeHashMap<Object> sharded = new ShardedFixedSizeHashMap<>(size, 16,
+                        ShardedFixedSizeHashMap.Overflow.NEIGHBOR, FixedSizeHashMap.Probing.LINEAR, Hasher.MURMUR);
+                return new MapTarget() {
+                    public boolean set(String key, Object value) { return sharded.set(key, value); }
+                    public Object get(String key) { return sharded.get(key); }
+                    public Object delete(String key) { return sharded.delete(key); }
+                };
+            case "CONCURRENT":
+                final ConcurrentFixedSizeHashMap<Object> map = new ConcurrentFixedSizeHashMap<>(size);
+                return new MapTarget() {
+                    public boolean set(String key, Object value) { return map.set(key, value); }
+                    public Object get(String key) { return map.get(key); }
+                    public Object delete(String key) { return map.delete(key); }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown implementation " + impl + ".");
+        }
+    }
+    
+    /**
+     * @param map map to adapt
+     * @return adapter of map
+     */
+    private static MapTarget fixedSize(final FixedSizeHashMap<Object> map) {
+        return new MapTarget() {
+            public boolean set(String key, Object value) { return map.set(key, value); }
+            public Object get(String key) { return map.get(key); }
+            public Object getUtf8(byte[] key, int offset, int length) { return map.getUtf8(key, offset, length); }
+            public Object delete(String key) { return map.delete(key); }
+        };
+    }
+}
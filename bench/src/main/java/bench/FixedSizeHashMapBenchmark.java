@@ -0,0 +1,138 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency of set, get and delete on a map filled to a given load factor.
+ * The default parameters and mode are a quick comparison of the implementations; RunBenchmarks
+ * lists the options for a full sweep.
+ * @author Yanlin Li
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedSizeHashMapBenchmark {
+    
+    /** Length of the precomputed key access sequence, a power of two. */
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+    
+    /** Number of delete-and-insert rounds per slot when churn is enabled. */
+    private static final int CHURN_ROUNDS = 4;
+    
+    /** Map implementation, see MapTarget and BenchTargets. */
+    @Param({"LINEAR", "ROBIN_HOOD", "LINEAR_SEEDED", "SWISS", "CONCURRENT", MapTarget.HASH_MAP})
+    public String impl;
+    
+    /** Fixed size of the map. */
+    @Param({"65536"})
+    public int size;
+    
+    /** Fraction of the map filled with keys. */
+    @Param({"0.75", "0.9"})
+    public double loadFactor;
+    
+    /** Distribution of accessed keys, UNIFORM or ZIPFIAN. */
+    @Param({"UNIFORM"})
+    public String distribution;
+    
+    /** Number of chars of every key. */
+    @Param({"8"})
+    public int keyLength;
+    
+    /** Whether the map went through heavy delete/insert churn, leaving tombstones, before measuring. */
+    @Param({"false"})
+    public boolean churn;
+    
+    private MapTarget map;
+    private String[] present; // keys stored in the map
+    private byte[][] presentBytes; // UTF-8 encodings of the keys stored in the map, as read off the wire
+    private String[] absent; // keys never stored in the map
+    private int[] sequence; // order in which keys are accessed
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(42);
+        final int count = (int) (size * loadFactor);
+        map = MapTarget.create(impl, size);
+        present = Keys.distinct(count, 0, keyLength, random);
+        absent = Keys.distinct(count, count, keyLength, random);
+        for (String key : present) {
+            if (!map.set(key, key)) throw new IllegalStateException("Map is full.");
+        }
+        
+        if (churn) {
+            final String[] fresh = Keys.distinct(size * CHURN_ROUNDS, 2 * count, keyLength, random);
+            for (String key : fresh) {
+                final int victim = random.nextInt(count);
+                map.delete(present[victim]);
+                map.set(key, key);
+                present[victim] = key;
+            }
+        }
+        presentBytes = new byte[count][];
+        for (int i = 0; i < count; i++) presentBytes[i] = present[i].getBytes(StandardCharsets.UTF_8);
+        sequence = Keys.accessSequence(SEQUENCE_LENGTH, count, "ZIPFIAN".equals(distribution), random);
+    }
+    
+    /**
+     * @return index of the next key to access
+     */
+    private int next() {
+        cursor = (cursor + 1) & (SEQUENCE_LENGTH - 1);
+        return sequence[cursor];
+    }
+    
+    @Benchmark
+    public Object getHit() {
+        return map.get(present[next()]);
+    }
+    
+    /**
+     * Looks up a present key given as UTF-8 bytes; run with -prof gc to compare allocation.
+     */
+    @Benchmark
+    public Object getHitUtf8() {
+        final byte[] key = presentBytes[next()];
+        return map.getUtf8(key, 0, key.length);
+    }
+    
+    @Benchmark
+    public Object getMiss() {
+        return map.get(absent[next()]);
+    }
+    
+    @Benchmark
+    public boolean setExisting() {
+        final String key = present[next()];
+        return map.set(key, key);
+    }
+    
+    /**
+     * Deletes a present key and inserts it again, keeping the load factor constant.
+     */
+    @Benchmark
+    public boolean deleteThenSet() {
+        final String key = present[next()];
+        map.delete(key);
+        return map.set(key, key);
+    }
+}
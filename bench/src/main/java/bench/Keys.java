@@ -0,0 +1,89 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * Generates benchmark keys and the order in which they are accessed.
+ * @author Yanlin Li
+ */
+final class Keys {
+    
+    /** Characters random keys are made of. */
+    private static final char[] ALPHABET =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+    
+    /** Skew of the Zipfian distribution; close to 1 like most real key popularity. */
+    private static final double ZIPF_EXPONENT = 0.99;
+    
+    private Keys() {
+    }
+    
+    /**
+     * Makes distinct random keys of the given length. Keys made with the same seed and
+     * different first indices are distinct from each other too.
+     * @param count number of keys
+     * @param first index of the first key, making it distinct from keys with other indices
+     * @param length number of chars of each key, at least 8
+     * @param random source of the random chars
+     * @return keys
+     */
+    static String[] distinct(int count, int first, int length, Random random) {
+        final String[] keys = new String[count];
+        final char[] chars = new char[length];
+        for (int i = 0; i < count; i++) {
+            for (int c = 0; c < length - 8; c++) {
+                chars[c] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            // Last 8 chars encode the index in base 36, making the key unique
+            long index = first + i;
+            for (int c = length - 1; c >= length - 8; c--) {
+                chars[c] = ALPHABET[(int) (index % 36)];
+                index /= 36;
+            }
+            keys[i] = new String(chars);
+        }
+        return keys;
+    }
+    
+    /**
+     * Makes a sequence of indices into an array of keys, drawn uniformly or from a Zipfian
+     * distribution whose popular indices are scattered over the array.
+     * @param length length of the sequence, a power of two
+     * @param count number of keys the indices refer to
+     * @param zipfian true for a Zipfian distribution, false for a uniform one
+     * @param random source of randomness
+     * @return sequence of indices in [0, count)
+     */
+    static int[] accessSequence(int length, int count, boolean zipfian, Random random) {
+        final int[] sequence = new int[length];
+        if (!zipfian) {
+            for (int i = 0; i < length; i++) sequence[i] = random.nextInt(count);
+            return sequence;
+        }
+        
+        final double[] cumulative = new double[count];
+        double total = 0;
+        for (int rank = 0; rank < count; rank++) {
+            total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            cumulative[rank] = total;
+        }
+        final int[] keyOfRank = new int[count]; // random permutation of ranks onto keys
+        for (int i = 0; i < count; i++) {
+            final int j = random.nextInt(i + 1);
+            keyOfRank[i] = keyOfRank[j];
+            keyOfRank[j] = i;
+        }
+        for (int i = 0; i < length; i++) {
+            final double target = random.nextDouble() * total;
+            int low = 0;
+            int high = count - 1;
+            while (low < high) { // first rank whose cumulative weight reaches target
+                final int mid = (low + high) >>> 1;
+                if (cumulative[mid] < target) low = mid + 1;
+                else high = mid;
+            }
+            sequence[i] = keyOfRank[low];
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,83 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The operations benchmarked on every map implementation.
+ * The fixed-size maps live in the default package, which named packages cannot import, so
+ * they are adapted by BenchTargets in the default package and loaded by name.
+ * @author Yanlin Li
+ */
+public interface MapTarget {
+    
+    /** Implementation name of the java.util.HashMap baseline. */
+    String HASH_MAP = "HASH_MAP";
+    
+    /**
+     * @param key key to store
+     * @param value value to store
+     * @return true if the key/value pair was stored
+     */
+    boolean set(String key, Object value);
+    
+    /**
+     * @param key key to look up
+     * @return value of key, or null if absent
+     */
+    Object get(String key);
+    
+    /**
+     * Looks up a key received as UTF-8 bytes. By default the bytes are decoded into a new
+     * String first, as a caller of get(String) has to.
+     * @param key array holding the UTF-8 encoding of the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @return value of key, or null if absent
+     */
+    default Object getUtf8(byte[] key, int offset, int length) {
+        return get(new String(key, offset, length, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * @param key key to delete
+     * @return previous value of key, or null if absent
+     */
+    Object delete(String key);
+    
+    /**
+     * Creates the adapters of the implementations in the default package.
+     */
+    interface Factory {
+        
+        /**
+         * @param impl implementation name
+         * @param size fixed size of the map
+         * @return adapter of a new, empty map
+         */
+        MapTarget create(String impl, int size);
+    }
+    
+    /**
+     * Makes a new, empty map of the named implementation.
+     * @param impl HASH_MAP, or an implementation name known to BenchTargets
+     * @param size fixed size of the map; the baseline is presized to hold as many keys
+     * @return adapter of the new map
+     */
+    static MapTarget create(String impl, int size) {
+        if (HASH_MAP.equals(impl)) {
+            final HashMap<String, Object> map = new HashMap<>(size * 4 / 3 + 1);
+            return new MapTarget() {
+                public boolean set(String key, Object value) { map.put(key, value); return true; }
+                public Object get(String key) { return map.get(key); }
+                public Object delete(String key) { return map.remove(key); }
+            };
+        }
+        try {
+            Factory factory = (Factory) Class.forName("BenchTargets").getDeclaredConstructor().newInstance();
+            return factory.create(impl, size);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load benchmark targets.", e);
+        }
+    }
+}
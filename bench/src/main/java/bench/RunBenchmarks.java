@@ -0,0 +1,48 @@
+package bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line, but writes results
+ * as JSON to jmh-result.json unless another result format or file is given, so every run
+ * leaves a machine-readable record that can be compared with earlier ones.
+ * <p>
+ * By default only throughput is measured, with short keys of uniform popularity at load
+ * factors 0.75 and 0.9 and no churn. A full sweep, with latency percentiles, overrides the
+ * defaults on the command line:
+ * <pre>
+ * java -jar benchmarks.jar -bm thrpt,sample -p loadFactor=0.5,0.75,0.9,0.99
+ *     -p distribution=UNIFORM,ZIPFIAN -p keyLength=8,64 -p churn=false,true
+ * </pre>
+ * @author Yanlin Li
+ */
+public final class RunBenchmarks {
+    
+    /** Default file results are written to. */
+    private static final String RESULT_FILE = "jmh-result.json";
+    
+    private RunBenchmarks() {
+    }
+    
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args); // informational commands run nothing
+            return;
+        }
+        
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (!commandLine.getResult().hasValue()) options.result(RESULT_FILE);
+        new Runner(options.build()).run();
+    }
+}
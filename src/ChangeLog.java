@@ -0,0 +1,349 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded log of the changes made to a FixedSizeHashMap, once enableChangeLog() has been
+ * called on the map, from which followers keep copies of the map up to date.
+ * Every key stored and every key removed, whether deleted, evicted or expired, appends a record
+ * to a ring of bytes allocated up front: its sequence number, whether the key was set or
+ * removed, the key in UTF-8, and for a stored key its value written by a ValueCodec. Appending
+ * writes into the ring in place, so it allocates nothing. Once the ring is full, the oldest
+ * records are overwritten, so a follower that falls too far behind has to start over from a
+ * snapshot of the map.
+ * A follower in the same process applies records straight from the log with applyTo(). One in
+ * another process is sent the records copied by read(), and applies them with apply().
+ * Either way, a follower that restores a snapshot taken when the log's nextSequence() was s,
+ * then applies the records from s on, holds the same key/value pairs as the map at each
+ * record it reaches.
+ * The log is written by the thread using the map, and must be read under the same lock as the
+ * map if other threads use it.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public final class ChangeLog<V> {
+    
+    /** Record layout: length, sequence number, operation, then key and value. */
+    static final int HEADER_BYTES = 13;
+    private static final int SEQUENCE_OFFSET = 4;
+    private static final int OP_OFFSET = 12;
+    
+    /** Operations. */
+    static final byte SET = 1; // key was stored, and its value follows it
+    static final byte DELETE = 2; // key was deleted, evicted or expired
+    
+    /** Length stored where the rest of the lap is padding, up to the end of the ring. */
+    private static final int PADDING = 0;
+    
+    /** Instance variables. */
+    private final byte[] ring; // records, laid end to end and wrapping around
+    private final ByteBuffer buffer; // view of ring that records are written and read through
+    private final ValueCodec<V> codec; // writes values into records
+    private final ByteBuffer scratch; // value of the record being appended, written before any room is made
+    private long head; // number of bytes ever written, counting padding; the next record starts at head % capacity
+    private long tail; // position, counted like head, of the oldest record kept
+    private long firstSequence; // sequence number of the oldest record kept
+    private long nextSequence; // sequence number of the next record appended
+    private long hintSequence; // sequence number of the last record looked up by sequence
+    private long hintPosition; // position of that record
+    
+    /**
+     * Make a new change log.
+     * @param capacity number of bytes of records kept
+     * @param codec writes values into records; it must support every value the map is given
+     */
+    ChangeLog(final int capacity, final ValueCodec<V> codec) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive.");
+        if (codec == null)
+            throw new IllegalArgumentException("Codec cannot be null.");
+        
+        this.ring = new byte[capacity];
+        this.buffer = ByteBuffer.wrap(ring);
+        this.codec = codec;
+        this.scratch = ByteBuffer.allocate(codec.width());
+        this.head = 0;
+        this.tail = 0;
+        this.firstSequence = 0;
+        this.nextSequence = 0;
+        this.hintSequence = -1;
+        this.hintPosition = 0;
+    }
+    
+    /**
+     * Returns the sequence number of the oldest record still in the log. Records before it
+     * have been overwritten.
+     * @return sequence number of the oldest record, or nextSequence() if the log is empty
+     */
+    public long firstSequence() {
+        return firstSequence;
+    }
+    
+    /**
+     * Returns the sequence number the next record will have, which is the number of records
+     * ever appended. A follower that has applied every record is at this sequence number.
+     * @return sequence number of the next record
+     */
+    public long nextSequence() {
+        return nextSequence;
+    }
+    
+    /**
+     * Applies records to a follower map, as set() and delete() calls in the order they were
+     * made on the logged map, starting from the given sequence number.
+     * @param follower map to apply the records to, of the same size as the logged map
+     * @param from sequence number of the first record to apply
+     * @param maxRecords maximum number of records to apply
+     * @return sequence number of the record after the last one applied, to start from next time
+     * @throws IllegalStateException if the record at from has been overwritten, so follower must
+     *         be restored from a snapshot, or if follower is full and cannot store a key
+     */
+    public long applyTo(final FixedSizeHashMap<V> follower, final long from, final int maxRecords) {
+        if (follower == null)
+            throw new IllegalArgumentException("Follower cannot be null.");
+        if (maxRecords < 0)
+            throw new IllegalArgumentException("Number of records cannot be negative.");
+        
+        long position = positionOf(from);
+        long sequence = from;
+        for (; sequence < nextSequence && sequence - from < maxRecords; sequence++) {
+            position = skipPadding(position);
+            int offset = offsetOf(position);
+            applyRecord(buffer, offset, follower, codec);
+            position += buffer.getInt(offset);
+        }
+        remember(sequence, position);
+        return sequence;
+    }
+    
+    /**
+     * Copies whole records, starting from the given sequence number, into a buffer for apply()
+     * to read, as many as fit in the buffer's remaining bytes.
+     * @param from sequence number of the first record to copy
+     * @param out buffer to copy the records into, at its position, which is advanced past them
+     * @return number of records copied, 0 if from is nextSequence() or the next record does
+     *         not fit in out
+     * @throws IllegalStateException if the record at from has been overwritten
+     */
+    public int read(final long from, final ByteBuffer out) {
+        if (out == null)
+            throw new IllegalArgumentException("Buffer cannot be null.");
+        
+        long position = positionOf(from);
+        long sequence = from;
+        for (; sequence < nextSequence; sequence++) {
+            position = skipPadding(position);
+            int offset = offsetOf(position);
+            int length = buffer.getInt(offset);
+            if (length > out.remaining()) break;
+            out.put(ring, offset, length);
+            position += length;
+        }
+        remember(sequence, position);
+        return (int) (sequence - from);
+    }
+    
+    /**
+     * Applies records copied by read() to a follower map, as set() and delete() calls in the
+     * order they were made on the logged map. Records before the given sequence number, which
+     * the follower has already applied, are skipped, so records sent twice do no harm.
+     * @param records buffer backed by an array, holding the records from its position to its
+     *        limit; its position is advanced past them
+     * @param from sequence number of the first record the follower has not applied
+     * @param follower map to apply the records to, of the same size as the logged map
+     * @param codec reads values from records, as the logged map's codec wrote them
+     * @param <V> object type of values
+     * @return sequence number of the record after the last one applied
+     * @throws IllegalArgumentException if a record is malformed, or records between from and
+     *         the first record in the buffer are missing
+     * @throws IllegalStateException if follower is full and cannot store a key
+     */
+    public static <V> long apply(final ByteBuffer records, final long from, final FixedSizeHashMap<V> follower,
+            final ValueCodec<? extends V> codec) {
+        if (records == null || follower == null || codec == null)
+            throw new IllegalArgumentException("Records, follower and codec cannot be null.");
+        if (!records.hasArray())
+            throw new IllegalArgumentException("Records must be in a buffer backed by an array.");
+        
+        long sequence = from;
+        while (records.remaining() > 0) {
+            int offset = records.position();
+            int length = records.remaining() < HEADER_BYTES ? 0 : records.getInt(offset);
+            if (length < HEADER_BYTES || length > records.remaining())
+                throw new IllegalArgumentException("Malformed change log record.");
+            long recordSequence = records.getLong(offset + SEQUENCE_OFFSET);
+            if (recordSequence > sequence)
+                throw new IllegalArgumentException("Records from " + sequence + " to " + recordSequence + " are missing.");
+            
+            if (recordSequence == sequence) {
+                applyRecord(records, offset, follower, codec);
+                sequence++;
+            }
+            records.position(offset + length);
+        }
+        return sequence;
+    }
+    
+    /**
+     * Appends the record of a key stored in the map, before the map is changed. The value is
+     * encoded before any room is made for the record, so that a value the codec rejects leaves
+     * both the map and the records kept unchanged.
+     * @param key String key stored
+     * @param value value stored with key
+     */
+    @SuppressWarnings("unchecked")
+    void appendSet(String key, Object value) {
+        codec.write(scratch, 0, (V) value);
+        int keyBytes = SnapshotFormat.encodedLength(key);
+        int offset = reserve(HEADER_BYTES + keyBytes + codec.width());
+        if (offset < 0) return;
+        System.arraycopy(scratch.array(), 0, ring, offset + HEADER_BYTES + keyBytes, codec.width());
+        append(offset, HEADER_BYTES + keyBytes + codec.width(), SET, key);
+    }
+    
+    /**
+     * Appends the record of a key removed from the map.
+     * @param key String key removed
+     */
+    void appendDelete(String key) {
+        int length = HEADER_BYTES + SnapshotFormat.encodedLength(key);
+        int offset = reserve(length);
+        if (offset < 0) return;
+        append(offset, length, DELETE, key);
+    }
+    
+    /**
+     * Writes the header and key of a record into space returned by reserve().
+     * @param offset index in ring of the record
+     * @param length number of bytes of the record
+     * @param op SET or DELETE
+     * @param key String key of the record
+     */
+    private void append(int offset, int length, byte op, String key) {
+        buffer.putInt(offset, length);
+        buffer.putLong(offset + SEQUENCE_OFFSET, nextSequence);
+        buffer.put(offset + OP_OFFSET, op);
+        buffer.position(offset + HEADER_BYTES);
+        SnapshotFormat.encode(key, buffer);
+        head += length;
+        nextSequence++;
+    }
+    
+    /**
+     * Makes room for a record, overwriting the oldest records, and padding out the rest of the
+     * lap if the record does not fit before the end of the ring. A record longer than the whole
+     * ring is not kept: every record is dropped and its sequence number skipped, so followers
+     * that have not applied every record must start over from a snapshot.
+     * @param length number of bytes of the record
+     * @return index in ring at which to write the record, or -1 if it is not kept
+     */
+    private int reserve(int length) {
+        if (length > ring.length) {
+            tail = head;
+            firstSequence = ++nextSequence;
+            return -1;
+        }
+        int offset = offsetOf(head);
+        if (length > ring.length - offset) { // pad up to the end of the ring and start a new lap
+            evict(ring.length - offset);
+            if (ring.length - offset >= Integer.BYTES) buffer.putInt(offset, PADDING);
+            head += ring.length - offset;
+            offset = 0;
+        }
+        evict(length);
+        return offset;
+    }
+    
+    /**
+     * Drops the oldest records until the ring has room for the given number of bytes.
+     * @param bytes number of bytes needed, at most the capacity of the ring
+     */
+    private void evict(int bytes) {
+        while (ring.length - (head - tail) < bytes) {
+            long oldest = skipPadding(tail);
+            if (oldest != tail) {
+                tail = oldest;
+                continue;
+            }
+            tail += buffer.getInt(offsetOf(tail));
+            firstSequence++;
+        }
+    }
+    
+    /**
+     * Finds the position of a record, walking forward from the last record looked up, or else
+     * from the oldest record. Followers that start each batch where the last one stopped find
+     * it right away.
+     * @param sequence sequence number of the record, at most nextSequence()
+     * @return position of the record, or of the end of the log if sequence is nextSequence()
+     * @throws IllegalStateException if the record has been overwritten
+     */
+    private long positionOf(long sequence) {
+        if (sequence > nextSequence)
+            throw new IllegalArgumentException("Sequence number " + sequence + " has not been reached.");
+        if (sequence < firstSequence)
+            throw new IllegalStateException("Records before " + firstSequence + " have been overwritten.");
+        
+        boolean hinted = hintSequence >= firstSequence && hintSequence <= sequence;
+        long position = hinted ? hintPosition : tail;
+        for (long s = hinted ? hintSequence : firstSequence; s < sequence; s++) {
+            position = skipPadding(position);
+            position += buffer.getInt(offsetOf(position));
+        }
+        return position;
+    }
+    
+    /**
+     * @param position position of a record or of padding
+     * @return position of the record, after any padding up to the end of the ring
+     */
+    private long skipPadding(long position) {
+        int offset = offsetOf(position);
+        if (position == head) return position;
+        if (ring.length - offset < Integer.BYTES || buffer.getInt(offset) == PADDING) {
+            return position + ring.length - offset;
+        }
+        return position;
+    }
+    
+    /**
+     * Remembers where a record is, for the next lookup by sequence number.
+     * @param sequence sequence number of the record
+     * @param position position of the record
+     */
+    private void remember(long sequence, long position) {
+        hintSequence = sequence;
+        hintPosition = position;
+    }
+    
+    /**
+     * @param position position counted in bytes ever written
+     * @return index in ring of position
+     */
+    private int offsetOf(long position) {
+        return (int) (position % ring.length);
+    }
+    
+    /**
+     * Applies one record to a follower map.
+     * @param records buffer backed by an array holding the record
+     * @param offset index in records of the record
+     * @param follower map to apply the record to
+     * @param codec reads the value of a SET record
+     * @param <V> object type of values
+     */
+    private static <V> void applyRecord(ByteBuffer records, int offset, FixedSizeHashMap<V> follower,
+            ValueCodec<? extends V> codec) {
+        int length = records.getInt(offset);
+        byte op = records.get(offset + OP_OFFSET);
+        int keyBytes = length - HEADER_BYTES - (op == SET ? codec.width() : 0);
+        String key = keyBytes < 0 ? null : SnapshotFormat.decodeKey(records, offset + HEADER_BYTES, keyBytes);
+        if (key == null || op != SET && op != DELETE)
+            throw new IllegalArgumentException("Malformed change log record.");
+        
+        if (op == DELETE) {
+            follower.delete(key);
+        }
+        else if (!follower.set(key, codec.read(records, offset + HEADER_BYTES + keyBytes))) {
+            throw new IllegalStateException("Follower is full.");
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tester class for ChangeLog and FixedSizeHashMap.enableChangeLog().
+ * @author Yanlin Li
+ */
+public class ChangeLogTest {
+    
+    /*
+     * Testing strategy for ChangeLog
+     *
+     * enableChangeLog(), disableChangeLog():
+     *     - capacity > 0, <= 0, codec null
+     *     - log already enabled, enabled again after being disabled
+     *
+     * records appended by:
+     *     - set() of a new key or of a present one, failed set() on a full map
+     *     - delete() of a present or absent key, expiry, eviction from a FixedSizeCache
+     *     - atomic operations, cursor setValue(), LINEAR or ROBIN_HOOD map
+     *     - value the codec rejects, with the log empty or full, record longer than the whole log
+     *
+     * applyTo():
+     *     - from = firstSequence(), = nextSequence(), < firstSequence(), > nextSequence()
+     *     - maxRecords = 0, fewer than the records left, more
+     *     - records wrapping around the end of the ring, oldest records overwritten
+     *
+     * read(), apply():
+     *     - out holds every record, only some, none
+     *     - records applied twice, records missing, malformed record
+     *     - keys with non-ASCII characters
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    /*
+     * This test covers:
+     *     enableChangeLog(), disableChangeLog(): capacity > 0, <= 0, codec null, log already
+     *         enabled, enabled again after being disabled
+     *     records appended by: set() of a new key or of a present one, failed set() on a full
+     *         map, delete() of a present or absent key, value the codec rejects
+     *     applyTo(): from = firstSequence(), = nextSequence(), > nextSequence(), maxRecords = 0,
+     *         fewer than the records left, more
+     */
+    @Test
+    public void testApplyToFollower() {
+        final FixedSizeHashMap<Long> map = new FixedSizeHashMap<>(3);
+        final ChangeLog<Long> log = map.enableChangeLog(1024, ValueCodec.LONG);
+        assertSame("Expected the enabled log returned again", log, map.enableChangeLog(16, ValueCodec.LONG));
+        map.set("K", 1L);
+        map.set("C", 2L);
+        map.set("K", 3L);
+        map.delete("C");
+        map.delete("absent");
+        map.set("P", 4L);
+        map.set("Q", 5L);
+        map.set("R", 6L); // fails, map is full
+        try {
+            map.set("K", null);
+            fail("Expected a null value rejected by the codec");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        assertEquals("Expected one record per successful change", 6, log.nextSequence());
+        assertEquals("Expected every record kept", 0, log.firstSequence());
+        
+        final FixedSizeHashMap<Long> follower = new FixedSizeHashMap<>(3);
+        assertEquals("Expected no record applied", 0, log.applyTo(follower, 0, 0));
+        assertEquals("Expected 3 records applied", 3, log.applyTo(follower, 0, 3));
+        assertEquals("Expected (K: 3) after 3 records", Long.valueOf(3), follower.get("K"));
+        assertEquals("Expected (C: 2) after 3 records", Long.valueOf(2), follower.get("C"));
+        assertEquals("Expected the rest applied", 6, log.applyTo(follower, 3, 100));
+        assertEquals("Expected nothing left to apply", 6, log.applyTo(follower, 6, 100));
+        for (String key : new String[] {"K", "C", "P", "Q", "R"}) {
+            assertEquals("Expected follower to match for " + key, map.get(key), follower.get(key));
+        }
+        try {
+            log.applyTo(follower, 7, 1);
+            fail("Expected a sequence number past the end rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        
+        map.disableChangeLog();
+        map.delete("K");
+        assertEquals("Expected nothing recorded while disabled", 6, log.nextSequence());
+        assertEquals("Expected a new log to start from 0", 0, map.enableChangeLog(64, ValueCodec.LONG).nextSequence());
+        for (int capacity : new int[] {0, -1}) {
+            try {
+                new FixedSizeHashMap<Long>(3).enableChangeLog(capacity, ValueCodec.LONG);
+                fail("Expected capacity " + capacity + " rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try {
+            new FixedSizeHashMap<Long>(3).enableChangeLog(64, null);
+            fail("Expected a null codec rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     records appended by: expiry, eviction from a FixedSizeCache, atomic operations,
+     *         cursor setValue(), LINEAR or ROBIN_HOOD map
+     */
+    @Test
+    public void testEveryChangeRecorded() {
+        final long[] now = {0};
+        final FixedSizeCache<Integer> cache = new FixedSizeCache<>(2);
+        cache.setClock(() -> now[0]);
+        final ChangeLog<Integer> cacheLog = cache.enableChangeLog(1024, ValueCodec.INT);
+        cache.set("K", 1);
+        cache.set("C", 2, 10, TimeUnit.NANOSECONDS);
+        cache.set("P", 3); // evicts a key
+        now[0] = 20;
+        cache.get("C"); // expires C if it is still there
+        final FixedSizeHashMap<Integer> cacheFollower = new FixedSizeHashMap<>(2);
+        cacheLog.applyTo(cacheFollower, 0, 100);
+        for (String key : new String[] {"K", "C", "P"}) {
+            assertEquals("Expected cache follower to match for " + key, cache.get(key), cacheFollower.get(key));
+        }
+        
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(8, probing);
+            final ChangeLog<Integer> log = map.enableChangeLog(1024, ValueCodec.INT);
+            map.putIfAbsent("K", 1);
+            map.replace("K", 1, 2);
+            map.computeIfAbsent("C", key -> 3);
+            map.compute("C", (key, value) -> null);
+            map.merge("P", 4, Integer::sum);
+            map.merge("P", 5, Integer::sum);
+            final FixedSizeHashMap<Integer>.Cursor cursor = map.cursor();
+            while (cursor.advance()) cursor.setValue(cursor.value() * 10);
+            final FixedSizeHashMap<Integer> follower = new FixedSizeHashMap<>(8, probing);
+            assertEquals("Expected every record applied", log.nextSequence(), log.applyTo(follower, 0, 100));
+            assertEquals("Expected (K: 20) on " + probing + " follower", Integer.valueOf(20), follower.get("K"));
+            assertEquals("Expected C deleted on " + probing + " follower", null, follower.get("C"));
+            assertEquals("Expected (P: 90) on " + probing + " follower", Integer.valueOf(90), follower.get("P"));
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     records appended by: value the codec rejects with the log full, record longer than
+     *         the whole log
+     *     applyTo(): from < firstSequence(), records wrapping around the end of the ring,
+     *         oldest records overwritten
+     *     read(), apply(): keys with non-ASCII characters
+     */
+    @Test
+    public void testBoundedRing() {
+        final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(256);
+        final ChangeLog<Integer> log = map.enableChangeLog(100, ValueCodec.INT);
+        final FixedSizeHashMap<Integer> follower = new FixedSizeHashMap<>(256);
+        long applied = 0;
+        final Random random = new Random(21);
+        for (int i = 0; i < 10000; i++) {
+            final String key = (random.nextBoolean() ? "k\u00e9y" : "\u6f22") + random.nextInt(100);
+            if (random.nextInt(3) == 0) map.delete(key);
+            else map.set(key, i);
+            if (i % 2 == 0) applied = log.applyTo(follower, applied, 3); // a few records at a time
+            assertTrue("Expected the log to keep a few records at most", log.nextSequence() - log.firstSequence() <= 100 / ChangeLog.HEADER_BYTES);
+        }
+        assertEquals("Expected the follower to catch up", log.nextSequence(), log.applyTo(follower, applied, Integer.MAX_VALUE));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Expected follower to match for k\u00e9y" + i, map.get("k\u00e9y" + i), follower.get("k\u00e9y" + i));
+            assertEquals("Expected follower to match for \u6f22" + i, map.get("\u6f22" + i), follower.get("\u6f22" + i));
+        }
+        
+        final long first = log.firstSequence();
+        final ByteBuffer before = ByteBuffer.allocate(100);
+        final int beforeRecords = log.read(first, before);
+        try {
+            map.set("a key long enough to overwrite the oldest records", null);
+            fail("Expected a null value rejected by the codec");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        assertEquals("Expected no record dropped for a rejected value", first, log.firstSequence());
+        final ByteBuffer after = ByteBuffer.allocate(100);
+        assertEquals("Expected the same records kept", beforeRecords, log.read(first, after));
+        before.flip();
+        after.flip();
+        assertEquals("Expected the records kept unchanged", before, after);
+        
+        final long behind = log.nextSequence();
+        for (int i = 0; i < 10; i++) map.set("key" + i, i);
+        try {
+            log.applyTo(follower, behind, 100);
+            fail("Expected overwritten records reported");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        final StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i < 100; i++) longKey.append('x');
+        map.set(longKey.toString(), 0);
+        assertEquals("Expected the long record to drop every record", log.nextSequence(), log.firstSequence());
+        final ByteBuffer out = ByteBuffer.allocate(100);
+        assertEquals("Expected nothing to read from an empty log", 0, log.read(log.nextSequence(), out));
+    }
+    
+    /*
+     * This test covers:
+     *     read(), apply(): out holds every record, only some, none, records applied twice,
+     *         records missing, malformed record
+     */
+    @Test
+    public void testReadAndApply() {
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(16);
+        final ChangeLog<String> log = map.enableChangeLog(4096, ValueCodec.utf8(16));
+        final Map<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            map.set("key" + i, "value" + i);
+            expected.put("key" + i, "value" + i);
+        }
+        map.delete("key3");
+        expected.remove("key3");
+        
+        final ByteBuffer none = ByteBuffer.allocate(ChangeLog.HEADER_BYTES);
+        assertEquals("Expected no record to fit", 0, log.read(0, none));
+        final ByteBuffer some = ByteBuffer.allocate(100);
+        final int someRecords = log.read(0, some);
+        assertTrue("Expected some records but not all to fit", someRecords > 0 && someRecords < log.nextSequence());
+        final ByteBuffer all = ByteBuffer.allocate(4096);
+        assertEquals("Expected every record to fit", log.nextSequence(), log.read(0, all));
+        
+        final FixedSizeHashMap<String> follower = new FixedSizeHashMap<>(16);
+        some.flip();
+        assertEquals("Expected the records that fit applied", someRecords, ChangeLog.apply(some, 0, follower, ValueCodec.utf8(16)));
+        all.flip();
+        assertEquals("Expected records already applied skipped", log.nextSequence(),
+                ChangeLog.apply(all, someRecords, follower, ValueCodec.utf8(16)));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Expected follower to match for key" + i, expected.get("key" + i), follower.get("key" + i));
+        }
+        
+        all.rewind();
+        all.position(all.getInt(0)); // skip the first record
+        try {
+            ChangeLog.apply(all, 0, new FixedSizeHashMap<>(16), ValueCodec.utf8(16));
+            fail("Expected a missing record reported");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        final ByteBuffer malformed = ByteBuffer.allocate(ChangeLog.HEADER_BYTES);
+        malformed.putInt(0, ChangeLog.HEADER_BYTES).put(12, (byte) 7);
+        try {
+            ChangeLog.apply(malformed, 0, new FixedSizeHashMap<>(16), ValueCodec.utf8(16));
+            fail("Expected a malformed record reported");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,404 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe fixed-sized hash map that associates string keys with arbitrary data object
+ * references. Collision is resolved through linear probing.
+ * Reads take no locks and finish in a bounded number of steps. Writers lock the stripe their
+ * key hashes to, so all writes of one key are serialized and can never store it twice, while
+ * writes of different keys proceed in parallel and claim free slots with compare-and-set.
+ * Deleted slots are left as tombstones that later writes reuse; unlike FixedSizeHashMap they
+ * are never compacted away, since that would move keys under lock-free readers.
+ * putIfAbsent(), replace(), computeIfAbsent(), compute() and merge() run under the lock of
+ * their key, so each is atomic with respect to every other write of the key.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public class ConcurrentFixedSizeHashMap<V> {
+    
+    /** Atomic access to elements of the slot arrays. */
+    private static final VarHandle OBJECTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    
+    /** Key of a slot whose key/value pair has been deleted. */
+    private static final Object TOMBSTONE = new Object();
+    
+    /** Key of a slot claimed by a writer that has not stored its key yet. */
+    private static final Object RESERVED = new Object();
+    
+    /** Result of locate() for an absent key that has no free slot to go to. */
+    private static final int NO_SLOT = Integer.MIN_VALUE;
+    
+    /** Number of write locks, a power of two comfortably above the number of cores. */
+    private static final int STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 8 - 1) << 1;
+    
+    /** Instance variables. */
+    private final int size; // fixed size of bucket
+    private final Object[] keys; // null if empty, TOMBSTONE if deleted, RESERVED while claimed, or key
+    private final Object[] values; // value stored in each slot, null unless slot holds a key
+    private final int[] hashes; // cached hash of the key stored in each slot
+    private final int[] versions; // odd while a key is leaving its slot, incremented before and after
+    private final Object[] locks; // write lock for each stripe of key hashes
+    private final LongAdder itemCount; // number of key/value pairs currently present in map
+    private final Hasher hasher; // computes the hashes of keys
+    
+    /**
+     * Make a new concurrent fixed-size hash map of the specified size.
+     * @param size fixed size of the map
+     */
+    public ConcurrentFixedSizeHashMap(final int size) {
+        this(size, Hasher.MURMUR);
+    }
+    
+    /**
+     * Make a new concurrent fixed-size hash map of the specified size and hash function.
+     * Use Hasher.seeded() if keys may be chosen by an attacker.
+     * @param size fixed size of the map
+     * @param hasher computes the hashes of keys
+     */
+    public ConcurrentFixedSizeHashMap(final int size, final Hasher hasher) {
+        if (hasher == null)
+            throw new IllegalArgumentException("Hasher cannot be null.");
+        
+        this.hasher = hasher;
+        this.size = size;
+        this.keys = new Object[size];
+        this.values = new Object[size];
+        this.hashes = new int[size];
+        this.versions = new int[size];
+        this.locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+        this.itemCount = new LongAdder();
+    }
+    
+    /**
+     * Stores the specified value with the specified key in this fixed-size map.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     */
+    public boolean set(final String key, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return false; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            return store(locate(key, keyHash), key, keyHash, value);
+        }
+    }
+    
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or null if this map contains no mapping for the key.
+     * Never blocks, and examines each slot at most once.
+     * @param key String key whose associated value is to be returned
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return null; // map of size 0 has no value to get
+        
+        int keyHash = hasher.hash(key);
+        int home = indexFor(keyHash);
+        int probe = home; // probe starts at index home
+        do {
+            int version = (int) INTS.getAcquire(versions, probe);
+            Object k = OBJECTS.getAcquire(keys, probe);
+            if (k == null) {
+                return null;
+            }
+            else if (k != TOMBSTONE && k != RESERVED && hashes[probe] == keyHash && key.equals(k)) {
+                Object value = OBJECTS.getAcquire(values, probe);
+                // If the key was leaving the slot, or left it while it was being read, the value
+                // may belong to a later key; the key was absent at that moment, so report it absent
+                if ((version & 1) != 0 || (int) INTS.getAcquire(versions, probe) != version) return null;
+                return (V) value;
+            }
+            // If tombstone, claimed slot or different keys (same hash), continue probing
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return null; // if probe looped back to home, then key does not exist
+    }
+    
+    /**
+     * Deletes the value associated with the given key if present.
+     * @param key String key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    public V delete(String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return null; // map of size 0 has no value to delete
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            int slot = locate(key, keyHash);
+            if (slot < 0) return null;
+            V value = (V) OBJECTS.getAcquire(values, slot);
+            removeAt(slot);
+            return value;
+        }
+    }
+    
+    /**
+     * Stores the specified value with the specified key only if the map contains no mapping
+     * for the key, atomically.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return INSERTED if the key/value pair was stored, PRESENT if the key was already in the
+     *         map, or FULL if the key was absent and could not be stored
+     */
+    public FixedSizeHashMap.Outcome putIfAbsent(final String key, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return FixedSizeHashMap.Outcome.FULL; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            int slot = locate(key, keyHash);
+            if (slot >= 0) return FixedSizeHashMap.Outcome.PRESENT;
+            return store(slot, key, keyHash, value) ? FixedSizeHashMap.Outcome.INSERTED : FixedSizeHashMap.Outcome.FULL;
+        }
+    }
+    
+    /**
+     * Replaces the value of the specified key only if it is currently mapped to the expected
+     * value, as compared by equals(), atomically.
+     * @param key String key whose value is to be replaced
+     * @param expected value expected to be associated with the key
+     * @param value value to be associated with the key
+     * @return true if the value was replaced, false if the key is absent or has another value
+     */
+    public boolean replace(final String key, final V expected, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return false; // map of size 0 has no value to replace
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            int slot = locate(key, keyHash);
+            if (slot < 0 || !Objects.equals(OBJECTS.getAcquire(values, slot), expected)) return false;
+            OBJECTS.setRelease(values, slot, value);
+            return true;
+        }
+    }
+    
+    /**
+     * Returns the value of the specified key, first computing it with the given function and
+     * storing it if the key is absent, atomically. The function is called at most once, under
+     * the lock of the key, so it should be short and must not modify the map.
+     * @param key String key whose associated value is to be returned
+     * @param function computes the value of an absent key; null stores nothing
+     * @return the value associated with the key, or null if the function returned null or
+     *         the key was absent and could not be stored because the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(final String key, final Function<? super String, ? extends V> function) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (function == null)
+            throw new IllegalArgumentException("Function cannot be null.");
+        
+        if (size == 0) return null; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            int slot = locate(key, keyHash);
+            if (slot >= 0) return (V) OBJECTS.getAcquire(values, slot);
+            V value = function.apply(key);
+            return value != null && store(slot, key, keyHash, value) ? value : null;
+        }
+    }
+    
+    /**
+     * Computes a new value for the specified key from its current value, or null if it is
+     * absent, atomically. The function is called exactly once, unless the map has size 0 and
+     * nothing can be stored, under the lock of the key, so it should be short and must not
+     * modify the map. If it returns null, the key is deleted.
+     * @param key String key whose value is to be computed
+     * @param function computes the new value from the key and its current value
+     * @return the new value associated with the key, or null if there is none, because the
+     *         function returned null or the key was absent and the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V compute(final String key, final BiFunction<? super String, ? super V, ? extends V> function) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (function == null)
+            throw new IllegalArgumentException("Function cannot be null.");
+        
+        if (size == 0) return null; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            int slot = locate(key, keyHash);
+            V value = function.apply(key, slot >= 0 ? (V) OBJECTS.getAcquire(values, slot) : null);
+            return update(slot, key, keyHash, value);
+        }
+    }
+    
+    /**
+     * Associates the specified value with the specified key if it is absent, and otherwise
+     * replaces its value with the result of the given function of the current value and the
+     * specified one, atomically. This makes counting a key from many threads one call:
+     *     map.merge(key, 1, Integer::sum);
+     * The function is only called if the key is present, under the lock of the key, so it
+     * should be short and must not modify the map. If it returns null, the key is deleted.
+     * @param key String key whose value is to be merged
+     * @param value value to store if the key is absent, and to merge otherwise
+     * @param function computes the new value from the current value and value
+     * @return the new value associated with the key, or null if there is none, because the
+     *         function returned null or the key was absent and the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V merge(final String key, final V value, final BiFunction<? super V, ? super V, ? extends V> function) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (value == null || function == null)
+            throw new IllegalArgumentException("Value and function cannot be null.");
+        
+        if (size == 0) return null; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        synchronized (lockFor(keyHash)) {
+            int slot = locate(key, keyHash);
+            V merged = slot >= 0 ? function.apply((V) OBJECTS.getAcquire(values, slot), value) : value;
+            return update(slot, key, keyHash, merged);
+        }
+    }
+    
+    /**
+     * Returns the load factor (`(items in map)/(size of map)`).
+     * While writes are in progress this is a moment-in-time estimate.
+     * @return load factor.
+     *         Since the size of the map is fixed, this should never be greater than 1.
+     *         If map has size 0, this value is 1.
+     */
+    public double load() {
+        if (size == 0) return 1.0; // map of size 0 has load factor 1
+        return (double) itemCount.sum() / size;
+    }
+    
+    /**
+     * Finds the slot holding a key, or else the first free slot where it may be inserted, in
+     * a single probe pass. The caller must hold the lock of the key.
+     * @param key String key to look for
+     * @param keyHash hash of key
+     * @return index of the slot holding key; if key is absent, ~slot where slot is the first
+     *         tombstone or empty slot of its probe sequence, or NO_SLOT if there is none
+     */
+    private int locate(String key, int keyHash) {
+        int home = indexFor(keyHash);
+        int free = -1; // first tombstone or empty slot seen along the probe sequence
+        int probe = home; // probe starts at index home
+        do {
+            Object k = OBJECTS.getAcquire(keys, probe);
+            if (k == null || k == TOMBSTONE) {
+                if (free < 0) free = probe;
+                if (k == null) break; // key is not present further on
+            }
+            else if (k != RESERVED && hashes[probe] == keyHash && key.equals(k)) {
+                return probe;
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return free < 0 ? NO_SLOT : ~free;
+    }
+    
+    /**
+     * Stores a value for a key located by locate(). The caller must hold the lock of the key.
+     * @param location result of locate() for the key
+     * @param key String key with which the specified value is to be associated
+     * @param keyHash hash of key
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false if map is full
+     */
+    private boolean store(int location, String key, int keyHash, Object value) {
+        while (true) {
+            if (location >= 0) {
+                OBJECTS.setRelease(values, location, value); // reset value, holding the key's lock
+                return true;
+            }
+            if (location == NO_SLOT) return false; // no empty slot or tombstone left, map is full
+            int free = ~location;
+            Object freeKey = OBJECTS.getAcquire(keys, free);
+            if ((freeKey == null || freeKey == TOMBSTONE) && OBJECTS.compareAndSet(keys, free, freeKey, RESERVED)) {
+                hashes[free] = keyHash; // published to readers along with the key below
+                OBJECTS.setRelease(keys, free, key);
+                OBJECTS.setRelease(values, free, value);
+                itemCount.increment();
+                return true;
+            }
+            // A writer of another key claimed the slot first, probe again
+            location = locate(key, keyHash);
+        }
+    }
+    
+    /**
+     * Stores the new value of a key located by locate(), deleting the key if it is null.
+     * The caller must hold the lock of the key.
+     * @param location result of locate() for the key
+     * @param key String key whose value is to be stored
+     * @param keyHash hash of key
+     * @param value new value of the key, or null to delete it
+     * @return value, or null if the key was absent and could not be stored
+     */
+    private V update(int location, String key, int keyHash, V value) {
+        if (value == null) {
+            if (location >= 0) removeAt(location);
+            return null;
+        }
+        return store(location, key, keyHash, value) ? value : null;
+    }
+    
+    /**
+     * Deletes the key/value pair of a slot. The caller must hold the lock of its key.
+     * @param slot index of the slot holding the key
+     */
+    private void removeAt(int slot) {
+        // As a seqlock writer does, make the version odd before the key leaves and even again
+        // once the slot is free. Another writer can take the slot as soon as it is free, so a
+        // reader that saw the key and then a later key's value must see the version changed
+        INTS.getAndAdd(versions, slot, 1);
+        OBJECTS.setRelease(values, slot, null);
+        OBJECTS.setRelease(keys, slot, TOMBSTONE);
+        INTS.getAndAdd(versions, slot, 1);
+        itemCount.decrement();
+    }
+    
+    /**
+     * Returns the write lock guarding all keys with the given hash.
+     * @param keyHash hash of the key
+     * @return lock of the key's stripe
+     */
+    private Object lockFor(int keyHash) {
+        return locks[(keyHash ^ (keyHash >>> 16)) & (STRIPES - 1)];
+    }
+    
+    /**
+     * Maps the hash of a key to the slot index at which probing for the key starts.
+     * @param keyHash hash of the key
+     * @return home slot index
+     */
+    private int indexFor(int keyHash) {
+        return Hasher.indexFor(keyHash, size);
+    }
+}
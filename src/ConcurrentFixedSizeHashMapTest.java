@@ -0,0 +1,215 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tester class for ConcurrentFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class ConcurrentFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for ConcurrentFixedSizeHashMap
+     *
+     * Single thread:
+     *     - map size = 0, > 0
+     *     - random set(), get(), delete() calls with colliding keys give the same results
+     *       as FixedSizeHashMap, including set() failing on a full map
+     *
+     * Multiple threads:
+     *     - threads write disjoint keys, or the same keys
+     *     - readers run concurrently with writers that delete and reuse slots, with the
+     *       same keys, or with different keys taking over the same slot
+     *     - after all threads finish, no key is stored twice and load() is exact
+     *     - threads count the same keys with merge(), and race to insert them with
+     *       putIfAbsent() and computeIfAbsent()
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int MAP_SIZE = 1000;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 200000;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * This test covers:
+     *     single thread: map size = 0
+     */
+    @Test
+    public void testSizeZeroMap() {
+        final ConcurrentFixedSizeHashMap<String> map = new ConcurrentFixedSizeHashMap<>(0);
+        assertFalse("Expected \"K\" to be added unsuccessfully", map.set("K", "Kleiner"));
+        assertEquals("Expected null for absent key \"K\"", null, map.get("K"));
+        assertEquals("Expected null value for key \"K\" not contained in map", null, map.delete("K"));
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        final int[] calls = {0};
+        assertEquals("Expected compute to store nothing", null, map.compute("K", (key, value) -> "call " + ++calls[0]));
+        assertEquals("Expected computeIfAbsent to store nothing", null, map.computeIfAbsent("K", key -> "call " + ++calls[0]));
+        assertEquals("Expected merge to store nothing", null, map.merge("K", "Kleiner", (a, b) -> "call " + ++calls[0]));
+        assertEquals("Expected no function called on a map of size 0", 0, calls[0]);
+    }
+    
+    /*
+     * This test covers:
+     *     single thread: map size > 0, random calls match FixedSizeHashMap
+     */
+    @Test
+    public void testMatchesFixedSizeHashMap() {
+        final ConcurrentFixedSizeHashMap<Integer> map = new ConcurrentFixedSizeHashMap<>(MAP_SIZE / 10);
+        final FixedSizeHashMap<Integer> expected = new FixedSizeHashMap<>(MAP_SIZE / 10);
+        final Random random = new Random(0);
+        for (int i = 0; i < OPERATIONS; i++) {
+            final String key = "key" + random.nextInt(MAP_SIZE / 5);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals("Expected set to match", expected.set(key, i), map.set(key, i));
+                    break;
+                case 1:
+                    assertEquals("Expected get to match", expected.get(key), map.get(key));
+                    break;
+                default:
+                    assertEquals("Expected delete to match", expected.delete(key), map.delete(key));
+            }
+            assertEquals("Expected load to match", expected.load(), map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     multiple threads: threads write disjoint keys, no key stored twice, load() exact
+     */
+    @Test
+    public void testDisjointWriters() throws InterruptedException {
+        final ConcurrentFixedSizeHashMap<Integer> map = new ConcurrentFixedSizeHashMap<>(MAP_SIZE);
+        final int keysPerThread = MAP_SIZE / THREADS / 2;
+        TestThreads.run(THREADS, thread -> {
+            final Random random = new Random(thread);
+            final Integer[] model = new Integer[keysPerThread];
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                final int k = random.nextInt(keysPerThread);
+                final String key = thread + ":" + k;
+                if (random.nextBoolean()) {
+                    assertTrue("Expected set to succeed on a half-full map", map.set(key, i));
+                    model[k] = i;
+                }
+                else {
+                    assertEquals("Expected delete to see own writes", model[k], map.delete(key));
+                    model[k] = null;
+                }
+                assertEquals("Expected get to see own writes", model[k], map.get(key));
+            }
+        });
+        assertNoDuplicates(map, THREADS, keysPerThread);
+    }
+    
+    /*
+     * This test covers:
+     *     multiple threads: threads write the same keys, readers run concurrently with writers
+     *                       that delete and reuse slots, no key stored twice, load() exact
+     */
+    @Test
+    public void testContendedWritersAndReaders() throws InterruptedException {
+        final ConcurrentFixedSizeHashMap<String> map = new ConcurrentFixedSizeHashMap<>(MAP_SIZE / 10);
+        final int keys = MAP_SIZE / 20;
+        TestThreads.run(THREADS, thread -> {
+            final Random random = new Random(thread);
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                final String key = "0:" + random.nextInt(keys);
+                if (thread % 2 == 0) {
+                    // Readers: every value stored under a key is derived from that key
+                    final String value = map.get(key);
+                    assertTrue("Expected value of " + key + " but was " + value,
+                            value == null || value.equals("value of " + key));
+                }
+                else if (random.nextBoolean()) {
+                    assertTrue("Expected set to succeed on a half-full map", map.set(key, "value of " + key));
+                }
+                else {
+                    final String value = map.delete(key);
+                    assertTrue("Expected deleted value of " + key + " but was " + value,
+                            value == null || value.equals("value of " + key));
+                }
+            }
+        });
+        assertNoDuplicates(map, 1, keys);
+    }
+    
+    /*
+     * This test covers:
+     *     multiple threads: readers run concurrently with writers of different keys that take
+     *                       over the same slot
+     */
+    @Test
+    public void testSlotReusedByOtherKeys() throws InterruptedException {
+        // Every key of a map of size 1 goes in its only slot, which writers take from each other
+        final ConcurrentFixedSizeHashMap<String> map = new ConcurrentFixedSizeHashMap<>(1);
+        TestThreads.run(THREADS, thread -> {
+            final Random random = new Random(thread);
+            final String own = "writer " + thread;
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                if (thread % 2 == 0) {
+                    // Readers: a value read must belong to the key looked up, not to a later key in its slot
+                    final String key = "writer " + (2 * random.nextInt(THREADS / 2) + 1);
+                    final String value = map.get(key);
+                    assertTrue("Expected value of " + key + " but was " + value,
+                            value == null || value.equals("value of " + key));
+                }
+                else {
+                    map.set(own, "value of " + own);
+                    map.delete(own);
+                }
+            }
+        });
+        assertEquals("Expected load 0 after every writer deleted its key", 0, map.load(), DELTA);
+    }
+    
+    /*
+     * This test covers:
+     *     multiple threads: threads count the same keys with merge(), and race to insert them
+     *                       with putIfAbsent() and computeIfAbsent()
+     */
+    @Test
+    public void testAtomicUpdates() throws InterruptedException {
+        final ConcurrentFixedSizeHashMap<Integer> map = new ConcurrentFixedSizeHashMap<>(MAP_SIZE);
+        final int keys = MAP_SIZE / 4;
+        final AtomicInteger inserted = new AtomicInteger();
+        final AtomicInteger computed = new AtomicInteger();
+        TestThreads.run(THREADS, thread -> {
+            for (int k = 0; k < keys; k++) {
+                if (map.putIfAbsent("first:" + k, thread) == FixedSizeHashMap.Outcome.INSERTED) inserted.incrementAndGet();
+                map.computeIfAbsent("lazy:" + k, key -> computed.incrementAndGet());
+            }
+            final Random random = new Random(thread);
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                assertNotNull("Expected merge to succeed on a map with room", map.merge("count:" + random.nextInt(keys), 1, Integer::sum));
+            }
+        });
+        assertEquals("Expected each key inserted by exactly one thread", keys, inserted.get());
+        assertEquals("Expected each absent value computed exactly once", keys, computed.get());
+        long total = 0;
+        for (int k = 0; k < keys; k++) {
+            final Integer count = map.get("count:" + k);
+            if (count != null) total += count;
+        }
+        assertEquals("Expected no increment lost", OPERATIONS / THREADS * THREADS, total);
+    }
+    
+    /**
+     * Deletes every key "thread:k" once, then checks that none remains and the map is empty.
+     * A key stored twice would survive its first deletion.
+     */
+    private static void assertNoDuplicates(ConcurrentFixedSizeHashMap<?> map, int threads, int keys) {
+        for (int thread = 0; thread < threads; thread++) {
+            for (int k = 0; k < keys; k++) {
+                final String key = thread + ":" + k;
+                map.delete(key);
+                assertEquals("Expected no duplicate of key " + key, null, map.get(key));
+            }
+        }
+        assertEquals("Expected load 0 after deleting every key", 0, map.load(), DELTA);
+    }
+}
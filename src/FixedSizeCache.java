@@ -0,0 +1,161 @@
+/**
+ * A fixed-size hash map used as a bounded cache: setting a new key in a full cache evicts
+ * another key instead of failing, so the cache holds exactly as many keys as its size.
+ * Victims are chosen by CLOCK, an approximation of least-recently-used order: every slot has
+ * a reference bit, set when its key is stored or read, and a hand sweeping the slots clears
+ * the bits it passes and evicts the first key whose bit is already clear.
+ * With TinyLFU admission, the cache also counts how often every key, present or not, is read
+ * or set, in a small frequency sketch. A new key then only replaces the CLOCK victim if it has
+ * been seen more often recently, which keeps one-off keys from flushing popular ones.
+ * Reads only set a bit and bump a few counters, so hits allocate nothing.
+ * The cache uses linear probing.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public class FixedSizeCache<V> extends FixedSizeHashMap<V> {
+    
+    /**
+     * Replacement policy of a cache.
+     */
+    public enum Eviction {
+        /** Evict the CLOCK victim to make room for every new key. */
+        CLOCK,
+        /** Evict the CLOCK victim only for a new key seen more often recently than the victim. */
+        TINY_LFU
+    }
+    
+    /**
+     * Receives the key/value pairs evicted from a cache. It is called after the new key has
+     * been stored, and must not modify the cache.
+     * @param <V> object type of values
+     */
+    @FunctionalInterface
+    public interface EvictionListener<V> {
+        
+        /**
+         * @param key evicted key
+         * @param value value of the evicted key
+         */
+        void evicted(String key, V value);
+    }
+    
+    /** Instance variables. */
+    private final long[] referenced; // reference bit of each slot
+    private final FrequencySketch sketch; // recent frequencies of keys, TINY_LFU only
+    private int hand; // next slot the CLOCK hand examines
+    private long evictionCount; // number of keys evicted so far
+    private EvictionListener<? super V> listener; // receives evicted key/value pairs, or null
+    
+    /**
+     * Make a new cache of the specified size, evicting with CLOCK.
+     * @param size fixed size of the cache
+     */
+    public FixedSizeCache(final int size) {
+        this(size, Eviction.CLOCK);
+    }
+    
+    /**
+     * Make a new cache of the specified size and replacement policy.
+     * @param size fixed size of the cache
+     * @param eviction replacement policy
+     */
+    public FixedSizeCache(final int size, final Eviction eviction) {
+        this(size, eviction, Hasher.MURMUR);
+    }
+    
+    /**
+     * Make a new cache of the specified size, replacement policy and hash function.
+     * @param size fixed size of the cache
+     * @param eviction replacement policy
+     * @param hasher computes the hashes of keys
+     */
+    public FixedSizeCache(final int size, final Eviction eviction, final Hasher hasher) {
+        super(size, Probing.LINEAR, hasher);
+        if (eviction == null)
+            throw new IllegalArgumentException("Eviction cannot be null.");
+        
+        this.referenced = new long[(size + 63) >>> 6];
+        this.sketch = eviction == Eviction.TINY_LFU ? new FrequencySketch(size) : null;
+        this.hand = 0;
+        this.evictionCount = 0;
+    }
+    
+    /**
+     * Sets the listener receiving every key/value pair evicted from now on.
+     * @param listener listener to call, or null to stop calling one
+     */
+    public void setEvictionListener(final EvictionListener<? super V> listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Returns the number of keys evicted to make room for new keys. Keys removed by delete()
+     * are not counted.
+     * @return number of evictions since the cache was made
+     */
+    public long evictions() {
+        return evictionCount;
+    }
+    
+    @Override
+    void keyRead(int keyHash, int slot) {
+        if (slot >= 0) reference(slot);
+        if (sketch != null) sketch.increment(keyHash);
+    }
+    
+    @Override
+    void keyWritten(int keyHash, int slot, boolean inserted) {
+        reference(slot);
+        if (sketch != null) sketch.increment(keyHash);
+    }
+    
+    @Override
+    void slotMoved(int from, int to) {
+        if ((referenced[from >>> 6] & 1L << from) != 0) reference(to);
+        else referenced[to >>> 6] &= ~(1L << to);
+    }
+    
+    /**
+     * Advances the CLOCK hand to the first LIVE slot whose reference bit is clear, clearing
+     * the bits of the LIVE slots it passes. At most two turns are needed, since the first
+     * clears every bit. With TinyLFU, the victim is only returned if the new key has been seen
+     * more often than the victim's key.
+     */
+    @Override
+    int evictionVictim(int keyHash) {
+        final int size = capacity();
+        while (true) {
+            int slot = hand;
+            hand = slot + 1 == size ? 0 : slot + 1;
+            if (!isLive(slot)) continue;
+            long bit = 1L << slot;
+            if ((referenced[slot >>> 6] & bit) != 0) {
+                referenced[slot >>> 6] &= ~bit; // second chance
+                continue;
+            }
+            if (sketch != null) {
+                // The current access to the new key is only counted once the key is stored
+                if (sketch.frequency(keyHash) + 1 <= sketch.frequency(hashAt(slot))) {
+                    sketch.increment(keyHash);
+                    return -1; // rejected, the victim stays
+                }
+            }
+            return slot;
+        }
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    void evicted(String key, Object value) {
+        evictionCount++;
+        if (listener != null) listener.evicted(key, (V) value);
+    }
+    
+    /**
+     * Sets the reference bit of a slot.
+     * @param slot slot index
+     */
+    private void reference(int slot) {
+        referenced[slot >>> 6] |= 1L << slot;
+    }
+}
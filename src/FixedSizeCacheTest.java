@@ -0,0 +1,160 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tester class for FixedSizeCache.
+ * @author Yanlin Li
+ */
+public class FixedSizeCacheTest {
+    
+    /*
+     * Testing strategy for FixedSizeCache
+     * 
+     * set():
+     *     - cache size = 0, > 0
+     *     - cache full or not
+     *     - key present or absent
+     *     - eviction CLOCK or TINY_LFU
+     *     - key to evict was read since the hand last passed it, or not
+     *     - new key seen more or less often than the victim (TINY_LFU)
+     * 
+     * setEvictionListener():
+     *     - listener set, or not
+     * 
+     * evictions():
+     *     - no key evicted, some keys evicted
+     * 
+     * Long runs of random set(), get() and delete() calls are checked against java.util.HashMap,
+     * removing evicted keys reported to the listener.
+     * 
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int CACHE_SIZE = 100;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * This test covers:
+     *     set(): cache size = 0
+     *     evictions(): no key evicted
+     */
+    @Test
+    public void testSizeZeroCache() {
+        final FixedSizeCache<String> cache = new FixedSizeCache<>(0);
+        assertFalse("Expected \"K\" to be added unsuccessfully", cache.set("K", "Kleiner"));
+        assertEquals("Expected null for absent key \"K\"", null, cache.get("K"));
+        assertEquals("Expected no evictions", 0, cache.evictions());
+    }
+    
+    /*
+     * This test covers:
+     *     set(): cache full, key absent, CLOCK, key to evict read or not since the hand passed it
+     *     setEvictionListener(): listener set
+     *     evictions(): some keys evicted
+     */
+    @Test
+    public void testClockEvictsUnreferencedKey() {
+        final FixedSizeCache<Integer> cache = new FixedSizeCache<>(4);
+        final List<String> evicted = new ArrayList<>();
+        cache.setEvictionListener((key, value) -> {
+            assertEquals("Expected value of evicted key", Integer.valueOf(key.substring(3)), value);
+            evicted.add(key);
+        });
+        for (int i = 0; i < 4; i++) cache.set("key" + i, i);
+        assertTrue("Expected key4 to be added to the full cache", cache.set("key4", 4));
+        assertEquals("Expected one key evicted", 1, evicted.size());
+        assertEquals("Expected load 1", 1.0, cache.load(), DELTA);
+        assertEquals("Expected evicted key to be absent", null, cache.get(evicted.get(0)));
+        assertEquals("Expected key4 to be present", Integer.valueOf(4), cache.get("key4"));
+        
+        // The first eviction cleared every reference bit, so a key read since is kept
+        String kept = null;
+        for (int i = 0; i < 4 && kept == null; i++) {
+            if (!evicted.contains("key" + i)) kept = "key" + i;
+        }
+        cache.get(kept);
+        assertTrue("Expected key5 to be added to the full cache", cache.set("key5", 5));
+        assertEquals("Expected two keys evicted", 2, cache.evictions());
+        assertNotEquals("Expected key read since the hand passed to be kept", kept, evicted.get(1));
+        assertNotEquals("Expected key4, set since the hand passed, to be kept", "key4", evicted.get(1));
+        assertTrue("Expected \"" + kept + "\" to be present", cache.get(kept) != null);
+        
+        assertTrue("Expected present key to be reset without eviction", cache.set("key5", 50));
+        assertEquals("Expected two keys evicted", 2, cache.evictions());
+    }
+    
+    /*
+     * This test covers:
+     *     set(): TINY_LFU, new keys seen less often than the victim, and more often
+     *     setEvictionListener(): listener not set
+     */
+    @Test
+    public void testTinyLfuResistsScans() {
+        final FixedSizeCache<Integer> cache = new FixedSizeCache<>(CACHE_SIZE, FixedSizeCache.Eviction.TINY_LFU);
+        final FixedSizeCache<Integer> clock = new FixedSizeCache<>(CACHE_SIZE, FixedSizeCache.Eviction.CLOCK);
+        for (FixedSizeCache<Integer> c : Arrays.asList(cache, clock)) {
+            for (int i = 0; i < CACHE_SIZE; i++) c.set("hot" + i, i);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < CACHE_SIZE; i++) c.get("hot" + i);
+            }
+            for (int i = 0; i < CACHE_SIZE * 10; i++) c.set("cold" + i, i); // a scan of one-off keys
+        }
+        int tinyLfuHot = 0;
+        int clockHot = 0;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (cache.get("hot" + i) != null) tinyLfuHot++;
+            if (clock.get("hot" + i) != null) clockHot++;
+        }
+        assertTrue("Expected TinyLFU to keep hot keys through a scan, kept " + tinyLfuHot, tinyLfuHot >= CACHE_SIZE * 9 / 10);
+        assertEquals("Expected CLOCK to flush hot keys in a scan", 0, clockHot);
+        assertEquals("Expected full cache", 1.0, cache.load(), DELTA);
+        
+        // A key set often enough is admitted after all
+        int round = 0;
+        while (round < 20 && !cache.set("rising", round)) round++;
+        assertTrue("Expected frequently set key to be admitted", round < 20);
+        assertEquals("Expected value of admitted key", Integer.valueOf(round), cache.get("rising"));
+    }
+    
+    /*
+     * This test covers long runs of random set(), get() and delete() calls on caches of both
+     * policies, compared against java.util.HashMap with evicted keys removed.
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        for (FixedSizeCache.Eviction eviction : FixedSizeCache.Eviction.values()) {
+            final FixedSizeCache<Integer> cache = new FixedSizeCache<>(CACHE_SIZE, eviction);
+            final Map<String, Integer> expected = new HashMap<>();
+            cache.setEvictionListener((key, value) -> assertEquals("Expected evicted pair to match HashMap",
+                    expected.remove(key), value));
+            final Random random = new Random(eviction.ordinal());
+            for (int i = 0; i < 100000; i++) {
+                final String key = "key" + random.nextInt(CACHE_SIZE * 3);
+                final int operation = random.nextInt(3);
+                if (operation == 0) {
+                    final boolean absentFromFull = expected.size() == CACHE_SIZE && !expected.containsKey(key);
+                    final boolean success = cache.set(key, i);
+                    if (eviction == FixedSizeCache.Eviction.CLOCK || !absentFromFull) {
+                        assertTrue("Expected set to succeed", success);
+                    }
+                    if (success) expected.put(key, i);
+                }
+                else if (operation == 1) {
+                    assertEquals("Expected get to match HashMap", expected.get(key), cache.get(key));
+                }
+                else {
+                    assertEquals("Expected delete to match HashMap", expected.remove(key), cache.delete(key));
+                }
+                assertEquals("Expected load to match HashMap size", expected.size() / (double) CACHE_SIZE, cache.load(), DELTA);
+            }
+        }
+    }
+}
@@ -1,25 +1,160 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A fixed-sized hash map that associates string keys with arbitrary data object references.
- * Collision is resolved through linear probing.
+ * Collision is resolved through linear probing, or optionally through Robin Hood probing,
+ * which keeps probe lengths even at high load and lets a miss stop early.
+ * Keys, values and cached key hashes are kept in parallel arrays next to a compact
+ * per-slot state, so probing compares an int before touching a key and no per-entry
+ * object is ever allocated.
+ * Keys are hashed by a Hasher, a scrambled String.hashCode() by default, and the high bits of
+ * the hash select the home slot with a multiply-shift rather than a division.
+ * Entries may be given a time to live. Expired entries are removed when a lookup reaches them,
+ * reused by set(), and removed in bounded steps by sweep().
+ * Deleted slots are left as tombstones and reclaimed either right away, when they end a
+ * probe cluster, or by an in-place rehash once too many of them have built up. Robin Hood
+ * probing shifts later keys back into a deleted slot instead, so it never leaves tombstones.
+ * Keys can also be looked up from a CharSequence, or from UTF-8 bytes in an array or a buffer,
+ * which are hashed and compared against the stored keys in place without making a String.
+ * The live key/value pairs can be visited by forEach(), a cursor, or a stream that splits the
+ * slots into ranges to scan them in parallel. All of them fail fast, on a best-effort basis,
+ * if a key is added or removed while they run, other than through the cursor itself.
+ * The map can be written to a stream as a compact binary snapshot, and restored from one, or
+ * frozen into an immutable copy for maps that are built once and then only read.
+ * Operations can be counted, along with the number of slots each examined, by enabling metrics;
+ * while they are disabled, counting costs one null check per operation. Changes can likewise be
+ * recorded in a bounded change log, from which copies of the map in other processes catch up.
  * @author Yanlin Li
  * @param <V> object type of values
  */
 public class FixedSizeHashMap<V> {
     
+    /** Tombstones are compacted away once they exceed 1/MAX_TOMBSTONE_FRACTION of the slots. */
+    private static final int MAX_TOMBSTONE_FRACTION = 4;
+    
+    /** Number of keys of a batch operation whose home slots are loaded before any is probed. */
+    private static final int BATCH_GROUP = 16;
+    
+    /**
+     * Collision resolution strategy of a map.
+     */
+    public enum Probing {
+        /** Probe successive slots from the key's home slot until the key or an EMPTY slot is found. */
+        LINEAR,
+        /**
+         * Linear probing where a key being inserted takes the slot of any key closer to its
+         * own home slot, so a lookup can stop at the first key closer to home than itself.
+         */
+        ROBIN_HOOD
+    }
+    
+    /**
+     * Outcome of putIfAbsent().
+     */
+    public enum Outcome {
+        /** The key was absent, and the key/value pair is now stored. */
+        INSERTED,
+        /** The key was present, and its value was left unchanged. */
+        PRESENT,
+        /** The key was absent and the map is full, so nothing was stored. */
+        FULL
+    }
+    
+    /** Result of locate() for an absent key that has no free slot to go to. */
+    private static final int NO_SLOT = Integer.MIN_VALUE;
+    
+    /** Slot states. */
+    static final byte EMPTY = 0; // slot has never held a key
+    static final byte LIVE = 1; // slot holds a key/value pair
+    static final byte DELETED = 2; // slot held a key/value pair that has since been deleted
+    
     /** Instance variables. */
     private int size; // fixed size of bucket
-    private Entry<V>[] buckets; // array where map's key/value pair entries are stored
+    private String[] keys; // key stored in each slot, null unless slot is LIVE
+    private Object[] values; // value stored in each slot, null unless slot is LIVE
+    private int[] hashes; // cached hash of the key stored in each slot
+    private byte[] states; // EMPTY, LIVE or DELETED state of each slot
     private int itemCount; // number of key/value pairs currently present in map
+    private int tombstoneCount; // number of DELETED slots currently in map
+    private final Probing probing; // collision resolution strategy
+    private final Hasher hasher; // computes the hashes of keys
+    private long[] expiries; // System.nanoTime() deadline of each slot, 0 if none; null until a TTL is set
+    private LongSupplier clock = System::nanoTime; // source of the current time for expiries
+    private int sweepCursor; // next slot sweep() examines
+    private int maxDisplacement; // Robin Hood only: upper bound on distance of any key from home
+    private long earliestDeadline; // Robin Hood only: no key expires before this deadline, 0 if no key may expire
+    private MapMetrics metrics; // counts operations, null unless metrics are enabled
+    private ChangeLog<V> changeLog; // records changes for followers, null unless a change log is enabled
+    private int modCount; // number of keys added or removed other than by reads, to detect changes during iteration
+    private final KeyChars keyChars = new KeyChars(); // UTF-8 key of a byte lookup, decoded in place
+    private byte[] keyBytes = new byte[0]; // UTF-8 key of a lookup in a direct buffer, copied out
+    private final int[] groupHashes = new int[BATCH_GROUP]; // hashes of a group of batch keys
+    private final int[] groupHomes = new int[BATCH_GROUP]; // home slots of a group of batch keys
+    private final byte[] groupStates = new byte[BATCH_GROUP]; // states of the home slots of the group
+    private final int[] groupSlotHashes = new int[BATCH_GROUP]; // cached hashes at the home slots of the group
     
     /**
-     * Make a new fixed-size hash map of the specified size.
+     * Make a new fixed-size hash map of the specified size, using linear probing.
      * @param size fixed size of the map
      */
     public FixedSizeHashMap(final int size) {
+        this(size, Probing.LINEAR);
+    }
+    
+    /**
+     * Make a new fixed-size hash map of the specified size and collision resolution strategy.
+     * @param size fixed size of the map
+     * @param probing collision resolution strategy
+     */
+    public FixedSizeHashMap(final int size, final Probing probing) {
+        this(size, probing, Hasher.MURMUR);
+    }
+    
+    /**
+     * Make a new fixed-size hash map of the specified size, collision resolution strategy
+     * and hash function. Use Hasher.seeded() if keys may be chosen by an attacker.
+     * @param size fixed size of the map
+     * @param probing collision resolution strategy
+     * @param hasher computes the hashes of keys
+     */
+    public FixedSizeHashMap(final int size, final Probing probing, final Hasher hasher) {
+        if (probing == null)
+            throw new IllegalArgumentException("Probing cannot be null.");
+        if (hasher == null)
+            throw new IllegalArgumentException("Hasher cannot be null.");
+        
+        this.probing = probing;
+        this.hasher = hasher;
         this.size = size;
-        this.buckets = new Entry[size];
+        this.keys = new String[size];
+        this.values = new Object[size];
+        this.hashes = new int[size];
+        this.states = new byte[size];
         this.itemCount = 0;
+        this.tombstoneCount = 0;
+        this.maxDisplacement = 0;
     }
     
     /**
@@ -35,26 +170,66 @@ public class FixedSizeHashMap<V> {
         
         if (size == 0) return false; // operation always fails if map has size 0
         
-        int keyHash = hash(key);
-        Entry<V> entry = new Entry<>(key, value); // create a new bucket entry
-        int probe = keyHash; // probe starts at index keyHash
-        do { 
-            // Add item if location in bucket is empty
-            if (buckets[probe] == null || buckets[probe].isDeleted()) {
-                buckets[probe] = entry;
-                itemCount++;
-                return true;
-            }
-            // If location in bucket is nonempty, resolve collision 
-            else if (buckets[probe].getKey().equals(key)) {
-                buckets[probe].setValue(value); // reset value if keys are the same String
-                return true;
+        return put(key, hasher.hash(key), value, 0L);
+    }
+    
+    /**
+     * Stores the specified value with the specified key in this fixed-size map for a limited
+     * time. If the map previously contained a mapping for the key, the old value and its time
+     * to live are replaced. Once the time to live has passed, the map behaves as if the key had
+     * been deleted, although the key counts towards load() until it is reached by a lookup,
+     * set() or sweep(). Setting a key without a time to live makes it never expire.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @param ttl time to live of the key/value pair, positive
+     * @param unit unit of ttl
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     */
+    public boolean set(final String key, final V value, final long ttl, final TimeUnit unit) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (ttl <= 0 || unit == null)
+            throw new IllegalArgumentException("Time to live must be positive.");
+        
+        if (size == 0) return false; // operation always fails if map has size 0
+        
+        if (expiries == null) expiries = new long[size];
+        long deadline = clock.getAsLong() + unit.toNanos(ttl);
+        return put(key, hasher.hash(key), value, deadline == 0 ? 1 : deadline); // 0 means no deadline
+    }
+    
+    /**
+     * Stores the specified value with each of the specified keys, as set() would one key after
+     * another. All hashes of a group of keys are computed, and their home slots loaded,
+     * before any of them is probed, so the cache misses of different keys overlap.
+     * @param keys String keys with which the values are to be associated
+     * @param values values to be associated with the keys at the same indices
+     * @param stored bit set receiving whether each key/value pair is stored successfully:
+     *        bit (i % 64) of stored[i / 64] is set if keys[i] is stored, and cleared otherwise
+     * @return number of key/value pairs stored successfully
+     */
+    public int setAll(final String[] keys, final V[] values, final long[] stored) {
+        checkBatch(keys, values);
+        if (stored == null || stored.length < (keys.length + 63) / 64)
+            throw new IllegalArgumentException("Bit set is too small.");
+        
+        int storedCount = 0;
+        for (int from = 0; from < keys.length; from += BATCH_GROUP) {
+            int count = Math.min(BATCH_GROUP, keys.length - from);
+            loadGroup(keys, from, count);
+            for (int i = 0; i < count; i++) {
+                int index = from + i;
+                boolean success = size > 0 && put(keys[index], groupHashes[i], values[index], 0L);
+                if (success) {
+                    stored[index >>> 6] |= 1L << index;
+                    storedCount++;
+                }
+                else {
+                    stored[index >>> 6] &= ~(1L << index);
+                }
             }
-            // If different keys (same hash), further resolve collision through linear probing
-            probe++; // increment to the next buckets index
-            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
-        } while (probe != keyHash);
-        return false; // if probe looped back to keyHash, then buckets is full, operation failure
+        }
+        return storedCount;
     }
     
     /**
@@ -70,22 +245,123 @@ public class FixedSizeHashMap<V> {
         
         if (size == 0) return null; // map of size 0 has no value to get
         
-        int keyHash = hash(key);
-        int probe = keyHash; // probe starts at index keyHash
-        do { 
-            if (buckets[probe] == null) {
-                return null;
-            }
-            else if (buckets[probe].getKey().equals(key)) { // if both hash and keys match
-                if (buckets[probe].isDeleted())
-                    return null; // return null if entry is already deleted
-                return buckets[probe].getValue();
+        return lookup(key, hasher.hash(key));
+    }
+    
+    /**
+     * Returns the value to which the key holding the same characters as the specified
+     * character sequence is mapped, or null if this map contains no mapping for the key.
+     * The characters are hashed and compared in place, so no String is made.
+     * @param key characters of the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, 
+     *         or null if this map contains no mapping for the key
+     */
+    public V getChars(CharSequence key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return null; // map of size 0 has no value to get
+        
+        return lookup(key, hasher.hash(key));
+    }
+    
+    /**
+     * Returns the value to which the key encoded in UTF-8 in a range of a byte array is mapped,
+     * or null if this map contains no mapping for the key. The bytes are decoded into an array
+     * reused by every lookup, so no String is made; keys are hashed from their characters, so
+     * the bytes are decoded once rather than compared to each stored key in place. Bytes that
+     * are not well-formed UTF-8 match no key.
+     * @param key array holding the UTF-8 encoding of the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @return the value to which the specified key is mapped, 
+     *         or null if this map contains no mapping for the key
+     */
+    public V getUtf8(byte[] key, int offset, int length) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (offset < 0 || length < 0 || offset > key.length - length)
+            throw new IllegalArgumentException("Key range is out of bounds.");
+        
+        if (size == 0) return null; // map of size 0 has no value to get
+        
+        if (!keyChars.decode(key, offset, length)) return null; // not a key any String encodes to
+        return lookup(keyChars, hasher.hash(keyChars));
+    }
+    
+    /**
+     * Returns the value to which the key encoded in UTF-8 in the remaining bytes of a buffer is
+     * mapped, or null if this map contains no mapping for the key. The position of the buffer is
+     * left unchanged. Bytes that are not well-formed UTF-8 match no key.
+     * @param key buffer holding the UTF-8 encoding of the key between its position and limit
+     * @return the value to which the specified key is mapped, 
+     *         or null if this map contains no mapping for the key
+     */
+    public V getUtf8(ByteBuffer key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (key.hasArray()) return getUtf8(key.array(), key.arrayOffset() + key.position(), key.remaining());
+        // Copy the bytes of a direct buffer out into an array reused by every lookup
+        int length = key.remaining();
+        if (keyBytes.length < length) keyBytes = new byte[Math.max(length, 2 * keyBytes.length)];
+        for (int i = 0; i < length; i++) keyBytes[i] = key.get(key.position() + i);
+        return getUtf8(keyBytes, 0, length);
+    }
+    
+    /**
+     * Looks a key up in a map of nonzero size, as get() does.
+     * @param key characters of the key
+     * @param keyHash hash of key
+     * @return the value to which key is mapped, or null if this map contains no mapping for it
+     */
+    @SuppressWarnings("unchecked")
+    private V lookup(CharSequence key, int keyHash) {
+        int slot = find(key, keyHash);
+        int probes = metrics == null ? 0 : lookupLength(keyHash, slot);
+        slot = unlessExpiredForRead(slot);
+        if (metrics != null) metrics.recordGet(slot >= 0, probes);
+        keyRead(keyHash, slot);
+        return slot < 0 ? null : (V) values[slot];
+    }
+    
+    /**
+     * Looks up each of the specified keys, as get() would one key after another, writing the
+     * values found into a caller-supplied array. All hashes of a group of keys are computed,
+     * and their home slots loaded, before any of them is probed, so the cache misses of
+     * different keys overlap, and a key whose home slot is EMPTY or holds it is done without
+     * probing at all.
+     * @param keys String keys whose associated values are to be returned
+     * @param results array receiving, at the index of each key, the value to which the key
+     *        is mapped, or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public void getAll(final String[] keys, final V[] results) {
+        checkBatch(keys, results);
+        
+        for (int from = 0; from < keys.length; from += BATCH_GROUP) {
+            int count = Math.min(BATCH_GROUP, keys.length - from);
+            loadGroup(keys, from, count);
+            for (int i = 0; i < count; i++) {
+                String key = keys[from + i];
+                int slot;
+                if (size == 0 || groupStates[i] == EMPTY) {
+                    slot = -1; // no probe sequence passes through an EMPTY home slot
+                }
+                else if (groupStates[i] == LIVE && groupSlotHashes[i] == groupHashes[i]
+                        && key.equals(this.keys[groupHomes[i]])) {
+                    slot = groupHomes[i]; // key is stored at its home slot
+                }
+                else {
+                    slot = find(key, groupHashes[i]);
+                }
+                int probes = metrics == null || size == 0 ? 0 : lookupLength(groupHashes[i], slot);
+                slot = unlessExpiredForRead(slot);
+                if (probes > 0) metrics.recordGet(slot >= 0, probes);
+                if (size > 0) keyRead(groupHashes[i], slot);
+                results[from + i] = slot < 0 ? null : (V) values[slot];
             }
-            // If different keys (same hash), continue probing
-            probe++; // increment to the next buckets index
-            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
-        } while (probe != keyHash);
-        return null; // if probe looped back to keyHash, then key does not exist
+        }
     }
     
     /**
@@ -93,30 +369,182 @@ public class FixedSizeHashMap<V> {
      * @param key String key whose mapping is to be removed from the map
      * @return the previous value associated with key, or null if there was no mapping for key
      */
+    @SuppressWarnings("unchecked")
     public V delete(String key) {
         if (key == null)
             throw new IllegalArgumentException("Key cannot be null.");
         
         if (size == 0) return null; // map of size 0 has no value to delete
         
-        int keyHash = hash(key);
-        int probe = keyHash; // probe starts at index keyHash
-        do { 
-            if (buckets[probe] == null) {
-                return null;
-            }
-            else if (buckets[probe].getKey().equals(key)) { // if both hash and keys match
-                if (buckets[probe].isDeleted()) return null; // return null if entry is already deleted
-                V value = buckets[probe].getValue();
-                buckets[probe].delete();
-                itemCount--;
-                return value;
-            }
-            // If different keys (same hash), continue probing
-            probe++; // increment to the next buckets index
-            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
-        } while (probe != keyHash);
-        return null; // if probe looped back to keyHash, then key does not exist
+        int keyHash = hasher.hash(key);
+        int slot = find(key, keyHash);
+        int probes = metrics == null ? 0 : lookupLength(keyHash, slot);
+        slot = unlessExpired(slot);
+        if (metrics != null) metrics.recordDelete(slot >= 0, probes);
+        if (slot < 0) return null;
+        V value = (V) values[slot];
+        removeAt(slot);
+        return value;
+    }
+    
+    /**
+     * Deletes the values associated with each of the specified keys, as delete() would one key
+     * after another. All hashes of a group of keys are computed, and their home slots
+     * loaded, before any of them is probed, so the cache misses of different keys overlap.
+     * @param keys String keys whose mappings are to be removed from the map
+     * @param results array receiving, at the index of each key, the previous value associated
+     *        with the key, or null if there was no mapping for the key; may be null if the
+     *        previous values are not needed
+     * @return number of keys whose mappings were removed
+     */
+    @SuppressWarnings("unchecked")
+    public int deleteAll(final String[] keys, final V[] results) {
+        checkBatch(keys, results == null ? keys : results);
+        
+        int deletedCount = 0;
+        for (int from = 0; from < keys.length; from += BATCH_GROUP) {
+            int count = Math.min(BATCH_GROUP, keys.length - from);
+            loadGroup(keys, from, count);
+            for (int i = 0; i < count; i++) {
+                int slot = size == 0 ? -1 : find(keys[from + i], groupHashes[i]);
+                int probes = metrics == null || size == 0 ? 0 : lookupLength(groupHashes[i], slot);
+                slot = unlessExpired(slot);
+                if (probes > 0) metrics.recordDelete(slot >= 0, probes);
+                V value = null;
+                if (slot >= 0) {
+                    value = (V) values[slot];
+                    removeAt(slot);
+                    deletedCount++;
+                }
+                if (results != null) results[from + i] = value;
+            }
+        }
+        return deletedCount;
+    }
+    
+    /**
+     * Stores the specified value with the specified key only if the map contains no mapping for
+     * the key, probing for the key once. Unlike set(), this tells a new key from an existing one.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return INSERTED if the key/value pair was stored, PRESENT if the key was already in the
+     *         map, or FULL if the key was absent and could not be stored
+     */
+    public Outcome putIfAbsent(final String key, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return Outcome.FULL; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        int slot = locate(key, keyHash);
+        if (slot >= 0) {
+            keyRead(keyHash, slot);
+            return Outcome.PRESENT;
+        }
+        return insert(slot, key, keyHash, value) ? Outcome.INSERTED : Outcome.FULL;
+    }
+    
+    /**
+     * Replaces the value of the specified key only if it is currently mapped to the expected
+     * value, as compared by equals().
+     * @param key String key whose value is to be replaced
+     * @param expected value expected to be associated with the key
+     * @param value value to be associated with the key
+     * @return true if the value was replaced, false if the key is absent or has another value
+     */
+    public boolean replace(final String key, final V expected, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return false; // map of size 0 has no value to replace
+        
+        int keyHash = hasher.hash(key);
+        int slot = unlessExpired(find(key, keyHash));
+        if (slot < 0 || !Objects.equals(values[slot], expected)) return false;
+        if (changeLog != null) changeLog.appendSet(key, value);
+        values[slot] = value;
+        keyWritten(keyHash, slot, false);
+        return true;
+    }
+    
+    /**
+     * Returns the value of the specified key, first computing it with the given function and
+     * storing it if the key is absent, probing for the key once.
+     * The function is called at most once, and must not modify the map.
+     * @param key String key whose associated value is to be returned
+     * @param function computes the value of an absent key; null stores nothing
+     * @return the value associated with the key, or null if the function returned null or
+     *         the key was absent and could not be stored because the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(final String key, final Function<? super String, ? extends V> function) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (function == null)
+            throw new IllegalArgumentException("Function cannot be null.");
+        
+        if (size == 0) return null; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        int slot = locate(key, keyHash);
+        if (slot >= 0) {
+            keyRead(keyHash, slot);
+            return (V) values[slot];
+        }
+        V value = function.apply(key);
+        return value != null && insert(slot, key, keyHash, value) ? value : null;
+    }
+    
+    /**
+     * Computes a new value for the specified key from its current value, or null if it is
+     * absent, probing for the key once. The function is called exactly once, unless the map
+     * has size 0 and nothing can be stored, and must not modify the map. If it returns null,
+     * the key is deleted.
+     * @param key String key whose value is to be computed
+     * @param function computes the new value from the key and its current value
+     * @return the new value associated with the key, or null if there is none, because the
+     *         function returned null or the key was absent and the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V compute(final String key, final BiFunction<? super String, ? super V, ? extends V> function) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (function == null)
+            throw new IllegalArgumentException("Function cannot be null.");
+        
+        if (size == 0) return null; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        int slot = locate(key, keyHash);
+        return update(slot, key, keyHash, function.apply(key, slot >= 0 ? (V) values[slot] : null));
+    }
+    
+    /**
+     * Associates the specified value with the specified key if it is absent, and otherwise
+     * replaces its value with the result of the given function of the current value and the
+     * specified one, probing for the key once. This makes counting a key one call:
+     *     map.merge(key, 1, Integer::sum);
+     * The function is only called if the key is present, and must not modify the map. If it
+     * returns null, the key is deleted.
+     * @param key String key whose value is to be merged
+     * @param value value to store if the key is absent, and to merge otherwise
+     * @param function computes the new value from the current value and value
+     * @return the new value associated with the key, or null if there is none, because the
+     *         function returned null or the key was absent and the map is full
+     */
+    @SuppressWarnings("unchecked")
+    public V merge(final String key, final V value, final BiFunction<? super V, ? super V, ? extends V> function) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (value == null || function == null)
+            throw new IllegalArgumentException("Value and function cannot be null.");
+        
+        if (size == 0) return null; // operation always fails if map has size 0
+        
+        int keyHash = hasher.hash(key);
+        int slot = locate(key, keyHash);
+        return update(slot, key, keyHash, slot >= 0 ? function.apply((V) values[slot], value) : value);
     }
     
     /**
@@ -131,79 +559,1386 @@ public class FixedSizeHashMap<V> {
     }
     
     /**
-     * Hashes the key to find the bucket index at which the key is stored.
-     * @param key key to be hashed
-     * @return hash value
+     * Removes the expired key/value pairs from at most the given number of slots, continuing
+     * from where the previous call stopped and wrapping around at the end of the map, so
+     * repeated calls visit every slot in turn while each call takes bounded time.
+     * Tombstones left by a sweep are compacted once it has finished, so that no key is moved
+     * past the sweep's position while it runs.
+     * @param maxSlots number of slots to examine
+     * @return number of expired key/value pairs removed
      */
-    private int hash(String key) {
-        return Math.abs(key.hashCode()) % size;
+    public int sweep(final int maxSlots) {
+        if (maxSlots < 0)
+            throw new IllegalArgumentException("Number of slots cannot be negative.");
+        
+        if (expiries == null) return 0; // no key has ever had a time to live
+        int removed = 0;
+        long now = clock.getAsLong();
+        int n = Math.min(maxSlots, size);
+        while (n > 0) {
+            int slot = sweepCursor;
+            if (states[slot] == LIVE && isExpired(slot, now)) {
+                removeAt(slot, false);
+                removed++;
+                // Robin Hood probing may have shifted the next key back into slot, examine it again
+                if (states[slot] == LIVE) continue;
+            }
+            sweepCursor = slot + 1 == size ? 0 : slot + 1;
+            n--;
+        }
+        if (tombstoneCount * MAX_TOMBSTONE_FRACTION > size) compact();
+        return removed;
     }
-
+    
     /**
-     * Entry representing the object in the map's buckets where the key/value pair is stored.
-     * @param <V> object type of values
+     * Runs sweep() periodically on an executor's thread. The sweeps synchronize on this map,
+     * so while they are scheduled every other use of the map must also synchronize on it.
+     * @param executor executor running the sweeps
+     * @param period time between sweeps
+     * @param unit unit of period
+     * @param maxSlots number of slots each sweep examines
+     * @return future of the sweeps, whose cancel() stops them
      */
-    class Entry<V> {
+    public ScheduledFuture<?> scheduleSweeps(final ScheduledExecutorService executor, final long period,
+            final TimeUnit unit, final int maxSlots) {
+        if (executor == null || unit == null)
+            throw new IllegalArgumentException("Executor and unit cannot be null.");
+        if (period <= 0 || maxSlots < 0)
+            throw new IllegalArgumentException("Period must be positive and number of slots nonnegative.");
         
-        /** Instance variables. */
-        private String key;
-        private V value;
-        private boolean isDeleted;
-        
-        /**
-         * Make a new entry stroing the key/value pair.
-         * @param key String key with which the specified value is to be associated
-         * @param value value to be associated with the specified key
-         */
-        Entry(String key, V value) {
-           this.key = key;
-           this.value = value;
-           this.isDeleted = false;
+        return executor.scheduleAtFixedRate(() -> {
+            synchronized (this) {
+                sweep(maxSlots);
+            }
+        }, period, period, unit);
+    }
+    
+    /**
+     * Returns the number of deleted slots that have not been reclaimed yet.
+     * Tombstones do not count towards load() but lengthen the probes that pass over them.
+     * @return number of tombstones in map
+     */
+    public int tombstones() {
+        return tombstoneCount;
+    }
+    
+    /**
+     * Returns the average number of slots examined to find a key present in the map.
+     * A key stored at the slot its hash maps to has probe length 1.
+     * @return average probe length over all keys in map, or 0 if map is empty
+     */
+    public double averageProbeLength() {
+        if (itemCount == 0) return 0.0;
+        long total = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (states[slot] == LIVE) total += probeLength(slot);
         }
-        
-        /**
-         * @return key of the entry
-         */
-        String getKey() {
-           return key;
+        return (double) total / itemCount;
+    }
+    
+    /**
+     * Returns the largest number of slots examined to find a key present in the map.
+     * @return maximum probe length over all keys in map, or 0 if map is empty
+     */
+    public int maxProbeLength() {
+        int max = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (states[slot] == LIVE) max = Math.max(max, probeLength(slot));
         }
-        
-        /**
-         * @return value of the entry
-         */
-        V getValue() {
-           return value;
+        return max;
+    }
+    
+    /**
+     * Returns the length of the longest run of consecutive slots that are not EMPTY, wrapping
+     * around the end of the map. Tombstones count, since probes pass over them, so in a LINEAR
+     * map this bounds the number of slots any lookup examines.
+     * @return length of the longest cluster, or the size of the map if it has no EMPTY slot
+     */
+    public int longestCluster() {
+        // Start after an EMPTY slot, so that no cluster wraps around the start of the scan
+        int start = -1;
+        for (int slot = 0; slot < size && start < 0; slot++) {
+            if (states[slot] == EMPTY) start = slot;
         }
-        
-        /**
-         * @return true if the entry is deleted, false otherwise
-         */
-        boolean isDeleted() {
-            return isDeleted;
+        if (start < 0) return size;
+        int longest = 0;
+        int run = 0;
+        for (int n = 1; n <= size; n++) {
+            int slot = start + n < size ? start + n : start + n - size;
+            run = states[slot] == EMPTY ? 0 : run + 1;
+            longest = Math.max(longest, run);
         }
+        return longest;
+    }
+    
+    /**
+     * Starts counting get(), set() and delete() calls, and the batch operations key by key:
+     * hits and misses, successes and failures, and the number of slots each examined.
+     * A miss is retraced to count its slots, so misses take about twice as long while metrics
+     * are enabled. Operations on a map of size 0 examine no slot and are not counted.
+     * Enabling metrics that are already enabled has no effect.
+     * @return metrics of the map, which may be read from any thread and registered with JMX
+     */
+    public MapMetrics enableMetrics() {
+        if (metrics == null) metrics = new MapMetrics(this, size);
+        return metrics;
+    }
+    
+    /**
+     * Stops counting operations. Metrics enabled again start from zero.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+    
+    /**
+     * Starts recording every change to the map in a change log of the given capacity: every
+     * key stored by set(), setAll(), the atomic operations or a cursor, and every key removed,
+     * whether deleted, evicted or expired. Records are appended in place into a ring allocated
+     * here, so recording allocates nothing, and the oldest records are overwritten once it is
+     * full. Times to live are not recorded; a follower sees an expired key deleted once this map
+     * removes it. Restoring a snapshot with readFrom() is not recorded either, so followers
+     * restore the same snapshot. Enabling a change log that is already enabled returns it
+     * unchanged.
+     * @param capacity number of bytes of records kept
+     * @param codec writes values into records; every value stored must be supported by it,
+     *        or the operation storing it throws and leaves the map unchanged
+     * @return change log of the map, from which followers apply the changes
+     */
+    public ChangeLog<V> enableChangeLog(final int capacity, final ValueCodec<V> codec) {
+        if (changeLog == null) changeLog = new ChangeLog<>(capacity, codec);
+        return changeLog;
+    }
+    
+    /**
+     * Stops recording changes. A change log enabled again starts from sequence number 0.
+     */
+    public void disableChangeLog() {
+        changeLog = null;
+    }
+    
+    /**
+     * Copies the metrics of the map. Counts are zero unless metrics are enabled, while the
+     * load, tombstones and longest cluster are always filled in.
+     * @return immutable copy of the metrics
+     */
+    public MetricsSnapshot snapshot() {
+        MapMetrics metrics = this.metrics;
+        return (metrics != null ? metrics : new MapMetrics(this, size)).snapshot();
+    }
+    
+    /**
+     * Performs an action on every key/value pair in the map, in slot order. Expired keys are
+     * skipped. Nothing is allocated per pair.
+     * @param action action to perform on each key and its value
+     * @throws ConcurrentModificationException if the action adds or removes a key; reads that
+     *         find a key expired are not changes
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final BiConsumer<? super String, ? super V> action) {
+        if (action == null)
+            throw new IllegalArgumentException("Action cannot be null.");
         
-        /**
-         * Sets the key of the entry to be the new specified key.
-         * NOT USED.
-         * @param key new specified key
-         */
-        void setKey(String key) {
-            this.key = key;
+        int expectedModCount = modCount;
+        long now = expiries == null ? 0 : clock.getAsLong();
+        for (int slot = 0; slot < size; slot++) {
+            if (states[slot] != LIVE || (expiries != null && isExpired(slot, now))) continue;
+            action.accept(keys[slot], (V) values[slot]);
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
         }
-        
-        /**
-         * Sets the value of the entry to be the new specified value.
-         * @param value new specified value
-         */
-        void setValue(V value) {
-            this.value = value;
+    }
+    
+    /**
+     * Returns a cursor over the key/value pairs in the map, in slot order. Expired keys are
+     * skipped, and reads that find a key expired do not disturb the cursor. Moving the cursor allocates nothing, so one cursor can visit a map of any size
+     * without creating garbage.
+     * @return cursor positioned before the first key/value pair
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+    
+    /**
+     * Returns a sequential stream of the key/value pairs in the map, whose spliterator splits
+     * the slots of the map into ranges. Call parallel() on it to scan a large map on several
+     * threads; the map must not be changed until the stream has finished. Expired keys are
+     * skipped. Each pair is passed down the stream as a new immutable Map.Entry.
+     * @return stream of the key/value pairs in map
+     */
+    public Stream<Map.Entry<String, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+    
+    /**
+     * Returns a spliterator over the key/value pairs in the map, as stream() uses.
+     * It is late-binding and fails fast if a key is added or removed while it runs.
+     * @return spliterator covering every slot of the map
+     */
+    public Spliterator<Map.Entry<String, V>> spliterator() {
+        return new EntrySpliterator(0, -1, 0, 0);
+    }
+    
+    /**
+     * Makes an immutable copy of the key/value pairs in the map, laid out for reads only by a
+     * minimal perfect hash. Expired keys are left out. The copy does not change when the map
+     * does, and can be read by any number of threads without synchronization.
+     * @return frozen copy of map
+     * @throws IllegalStateException if no perfect hash of the keys is found
+     */
+    public FrozenFixedSizeHashMap<V> freeze() {
+        final String[] liveKeys = new String[itemCount];
+        final Object[] liveValues = new Object[itemCount];
+        int count = 0;
+        long now = expiries == null ? 0 : clock.getAsLong();
+        for (int slot = 0; slot < size; slot++) {
+            if (states[slot] != LIVE || (expiries != null && isExpired(slot, now))) continue;
+            liveKeys[count] = keys[slot];
+            liveValues[count] = values[slot];
+            count++;
         }
-         /**
-          * Sets the key to be deleted.
-          */
-        void delete() {
-            isDeleted = true;
+        return new FrozenFixedSizeHashMap<>(liveKeys, liveValues, count);
+    }
+    
+    /**
+     * Writes the key/value pairs of the map to a stream as a binary snapshot, in chunks of
+     * about 64 KiB, so the snapshot is never held in memory whole. Expired keys are left out,
+     * and the remaining time to live of the others is recorded. The stream is not closed.
+     * @param out stream to write to
+     * @param codec converts values to bytes; it must accept every value in the map
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(final OutputStream out, final ValueCodec<? super V> codec) throws IOException {
+        if (out == null)
+            throw new IllegalArgumentException("Stream cannot be null.");
+        writeTo(Channels.newChannel(out), codec);
+    }
+    
+    /**
+     * Writes the key/value pairs of the map to a channel as a binary snapshot, as
+     * writeTo(OutputStream, ValueCodec) does. The channel is not closed.
+     * @param out channel to write to
+     * @param codec converts values to bytes; it must accept every value in the map
+     * @throws IOException if the channel cannot be written
+     */
+    public void writeTo(final WritableByteChannel out, final ValueCodec<? super V> codec) throws IOException {
+        if (out == null || codec == null)
+            throw new IllegalArgumentException("Channel and codec cannot be null.");
+        SnapshotFormat.write(this, out, codec);
+    }
+    
+    /**
+     * Restores the key/value pairs of a snapshot written by writeTo() into this map, which
+     * must be empty, reading the snapshot chunk by chunk. The keys of each chunk are decoded
+     * and hashed by this map's hasher in parallel, so the codec and the hasher must be safe to
+     * call from several threads. If this map has the size and linear probing of the map that
+     * wrote the snapshot, every key whose recorded hash agrees is copied back into the slot it
+     * was in, without probing. Every other key is stored as set() would. Times to live resume
+     * where they stopped.
+     * The stream is not closed.
+     * @param in stream to read from, positioned at the start of a snapshot
+     * @param codec converts bytes to values, of the same width as the codec that wrote them
+     * @return number of key/value pairs restored
+     * @throws IOException if the stream cannot be read, or does not hold an intact snapshot
+     *         of values of the codec's width and of no more keys than this map can hold
+     */
+    public int readFrom(final InputStream in, final ValueCodec<? extends V> codec) throws IOException {
+        if (in == null)
+            throw new IllegalArgumentException("Stream cannot be null.");
+        return readFrom(Channels.newChannel(in), codec);
+    }
+    
+    /**
+     * Restores the key/value pairs of a snapshot written by writeTo() into this map, which
+     * must be empty, as readFrom(InputStream, ValueCodec) does. The channel is not closed.
+     * @param in channel to read from, positioned at the start of a snapshot
+     * @param codec converts bytes to values, of the same width as the codec that wrote them
+     * @return number of key/value pairs restored
+     * @throws IOException if the channel cannot be read, or does not hold an intact snapshot
+     *         of values of the codec's width and of no more keys than this map can hold
+     */
+    public int readFrom(final ReadableByteChannel in, final ValueCodec<? extends V> codec) throws IOException {
+        if (in == null || codec == null)
+            throw new IllegalArgumentException("Channel and codec cannot be null.");
+        if (itemCount != 0)
+            throw new IllegalStateException("Map must be empty to restore a snapshot.");
+        return SnapshotFormat.read(this, in, codec);
+    }
+    
+    /**
+     * Replaces the source of the current time used for expiries, for tests.
+     * @param clock returns the current time in nanoseconds, like System.nanoTime()
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+    
+    /**
+     * Removes the key/value pair of a slot found by a lookup if it has expired.
+     * @param slot index of a LIVE slot, or -1
+     * @return slot, or -1 if slot was -1 or has expired
+     */
+    private int unlessExpired(int slot) {
+        if (slot < 0 || expiries == null || !isExpired(slot, clock.getAsLong())) return slot;
+        removeAt(slot);
+        return -1;
+    }
+    
+    /**
+     * Hides the key/value pair of a slot found by a read if it has expired. A read must not
+     * disturb forEach() or a cursor in progress, so the pair is only removed if no other key
+     * moves, and the removal is not counted as a modification: a linear map leaves a tombstone
+     * without compacting, and a Robin Hood map leaves a pair followed by a displaced key for a
+     * later write or sweep() to remove.
+     * @param slot index of a LIVE slot, or -1
+     * @return slot, or -1 if slot was -1 or has expired
+     */
+    private int unlessExpiredForRead(int slot) {
+        if (slot < 0 || expiries == null || !isExpired(slot, clock.getAsLong())) return slot;
+        if (probing == Probing.ROBIN_HOOD) {
+            int next = slot + 1 == size ? 0 : slot + 1;
+            if (states[next] == LIVE && displacement(next) > 0) return -1; // removal would shift it back
+        }
+        clearAt(slot, false);
+        return -1;
+    }
+    
+    /**
+     * @param slot index of a LIVE slot, in a map with expiries
+     * @param now current time
+     * @return true if the key/value pair of slot has a deadline that has passed
+     */
+    private boolean isExpired(int slot, long now) {
+        long deadline = expiries[slot];
+        return deadline != 0 && now - deadline >= 0;
+    }
+    
+    /**
+     * Called after get() or getAll() has looked a key up in a map of nonzero size.
+     * Does nothing by default.
+     * @param keyHash hash of the key
+     * @param slot index of the LIVE slot holding the key, or -1 if the key is not in the map
+     */
+    void keyRead(int keyHash, int slot) {
+    }
+    
+    /**
+     * Called after set() or setAll() has stored a key in a LINEAR map. Does nothing by default.
+     * @param keyHash hash of the key
+     * @param slot index of the LIVE slot holding the key
+     * @param inserted true if the key was absent, false if only its value was replaced
+     */
+    void keyWritten(int keyHash, int slot, boolean inserted) {
+    }
+    
+    /**
+     * Called before a key is moved from one slot to another, when Robin Hood probing shifts
+     * keys back after a deletion or when tombstones are compacted. Does nothing by default.
+     * @param from index of the LIVE slot holding the key
+     * @param to index of the EMPTY slot the key moves to
+     */
+    void slotMoved(int from, int to) {
+    }
+    
+    /**
+     * Called when set() or setAll() finds a LINEAR map full, to choose a key to evict so that
+     * the key being set can be stored. Evicts nothing by default.
+     * @param keyHash hash of the key being set
+     * @return index of the LIVE slot to evict, or -1 to leave the map unchanged and fail
+     */
+    int evictionVictim(int keyHash) {
+        return -1;
+    }
+    
+    /**
+     * Called after a key/value pair has been evicted and the key being set stored in its place.
+     * Does nothing by default.
+     * @param key evicted key
+     * @param value evicted value
+     */
+    void evicted(String key, Object value) {
+    }
+    
+    /**
+     * @return fixed size of the map
+     */
+    int capacity() {
+        return size;
+    }
+    
+    /**
+     * @param slot slot index
+     * @return true if slot holds a key/value pair
+     */
+    boolean isLive(int slot) {
+        return states[slot] == LIVE;
+    }
+    
+    /**
+     * @param slot index of a LIVE slot
+     * @return cached hash of the key stored in slot
+     */
+    int hashAt(int slot) {
+        return hashes[slot];
+    }
+    
+    /**
+     * @return collision resolution strategy of the map
+     */
+    Probing probing() {
+        return probing;
+    }
+    
+    /**
+     * @return hasher of the map
+     */
+    Hasher hasher() {
+        return hasher;
+    }
+    
+    /**
+     * @return number of key/value pairs in the map, including expired ones not removed yet
+     */
+    int itemCount() {
+        return itemCount;
+    }
+    
+    /**
+     * @param slot index of a LIVE slot
+     * @return key stored in slot
+     */
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+    
+    /**
+     * @param slot index of a LIVE slot
+     * @return value stored in slot
+     */
+    Object valueAt(int slot) {
+        return values[slot];
+    }
+    
+    /**
+     * @param slot index of a LIVE slot
+     * @return expiry deadline of the key/value pair in slot, or 0 if it never expires
+     */
+    long deadlineAt(int slot) {
+        return expiries == null ? 0 : expiries[slot];
+    }
+    
+    /**
+     * @return current time of the clock used for expiries
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+    
+    /**
+     * Stores a key/value pair with a known hash, as set() would. Map must have nonzero size.
+     * @param key String key
+     * @param keyHash hash of key computed by the map's hasher
+     * @param value value to be associated with key
+     * @param deadline expiry deadline of the key/value pair, or 0 if it never expires
+     * @return true if the key/value pair is stored successfully, false if map is full
+     */
+    boolean putHashed(String key, int keyHash, Object value, long deadline) {
+        if (deadline != 0 && expiries == null) expiries = new long[size];
+        return put(key, keyHash, value, deadline);
+    }
+    
+    /**
+     * Looks a key with a known hash up, as get() would.
+     * @param key String key
+     * @param keyHash hash of key computed for the map
+     * @return the value to which key is mapped, or null if this map contains no mapping for it
+     */
+    V getHashed(String key, int keyHash) {
+        return size == 0 ? null : lookup(key, keyHash);
+    }
+    
+    /**
+     * @param key String key
+     * @param keyHash hash of key computed for the map
+     * @return true if the map holds a key/value pair for key that has not expired
+     */
+    boolean containsHashed(String key, int keyHash) {
+        return size > 0 && unlessExpiredForRead(find(key, keyHash)) >= 0;
+    }
+    
+    /**
+     * Deletes a key with a known hash, as delete() would.
+     * @param key String key
+     * @param keyHash hash of key computed for the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    V deleteHashed(String key, int keyHash) {
+        int slot = size == 0 ? -1 : unlessExpired(find(key, keyHash));
+        if (slot < 0) return null;
+        V value = (V) values[slot];
+        removeAt(slot);
+        return value;
+    }
+    
+    /**
+     * Stores a key/value pair in the slot it was in in a LINEAR map of the same size and
+     * hasher, without probing. The EMPTY slots between the key's home slot and its slot become
+     * tombstones, so lookups keep probing past them until the keys that were stored there are
+     * restored too, and stay tombstones if those keys are never restored. Call restored() once
+     * every key is stored.
+     * @param slot index of the slot the key was in
+     * @param key String key
+     * @param keyHash hash of key computed by the map's hasher
+     * @param value value to be associated with key
+     * @param deadline expiry deadline of the key/value pair, or 0 if it never expires
+     * @return true if the key is stored, false if slot already holds a key
+     */
+    boolean restoreAt(int slot, String key, int keyHash, Object value, long deadline) {
+        if (states[slot] == LIVE) return false;
+        for (int probe = indexFor(keyHash); probe != slot; probe = probe + 1 == size ? 0 : probe + 1) {
+            if (states[probe] == EMPTY) {
+                states[probe] = DELETED;
+                tombstoneCount++;
+            }
+        }
+        if (states[slot] == DELETED) tombstoneCount--;
+        if (deadline != 0 && expiries == null) expiries = new long[size];
+        modCount++;
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = keyHash;
+        states[slot] = LIVE;
+        if (expiries != null) expiries[slot] = deadline;
+        itemCount++;
+        return true;
+    }
+    
+    /**
+     * Compacts the tombstones left by restoreAt() once they pass their threshold.
+     */
+    void restored() {
+        if (tombstoneCount * MAX_TOMBSTONE_FRACTION > size) compact();
+    }
+    
+    /**
+     * Checks the arrays given to a batch operation, and that none of the keys is null,
+     * before the map is changed.
+     * @param keys keys of the batch
+     * @param other array of values or results, which must be as long as keys
+     */
+    private static void checkBatch(String[] keys, Object[] other) {
+        if (keys == null)
+            throw new IllegalArgumentException("Keys cannot be null.");
+        if (other == null || other.length != keys.length)
+            throw new IllegalArgumentException("Arrays must have the same length as keys.");
+        for (String key : keys) {
+            if (key == null)
+                throw new IllegalArgumentException("Key cannot be null.");
+        }
+    }
+    
+    /**
+     * Computes the hashes and home slots of a group of batch keys, then loads the state and
+     * cached hash of every home slot. The loads do not depend on each other, so the processor
+     * can have all of their cache misses outstanding at once, and the probes that follow find
+     * the home slots in cache.
+     * @param keys keys of the batch
+     * @param from index in keys of the first key of the group
+     * @param count number of keys in the group, at most BATCH_GROUP
+     */
+    private void loadGroup(String[] keys, int from, int count) {
+        for (int i = 0; i < count; i++) {
+            groupHashes[i] = hasher.hash(keys[from + i]);
+        }
+        if (size == 0) return;
+        for (int i = 0; i < count; i++) {
+            groupHomes[i] = indexFor(groupHashes[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            int home = groupHomes[i];
+            groupStates[i] = states[home];
+            groupSlotHashes[i] = hashes[home];
+        }
+    }
+    
+    /**
+     * Finds the slot holding the given key. Map must have nonzero size.
+     * @param key key to look for
+     * @param keyHash hash of key
+     * @return index of the LIVE slot holding key, or -1 if key is not in the map
+     */
+    private int find(CharSequence key, int keyHash) {
+        if (probing == Probing.ROBIN_HOOD) return findRobinHood(key, keyHash);
+        
+        int home = indexFor(keyHash);
+        int probe = home; // probe starts at index home
+        do { 
+            byte state = states[probe];
+            if (state == EMPTY) {
+                return -1;
+            }
+            else if (state == LIVE && hashes[probe] == keyHash && sameKey(keys[probe], key)) {
+                return probe;
+            }
+            // If deleted slot or different keys (same hash), continue probing
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return -1; // if probe looped back to home, then key does not exist
+    }
+    
+    /**
+     * Finds the slot holding the given key in a Robin Hood map. The probe stops as soon as
+     * it reaches a key closer to its home slot than the given key would be, or goes past the
+     * largest displacement in the map, since the key would have been stored before either.
+     * @param key key to look for
+     * @param keyHash hash of key
+     * @return index of the LIVE slot holding key, or -1 if key is not in the map
+     */
+    private int findRobinHood(CharSequence key, int keyHash) {
+        int probe = indexFor(keyHash);
+        for (int distance = 0; distance <= maxDisplacement; distance++) {
+            if (states[probe] == EMPTY || displacement(probe) < distance) {
+                return -1;
+            }
+            else if (hashes[probe] == keyHash && sameKey(keys[probe], key)) {
+                return probe;
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        }
+        return -1; // no key in the map is displaced this far from home
+    }
+    
+    /**
+     * @param stored key stored in a LIVE slot
+     * @param key characters of a key being looked up
+     * @return true if key holds the same characters as stored
+     */
+    private static boolean sameKey(String stored, CharSequence key) {
+        return key instanceof String ? stored.equals(key) : stored.contentEquals(key);
+    }
+    
+    /**
+     * Stores a key/value pair in a map of nonzero size.
+     * @param key String key with which the specified value is to be associated
+     * @param keyHash hash of key
+     * @param value value to be associated with the specified key
+     * @param deadline expiry deadline of the key/value pair, or 0 if it never expires
+     * @return true if the given key/value pair is stored successfully, false if map is full
+     */
+    private boolean put(String key, int keyHash, Object value, long deadline) {
+        if (probing == Probing.ROBIN_HOOD) return setRobinHood(key, keyHash, value, deadline);
+        
+        long now = expiries == null ? 0 : clock.getAsLong();
+        int home = indexFor(keyHash);
+        int free = -1; // first DELETED or EMPTY slot seen along the probe sequence
+        int probe = home; // probe starts at index home
+        do { 
+            byte state = states[probe];
+            // An EMPTY slot ends the probe sequence: the key is not present further on
+            if (state == EMPTY) {
+                if (free < 0) free = probe;
+                break;
+            }
+            // Remember the first deleted slot, but keep probing in case the key is stored later
+            else if (state == DELETED) {
+                if (free < 0) free = probe;
+            }
+            // Reset value if keys are the same String, comparing cached hashes first
+            else if (hashes[probe] == keyHash && key.equals(keys[probe])) {
+                if (changeLog != null) changeLog.appendSet(key, value);
+                values[probe] = value;
+                if (expiries != null) expiries[probe] = deadline;
+                if (metrics != null) metrics.recordSet(true, distance(home, probe) + 1);
+                keyWritten(keyHash, probe, false);
+                return true;
+            }
+            // Turn an expired key into a tombstone that can be reused
+            else if (expiries != null && isExpired(probe, now)) {
+                expireAt(probe);
+                if (free < 0) free = probe;
+            }
+            // If different keys (same hash), further resolve collision through linear probing
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        
+        if (free < 0) { // probe looped back to home without a free slot, map is full
+            int victim = evictionVictim(keyHash);
+            if (victim < 0) {
+                if (metrics != null) metrics.recordSet(false, size);
+                return false;
+            }
+            String evictedKey = keys[victim];
+            Object evictedValue = values[victim];
+            removeAt(victim);
+            put(key, keyHash, value, deadline); // finds the slot freed by the eviction
+            evicted(evictedKey, evictedValue);
+            return true;
+        }
+        // The probe stopped at an EMPTY slot, or examined every slot and wrapped around to home
+        if (metrics != null) metrics.recordSet(true, states[probe] == EMPTY ? distance(home, probe) + 1 : size);
+        insertLinear(free, key, keyHash, value, deadline);
+        return true;
+    }
+    
+    /**
+     * Stores a key absent from a linear-probing map in a free slot of its probe sequence.
+     * @param free first DELETED or EMPTY slot of the probe sequence of key
+     * @param key String key with which the specified value is to be associated
+     * @param keyHash hash of key
+     * @param value value to be associated with the specified key
+     * @param deadline expiry deadline of the key/value pair, or 0 if it never expires
+     */
+    private void insertLinear(int free, String key, int keyHash, Object value, long deadline) {
+        if (changeLog != null) changeLog.appendSet(key, value);
+        if (states[free] == DELETED) tombstoneCount--; // reuse the tombstone
+        modCount++;
+        keys[free] = key;
+        values[free] = value;
+        hashes[free] = keyHash;
+        states[free] = LIVE;
+        if (expiries != null) expiries[free] = deadline;
+        itemCount++;
+        keyWritten(keyHash, free, true);
+    }
+    
+    /**
+     * Turns the expired key/value pair of a LIVE slot into a tombstone, without compacting.
+     * @param slot index of the LIVE slot
+     */
+    private void expireAt(int slot) {
+        if (changeLog != null) changeLog.appendDelete(keys[slot]);
+        modCount++;
+        keys[slot] = null;
+        values[slot] = null;
+        states[slot] = DELETED;
+        tombstoneCount++;
+        itemCount--;
+    }
+    
+    /**
+     * Finds the slot holding a key in a map of nonzero size, or else the slot at which it would
+     * be inserted, in a single probe pass. Expired keys along the way are removed, as put()
+     * removes them.
+     * @param key String key to look for
+     * @param keyHash hash of key
+     * @return index of the LIVE slot holding key; if key is absent, ~slot where slot is the free
+     *         slot at which to insert it, or NO_SLOT if the map is full
+     */
+    private int locate(String key, int keyHash) {
+        if (probing == Probing.ROBIN_HOOD) return locateRobinHood(key, keyHash);
+        
+        long now = expiries == null ? 0 : clock.getAsLong();
+        int home = indexFor(keyHash);
+        int free = -1; // first DELETED or EMPTY slot seen along the probe sequence
+        int probe = home; // probe starts at index home
+        do {
+            byte state = states[probe];
+            if (state == EMPTY) {
+                if (free < 0) free = probe;
+                break;
+            }
+            else if (state == DELETED) {
+                if (free < 0) free = probe;
+            }
+            else if (expiries != null && isExpired(probe, now)) {
+                boolean sameKey = hashes[probe] == keyHash && key.equals(keys[probe]);
+                expireAt(probe);
+                if (free < 0) free = probe;
+                if (sameKey) break; // the key is stored once at most, so it is now absent
+            }
+            else if (hashes[probe] == keyHash && key.equals(keys[probe])) {
+                return probe;
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return free < 0 ? NO_SLOT : ~free;
+    }
+    
+    /**
+     * Finds the slot holding a key in a Robin Hood map, or else the slot at which its insertion
+     * starts, in a single probe pass.
+     * @param key String key to look for
+     * @param keyHash hash of key
+     * @return index of the LIVE slot holding key; if key is absent, ~slot where slot is the
+     *         first slot that is EMPTY or holds a key closer to its home slot, or NO_SLOT if
+     *         the map is full
+     */
+    private int locateRobinHood(String key, int keyHash) {
+        int probe = indexFor(keyHash);
+        for (int distance = 0; distance <= maxDisplacement; distance++) {
+            if (states[probe] == EMPTY || displacement(probe) < distance) break;
+            if (hashes[probe] == keyHash && key.equals(keys[probe])) {
+                if (unlessExpired(probe) >= 0) return probe;
+                return locateRobinHood(key, keyHash); // keys were shifted back over the expired one
+            }
+            probe++;
+            if (probe == size) probe = 0;
+        }
+        if (itemCount < size) return ~probe;
+        return reclaimExpired() ? locateRobinHood(key, keyHash) : NO_SLOT; // make room if any key expired
+    }
+    
+    /**
+     * Stores a key found absent by locate().
+     * @param location result of locate() for the key, below 0
+     * @param key String key with which the specified value is to be associated
+     * @param keyHash hash of key
+     * @param value value to be associated with the specified key
+     * @return true if the key/value pair is stored successfully, false if map is full
+     */
+    private boolean insert(int location, String key, int keyHash, Object value) {
+        if (location == NO_SLOT) return put(key, keyHash, value, 0L); // evicts a key if the map may
+        
+        if (probing == Probing.ROBIN_HOOD) {
+            int probe = ~location;
+            if (changeLog != null) changeLog.appendSet(key, value);
+            modCount++;
+            insertRobinHood(probe, distance(indexFor(keyHash), probe), key, keyHash, value, 0L);
+        }
+        else {
+            insertLinear(~location, key, keyHash, value, 0L);
+        }
+        return true;
+    }
+    
+    /**
+     * Stores the new value of a key located by locate(), deleting the key if it is null.
+     * @param location result of locate() for the key
+     * @param key String key whose value is to be stored
+     * @param keyHash hash of key
+     * @param value new value of the key, or null to delete it
+     * @return value, or null if the key was absent and could not be stored
+     */
+    private V update(int location, String key, int keyHash, V value) {
+        if (location >= 0) {
+            if (value == null) {
+                removeAt(location);
+            }
+            else {
+                if (changeLog != null) changeLog.appendSet(key, value);
+                values[location] = value;
+                keyWritten(keyHash, location, false);
+            }
+            return value;
+        }
+        return value != null && insert(location, key, keyHash, value) ? value : null;
+    }
+    
+    /**
+     * Stores the specified value with the specified key in a Robin Hood map, in a single pass:
+     * the lookup for an existing key stops where the key would belong, and insertion carries
+     * on from there, swapping the key being placed with any key closer to its home slot.
+     * @param key String key with which the specified value is to be associated
+     * @param keyHash hash of key
+     * @param value value to be associated with the specified key
+     * @param deadline expiry deadline of the key/value pair, or 0 if it never expires
+     * @return true if the given key/value pair is stored successfully, false if map is full
+     */
+    private boolean setRobinHood(String key, int keyHash, Object value, long deadline) {
+        if (deadline != 0 && (earliestDeadline == 0 || deadline - earliestDeadline < 0)) earliestDeadline = deadline;
+        int probe = indexFor(keyHash);
+        int distance = 0;
+        for (; distance <= maxDisplacement; distance++) {
+            if (states[probe] == EMPTY || displacement(probe) < distance) break;
+            if (hashes[probe] == keyHash && key.equals(keys[probe])) {
+                if (changeLog != null) changeLog.appendSet(key, value);
+                values[probe] = value; // reset value if keys are the same String
+                if (expiries != null) expiries[probe] = deadline;
+                if (metrics != null) metrics.recordSet(true, distance + 1);
+                return true;
+            }
+            probe++;
+            if (probe == size) probe = 0;
+        }
+        
+        if (itemCount == size) { // key is absent and map is full
+            if (!reclaimExpired()) { // no expired key to make room, operation failure
+                if (metrics != null) metrics.recordSet(false, distance + 1);
+                return false;
+            }
+            return setRobinHood(key, keyHash, value, deadline);
+        }
+        if (metrics != null) metrics.recordSet(true, distance + 1);
+        if (changeLog != null) changeLog.appendSet(key, value);
+        modCount++;
+        insertRobinHood(probe, distance, key, keyHash, value, deadline);
+        return true;
+    }
+    
+    /**
+     * Removes every expired key from a full Robin Hood map to make room for a new one. The map
+     * is only scanned once the earliest deadline has passed, so a rejected insertion into a full
+     * map costs a single clock read until some key can actually be reclaimed; sweep() keeps
+     * its own cursor untouched.
+     * @return true if any key was removed
+     */
+    private boolean reclaimExpired() {
+        if (earliestDeadline == 0) return false; // no key has been stored with a time to live
+        long now = clock.getAsLong();
+        if (now - earliestDeadline < 0) return false;
+        boolean removed = false;
+        for (int slot = 0; slot < size; slot++) {
+            while (states[slot] == LIVE && isExpired(slot, now)) { // keys shifted back into slot are examined too
+                removeAt(slot, false);
+                removed = true;
+            }
+        }
+        // Keys shifted back across the end of the array may have been skipped: recompute the
+        // earliest deadline from the keys that are left, a skipped key keeps it in the past
+        long earliest = 0;
+        for (int slot = 0; slot < size; slot++) {
+            long deadline = states[slot] == LIVE ? expiries[slot] : 0;
+            if (deadline != 0 && (earliest == 0 || deadline - earliest < 0)) earliest = deadline;
+        }
+        earliestDeadline = earliest;
+        return removed;
+    }
+    
+    /**
+     * Stores a key absent from a Robin Hood map, starting where its lookup stopped and swapping
+     * the key being placed with any key closer to its home slot.
+     * @param probe first slot that is EMPTY or holds a key closer to its home slot than key
+     * @param distance distance of probe from the home slot of key
+     * @param key String key with which the specified value is to be associated
+     * @param keyHash hash of key
+     * @param value value to be associated with the specified key
+     * @param deadline expiry deadline of the key/value pair, or 0 if it never expires
+     */
+    private void insertRobinHood(int probe, int distance, String key, int keyHash, Object value, long deadline) {
+        while (states[probe] == LIVE) {
+            int existingDistance = displacement(probe);
+            if (existingDistance < distance) { // take the slot from the key closer to its home
+                String swapKey = keys[probe];
+                Object swapValue = values[probe];
+                int swapHash = hashes[probe];
+                keys[probe] = key;
+                values[probe] = value;
+                hashes[probe] = keyHash;
+                if (expiries != null) {
+                    long swapDeadline = expiries[probe];
+                    expiries[probe] = deadline;
+                    deadline = swapDeadline;
+                }
+                maxDisplacement = Math.max(maxDisplacement, distance);
+                key = swapKey;
+                value = swapValue;
+                keyHash = swapHash;
+                distance = existingDistance;
+            }
+            probe++;
+            if (probe == size) probe = 0;
+            distance++;
+        }
+        keys[probe] = key;
+        values[probe] = value;
+        hashes[probe] = keyHash;
+        states[probe] = LIVE;
+        if (expiries != null) expiries[probe] = deadline;
+        maxDisplacement = Math.max(maxDisplacement, distance);
+        itemCount++;
+    }
+    
+    /**
+     * Removes the key/value pair stored in a LIVE slot.
+     * @param slot index of the LIVE slot
+     */
+    private void removeAt(int slot) {
+        removeAt(slot, true);
+    }
+    
+    /**
+     * Removes the key/value pair stored in a LIVE slot.
+     * @param slot index of the LIVE slot
+     * @param mayCompact false to leave tombstones past their threshold for the caller to compact
+     */
+    private void removeAt(int slot, boolean mayCompact) {
+        modCount++;
+        clearAt(slot, mayCompact);
+    }
+    
+    /**
+     * Removes the key/value pair stored in a LIVE slot, without counting it as a modification.
+     * @param slot index of the LIVE slot
+     * @param mayCompact false to leave tombstones past their threshold for the caller to compact
+     */
+    private void clearAt(int slot, boolean mayCompact) {
+        if (changeLog != null) changeLog.appendDelete(keys[slot]);
+        keys[slot] = null; // release references held by the deleted slot
+        values[slot] = null;
+        itemCount--;
+        if (probing == Probing.ROBIN_HOOD) {
+            states[slot] = EMPTY;
+            shiftBackward(slot);
+            if (itemCount == 0) maxDisplacement = 0;
+        }
+        else {
+            states[slot] = DELETED;
+            tombstoneCount++;
+            reclaimTombstones(slot, mayCompact);
+        }
+    }
+    
+    /**
+     * Fills a slot emptied by a deletion by moving each following displaced key one slot back,
+     * until reaching an EMPTY slot or a key already at its home slot.
+     * @param hole index of the slot that was just emptied
+     */
+    private void shiftBackward(int hole) {
+        int next = hole + 1 == size ? 0 : hole + 1;
+        for (int n = 1; n < size && states[next] == LIVE && displacement(next) > 0; n++) {
+            moveSlot(next, hole);
+            hole = next;
+            next = hole + 1 == size ? 0 : hole + 1;
+        }
+    }
+    
+    /**
+     * Reclaims tombstones after a deletion. If the slot following the deleted slot is EMPTY,
+     * no probe sequence can continue past the deleted slot, so it and the tombstones right
+     * before it become EMPTY again. Otherwise the table is compacted once tombstones pass
+     * their threshold.
+     * @param slot index of the slot that was just deleted
+     * @param mayCompact false to never compact
+     */
+    private void reclaimTombstones(int slot, boolean mayCompact) {
+        int next = slot + 1 == size ? 0 : slot + 1;
+        if (states[next] == EMPTY) {
+            int probe = slot;
+            while (states[probe] == DELETED) {
+                states[probe] = EMPTY;
+                tombstoneCount--;
+                probe = probe == 0 ? size - 1 : probe - 1; // step back, wrapping around to the end
+            }
+        }
+        else if (mayCompact && tombstoneCount * MAX_TOMBSTONE_FRACTION > size) {
+            compact();
+        }
+    }
+    
+    /**
+     * Rehashes the map in place, without any extra storage, so that it holds no tombstones.
+     * All tombstones are turned EMPTY, then every key is moved to the first EMPTY slot of its
+     * probe sequence if one now comes before the slot it is stored in. A move can open a gap
+     * in the probe sequence of a key that wrapped around the end of the array and was already
+     * visited, so passes repeat until none moves a key. Every move brings a key strictly closer
+     * to its home slot, and keys placed after a tombstone usually settle in the first pass.
+     */
+    private void compact() {
+        if (tombstoneCount == 0) return;
+        for (int slot = 0; slot < size; slot++) {
+            if (states[slot] == DELETED) states[slot] = EMPTY;
+        }
+        tombstoneCount = 0;
+        
+        boolean moved;
+        do {
+            moved = false;
+            for (int slot = 0; slot < size; slot++) {
+                if (states[slot] != LIVE) continue;
+                int probe = indexFor(hashes[slot]);
+                while (probe != slot && states[probe] != EMPTY) {
+                    probe++;
+                    if (probe == size) probe = 0;
+                }
+                if (probe != slot) {
+                    moveSlot(slot, probe);
+                    moved = true;
+                }
+            }
+        } while (moved);
+    }
+    
+    /**
+     * Moves the key/value pair in one LIVE slot to an EMPTY slot, leaving the former EMPTY.
+     * @param from index of the LIVE slot
+     * @param to index of the EMPTY slot
+     */
+    private void moveSlot(int from, int to) {
+        slotMoved(from, to);
+        keys[to] = keys[from];
+        values[to] = values[from];
+        hashes[to] = hashes[from];
+        if (expiries != null) expiries[to] = expiries[from];
+        states[to] = LIVE;
+        keys[from] = null;
+        values[from] = null;
+        states[from] = EMPTY;
+    }
+    
+    /**
+     * Returns the number of slots a lookup by find() examined. A miss is retraced, stopping
+     * where find() stops.
+     * @param keyHash hash of the key looked up
+     * @param slot index of the LIVE slot find() returned, or -1
+     * @return number of slots examined, at least 1
+     */
+    private int lookupLength(int keyHash, int slot) {
+        if (slot >= 0) return probeLength(slot);
+        int probe = indexFor(keyHash);
+        for (int distance = 0; distance < size; distance++) {
+            if (probing == Probing.ROBIN_HOOD) {
+                if (distance > maxDisplacement) return distance;
+                if (states[probe] == EMPTY || displacement(probe) < distance) return distance + 1;
+            }
+            else if (states[probe] == EMPTY) {
+                return distance + 1;
+            }
+            probe++;
+            if (probe == size) probe = 0;
+        }
+        return size;
+    }
+    
+    /**
+     * Returns the number of slots examined to find the key stored in a LIVE slot.
+     * @param slot index of the LIVE slot
+     * @return distance from the key's home slot to slot, plus 1
+     */
+    private int probeLength(int slot) {
+        return displacement(slot) + 1;
+    }
+    
+    /**
+     * Returns the distance of the key stored in a LIVE slot from its home slot.
+     * @param slot index of the LIVE slot
+     * @return number of slots between the key's home slot and slot
+     */
+    private int displacement(int slot) {
+        return distance(indexFor(hashes[slot]), slot);
+    }
+    
+    /**
+     * @param from slot index
+     * @param to slot index
+     * @return number of slots a probe moves forward to get from one slot to the other
+     */
+    private int distance(int from, int to) {
+        int distance = to - from;
+        if (distance < 0) distance += size; // probe wrapped around the end of the array
+        return distance;
+    }
+    
+    /**
+     * Maps the hash of a key to the slot index at which probing for the key starts.
+     * @param keyHash hash of the key
+     * @return home slot index
+     */
+    private int indexFor(int keyHash) {
+        return Hasher.indexFor(keyHash, size);
+    }
+    
+    /**
+     * A cursor over the key/value pairs of a map, in slot order. Call advance() to move to each
+     * pair in turn, then key() and value() to read it:
+     *     for (FixedSizeHashMap<V>.Cursor cursor = map.cursor(); cursor.advance(); )
+     *         use(cursor.key(), cursor.value());
+     * The map may be changed through the cursor with setValue(), but any other change adding
+     * or removing a key makes the next call to advance() throw ConcurrentModificationException.
+     * Reads, even of expired keys, are not changes.
+     */
+    public final class Cursor {
+        
+        /** Instance variables. */
+        private int slot = -1; // slot of the current pair, -1 before the first
+        private boolean positioned; // true if the cursor is at a pair
+        private final int expectedModCount = modCount; // modCount when the cursor was made
+        private final long now = expiries == null ? 0 : clock.getAsLong(); // time keys expire against
+        
+        private Cursor() {
+        }
+        
+        /**
+         * Moves the cursor to the next key/value pair.
+         * @return true if the cursor is at a pair, false if every pair has been visited
+         * @throws ConcurrentModificationException if a key was added or removed since the
+         *         cursor was made
+         */
+        public boolean advance() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            while (++slot < size) {
+                if (states[slot] == LIVE && (expiries == null || !isExpired(slot, now))) return positioned = true;
+            }
+            slot = size;
+            return positioned = false;
+        }
+        
+        /**
+         * @return key of the pair the cursor is at
+         * @throws NoSuchElementException if the cursor is not at a pair
+         */
+        public String key() {
+            checkPositioned();
+            return keys[slot];
+        }
+        
+        /**
+         * @return value of the pair the cursor is at
+         * @throws NoSuchElementException if the cursor is not at a pair
+         */
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkPositioned();
+            return (V) values[slot];
+        }
+        
+        /**
+         * Replaces the value of the pair the cursor is at, which does not disturb the cursor.
+         * @param value new value of the pair
+         * @throws NoSuchElementException if the cursor is not at a pair
+         */
+        public void setValue(final V value) {
+            checkPositioned();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (changeLog != null) changeLog.appendSet(keys[slot], value);
+            values[slot] = value;
+        }
+        
+        /**
+         * @throws NoSuchElementException if the cursor is not at a pair
+         */
+        private void checkPositioned() {
+            if (!positioned)
+                throw new NoSuchElementException("Cursor is not at a key/value pair.");
+        }
+    }
+    
+    /**
+     * Spliterator over the key/value pairs in a range of slots, split in halves by range.
+     */
+    private final class EntrySpliterator implements Spliterator<Map.Entry<String, V>> {
+        
+        /** Ranges smaller than this are not split, so each thread gets enough slots to scan. */
+        private static final int MIN_SPLIT_SLOTS = 1024;
+        
+        /** Instance variables. */
+        private int index; // next slot to examine
+        private int fence; // one past the last slot to examine, or -1 until first use
+        private int expectedModCount; // modCount when the fence was set
+        private long now; // time keys expire against, set with the fence
+        
+        EntrySpliterator(int index, int fence, int expectedModCount, long now) {
+            this.index = index;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+            this.now = now;
+        }
+        
+        /**
+         * Binds the spliterator to the map as it is on first use.
+         * @return fence
+         */
+        private int fence() {
+            if (fence < 0) {
+                fence = size;
+                expectedModCount = modCount;
+                now = expiries == null ? 0 : clock.getAsLong();
+            }
+            return fence;
+        }
+        
+        @Override
+        public Spliterator<Map.Entry<String, V>> trySplit() {
+            int hi = fence();
+            int mid = (index + hi) >>> 1;
+            if (hi - index < 2 * MIN_SPLIT_SLOTS) return null;
+            EntrySpliterator prefix = new EntrySpliterator(index, mid, expectedModCount, now);
+            index = mid;
+            return prefix;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<String, V>> action) {
+            if (action == null)
+                throw new IllegalArgumentException("Action cannot be null.");
+            int hi = fence();
+            while (index < hi) {
+                int slot = index++;
+                if (states[slot] != LIVE || (expiries != null && isExpired(slot, now))) continue;
+                action.accept(entryAt(slot));
+                if (modCount != expectedModCount) throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+        
+        @Override
+        public void forEachRemaining(Consumer<? super Map.Entry<String, V>> action) {
+            if (action == null)
+                throw new IllegalArgumentException("Action cannot be null.");
+            int hi = fence();
+            for (; index < hi; index++) {
+                if (states[index] != LIVE || (expiries != null && isExpired(index, now))) continue;
+                action.accept(entryAt(index));
+            }
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+        
+        @Override
+        public long estimateSize() {
+            int hi = fence();
+            return size == 0 ? 0 : (long) itemCount * (hi - index) / size;
+        }
+        
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL;
+        }
+        
+        /**
+         * @param slot index of a LIVE slot
+         * @return immutable entry of the key/value pair in slot
+         */
+        @SuppressWarnings("unchecked")
+        private Map.Entry<String, V> entryAt(int slot) {
+            return new AbstractMap.SimpleImmutableEntry<>(keys[slot], (V) values[slot]);
+        }
+    }
+    
+    /**
+     * Characters of a key decoded from UTF-8, in an array that grows as needed and is reused
+     * by every lookup.
+     */
+    private static final class KeyChars implements CharSequence {
+        
+        /** Instance variables. */
+        private char[] chars = new char[16]; // decoded characters
+        private int length; // number of characters decoded
+        
+        /**
+         * Decodes a UTF-8 key, replacing the characters decoded before.
+         * @param bytes array holding the key
+         * @param offset index in bytes of the first byte of the key
+         * @param length number of bytes of the key
+         * @return true if the bytes are well-formed UTF-8
+         */
+        boolean decode(byte[] bytes, int offset, int length) {
+            if (chars.length < length) chars = new char[Math.max(length, 2 * chars.length)]; // a byte decodes to at most one char
+            this.length = Utf8.decode(bytes, offset, length, chars);
+            return this.length >= 0;
+        }
+        
+        @Override
+        public int length() {
+            return length;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+        
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+        
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
         }
-        
     }
 }
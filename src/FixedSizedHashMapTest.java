@@ -1,4 +1,19 @@
 import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
@@ -21,6 +36,7 @@ public class FixedSizedHashMapTest {
      *     - key to set already exists, or not
      *     - key to set has a collision with another key, or no collision detected
      *     - fixed-size constraint: cannot set more unique keys if map is full
+     *     - key to set is stored past a deleted slot in its probe sequence, or not
      * 
      * get():
      *     - map size = 0, > 0
@@ -35,6 +51,64 @@ public class FixedSizedHashMapTest {
      * load():
      *     - map size = 0, > 0
      * 
+     * tombstones(), averageProbeLength(), maxProbeLength():
+     *     - map empty, nonempty
+     *     - deleted key ends its probe cluster (tombstone reclaimed), or not
+     *     - tombstones below or past the compaction threshold
+     * 
+     * Robin Hood probing:
+     *     - key to set displaces a key closer to its home slot, or not
+     *     - key to delete is followed by displaced keys, or not
+     *     - key to get is present or absent, map is full
+     * 
+     * setAll(), getAll(), deleteAll():
+     *     - map size = 0, > 0
+     *     - batch empty, shorter or longer than a group of keys loaded together
+     *     - batch holds the same key more than once, or not
+     *     - some inserts rejected by a full map, or none
+     *     - arrays of mismatched lengths, or a null key
+     * 
+     * set() with a time to live, sweep(), scheduleSweeps():
+     *     - key read before or after it expires
+     *     - expired key reached by get(), delete(), set() of another key, or sweep()
+     *     - key set again with or without a time to live
+     *     - map full of keys, some of them expired
+     *     - full Robin Hood map rejects keys before any expires, or reclaims expired keys
+     *     - sweep() examines fewer slots than the map size, or more
+     *     - sweeps run on a scheduler thread
+     * 
+     * getChars() from a CharSequence, getUtf8() from a byte array range or a ByteBuffer:
+     *     - map size = 0, > 0
+     *     - key present or absent, ASCII, non-ASCII or outside the Basic Multilingual Plane
+     *     - bytes well-formed UTF-8, overlong, truncated or an encoded surrogate
+     *     - byte range at the start or in the middle of an array, or out of bounds
+     *     - buffer backed by an array, sliced, or direct
+     * 
+     * forEach(), cursor(), stream():
+     *     - map size = 0, > 0
+     *     - map holds deleted and expired keys, or not
+     *     - map large enough for the stream to be split, scanned sequentially or in parallel
+     *     - value replaced, key added or key removed while visiting
+     *     - expired key read while visiting
+     *     - cursor read before it is at a pair, or after the last pair
+     * 
+     * putIfAbsent(), replace(), computeIfAbsent(), compute(), merge():
+     *     - map size = 0, > 0
+     *     - key present, absent, or expired
+     *     - new key on a full map, or on a map with room
+     *     - function returns null (deleting the key or storing nothing), or a value
+     *     - expected value of replace() equal to the current one, or not
+     *     - linear or Robin Hood probing
+     * 
+     * Hasher:
+     *     - default, seeded, or custom hasher
+     *     - hash is 0, negative, Integer.MIN_VALUE or Integer.MAX_VALUE
+     *     - sequential keys
+     * 
+     * Long runs of random set(), get() and delete() calls on both probing strategies and
+     * with default and seeded hashers are checked against java.util.HashMap, as are long
+     * runs of random batches and of calls with random times to live.
+     * 
      * Each part of the partition above is covered by at least one test case.
      * 
      */
@@ -53,6 +127,15 @@ public class FixedSizedHashMapTest {
     private static final String B_VALUE = "Byers";
     private static final double DELTA = 0.0001;
     
+    /**
+     * Places every key at home slot Math.abs(hashCode()) % SMALL_MAP_SIZE, so that the keys
+     * above collide as the test cases expect: "P" and "p" share slot 0, "K" and "C" slot 3.
+     */
+    private static final Hasher SMALL_MAP_HASHER = key -> {
+        final long home = Math.abs(key.hashCode()) % SMALL_MAP_SIZE;
+        return (int) (((home << 32) + SMALL_MAP_SIZE - 1) / SMALL_MAP_SIZE); // rounded up, so the multiply-shift yields home
+    };
+    
     /*
      * This test covers:
      *     set(): map size > 0
@@ -82,7 +165,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testSetAndGetWithoutCollision() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         final boolean operationSuccessK = map.set(K_KEY, K_VALUE);
         final boolean operationSuccessP = map.set(P_KEY, P_VALUE);
         assertTrue("Expected \"K\" to be added successfully", operationSuccessK);
@@ -99,7 +182,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testSetAndGetExistingKey() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         final boolean operationSuccess = map.set(P_KEY, COLLISION_P_VALUE);
@@ -114,7 +197,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testSetAndGetCollidingKey() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         final boolean operationSuccess = map.set(COLLISION_P_KEY, COLLISION_P_VALUE);
@@ -131,7 +214,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testSetFullMap() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         map.set(C_KEY, C_VALUE);
@@ -154,7 +237,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testDeleteExistingKey() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         assertEquals("Expected key/value (K: Kleiner)", K_VALUE, map.get(K_KEY));
@@ -171,7 +254,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testDeleteAbsentKey() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         assertEquals("Expected key/value (K: Kleiner)", K_VALUE, map.get(K_KEY));
@@ -189,7 +272,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testDeleteCollidingKey() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         map.set(COLLISION_P_KEY, COLLISION_P_VALUE);
@@ -209,7 +292,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testDeleteDeletedKey() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         map.set(K_KEY, K_VALUE);
         map.set(P_KEY, P_VALUE);
         final String kValue = map.delete(K_KEY);
@@ -219,6 +302,27 @@ public class FixedSizedHashMapTest {
         assertEquals("Expected null for deleted key \"K\"", null, map.get(K_VALUE));
     }
     
+    /*
+     *  This test covers: 
+     *      set(): map size > 0, key to set already exists, key to set has collision,
+     *             key to set is stored past a deleted slot in its probe sequence
+     *      load(): map size > 0
+     */
+    @Test
+    public void testSetCollidingKeyPastDeletedKey() {
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
+        map.set(P_KEY, P_VALUE);
+        map.set(COLLISION_P_KEY, COLLISION_P_VALUE);
+        map.delete(P_KEY);
+        final boolean operationSuccess = map.set(COLLISION_P_KEY, P_VALUE);
+        assertTrue("Expected \"p\" to be added successfully", operationSuccess);
+        assertEquals("Expected key/value (p: Perkins)", P_VALUE, map.get(COLLISION_P_KEY));
+        assertEquals("Expected load 0.25 without a duplicate \"p\"", 0.25, map.load(), DELTA);
+        assertEquals("Expected deleted value \"Perkins\"", P_VALUE, map.delete(COLLISION_P_KEY));
+        assertEquals("Expected null for deleted key \"p\"", null, map.get(COLLISION_P_KEY));
+        assertEquals("Expected load 0", 0, map.load(), DELTA);
+    }
+    
     /*
      * This test covers:
      *     load(): map size > 0
@@ -227,7 +331,7 @@ public class FixedSizedHashMapTest {
      */
     @Test
     public void testMapLoad() {
-        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
         final double[] expectedLoads = {0, 0.25, 0.5, 0.75, 1, 1, 0.75};
         assertEquals("Expected load 0", expectedLoads[0], map.load(), DELTA);
         map.set(K_KEY, K_VALUE);
@@ -244,6 +348,91 @@ public class FixedSizedHashMapTest {
         assertEquals("Expected load 0.75", expectedLoads[6], map.load(), DELTA);
     }
     
+    /*
+     *  This test covers:
+     *      tombstones(): map nonempty, deleted key does not end its probe cluster,
+     *                    deleted key ends its probe cluster
+     *      averageProbeLength(), maxProbeLength(): map empty, nonempty
+     */
+    @Test
+    public void testTombstoneReclaimedAtEndOfCluster() {
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
+        assertEquals("Expected average probe length 0", 0, map.averageProbeLength(), DELTA);
+        assertEquals("Expected max probe length 0", 0, map.maxProbeLength());
+        map.set(P_KEY, P_VALUE);
+        map.set(COLLISION_P_KEY, COLLISION_P_VALUE);
+        assertEquals("Expected average probe length 1.5", 1.5, map.averageProbeLength(), DELTA);
+        assertEquals("Expected max probe length 2", 2, map.maxProbeLength());
+        map.delete(P_KEY);
+        assertEquals("Expected tombstone left by \"P\"", 1, map.tombstones());
+        assertEquals("Expected key/value (p: pERKINS)", COLLISION_P_VALUE, map.get(COLLISION_P_KEY));
+        assertEquals("Expected average probe length 2", 2, map.averageProbeLength(), DELTA);
+        map.delete(COLLISION_P_KEY);
+        assertEquals("Expected no tombstones once cluster is deleted", 0, map.tombstones());
+        assertEquals("Expected load 0", 0, map.load(), DELTA);
+    }
+    
+    /*
+     *  This test covers:
+     *      tombstones(): map nonempty, deleted key does not end its probe cluster,
+     *                    tombstones past the compaction threshold
+     *      get(): map size > 0, key to get has collision, keys to get are present and absent
+     */
+    @Test
+    public void testTombstonesCompacted() {
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
+        map.set(K_KEY, K_VALUE);
+        map.set(C_KEY, C_VALUE);
+        map.set(P_KEY, P_VALUE);
+        map.set(COLLISION_P_KEY, COLLISION_P_VALUE);
+        map.delete(K_KEY);
+        assertEquals("Expected tombstone left by \"K\"", 1, map.tombstones());
+        map.delete(C_KEY);
+        assertEquals("Expected no tombstones after compaction", 0, map.tombstones());
+        assertEquals("Expected load 0.5", 0.5, map.load(), DELTA);
+        assertEquals("Expected key/value (P: Perkins)", P_VALUE, map.get(P_KEY));
+        assertEquals("Expected key/value (p: pERKINS)", COLLISION_P_VALUE, map.get(COLLISION_P_KEY));
+        assertEquals("Expected null for deleted key \"K\"", null, map.get(K_KEY));
+        assertEquals("Expected null for deleted key \"C\"", null, map.get(C_KEY));
+        assertEquals("Expected average probe length 1.5", 1.5, map.averageProbeLength(), DELTA);
+        assertEquals("Expected max probe length 2", 2, map.maxProbeLength());
+    }
+    
+    /*
+     *  This test covers:
+     *      Robin Hood probing: key to set displaces a key closer to its home slot,
+     *                          key to delete is followed by displaced keys,
+     *                          key to get is present and absent, map is full
+     */
+    @Test
+    public void testRobinHoodProbing() {
+        final FixedSizeHashMap<String> linearMap = smallMap(FixedSizeHashMap.Probing.LINEAR);
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.ROBIN_HOOD);
+        for (FixedSizeHashMap<String> m : Arrays.asList(linearMap, map)) {
+            m.set(P_KEY, P_VALUE);
+            m.set(C_KEY, C_VALUE);
+            m.set(K_KEY, K_VALUE);
+        }
+        assertEquals("Expected linear max probe length 3", 3, linearMap.maxProbeLength());
+        assertEquals("Expected Robin Hood max probe length 2", 2, map.maxProbeLength());
+        assertEquals("Expected key/value (K: Kleiner)", K_VALUE, map.get(K_KEY));
+        assertEquals("Expected key/value (P: Perkins)", P_VALUE, map.get(P_KEY));
+        assertEquals("Expected key/value (C: Caufield)", C_VALUE, map.get(C_KEY));
+        assertEquals("Expected null for absent key \"p\"", null, map.get(COLLISION_P_KEY));
+        
+        assertTrue("Expected \"B\" to be added successfully", map.set(B_KEY, B_VALUE));
+        assertFalse("Expected \"p\" to be added unsuccessfully", map.set(COLLISION_P_KEY, COLLISION_P_VALUE));
+        assertEquals("Expected null for absent key \"p\"", null, map.get(COLLISION_P_KEY));
+        assertEquals("Expected load 1", 1, map.load(), DELTA);
+        
+        assertEquals("Expected deleted value \"Kleiner\"", K_VALUE, map.delete(K_KEY));
+        assertEquals("Expected no tombstones", 0, map.tombstones());
+        assertEquals("Expected key/value (P: Perkins)", P_VALUE, map.get(P_KEY));
+        assertEquals("Expected key/value (B: Byers)", B_VALUE, map.get(B_KEY));
+        assertEquals("Expected null for deleted key \"K\"", null, map.get(K_KEY));
+        assertEquals("Expected load 0.75", 0.75, map.load(), DELTA);
+    }
+    
     /*
      *  This test covers a variety of operations from set(), get(), delete(), 
      *  and load() on a map of size 10. Keys to set/get/delete may have collisions
@@ -299,6 +488,663 @@ public class FixedSizedHashMapTest {
         assertEquals("Expected load 1 after setting keys \"l\", \"m\", and \"n\"", 1, load2, DELTA);
     }
     
+    /*
+     * This test covers:
+     *     set() with a time to live: key read before and after it expires, expired key reached
+     *                                by get(), delete() and set() of another key, key set again
+     *                                with and without a time to live, map full of keys
+     *     sweep(): fewer slots than the map size, more
+     */
+    @Test
+    public void testTimeToLive() {
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final FixedSizeHashMap<String> map = smallMap(probing);
+            final long[] now = {0};
+            map.setClock(() -> now[0]);
+            assertTrue("Expected \"K\" to be added successfully", map.set(K_KEY, K_VALUE, 10, TimeUnit.NANOSECONDS));
+            assertTrue("Expected \"P\" to be added successfully", map.set(P_KEY, P_VALUE, 20, TimeUnit.NANOSECONDS));
+            assertTrue("Expected \"C\" to be added successfully", map.set(C_KEY, C_VALUE, 10, TimeUnit.NANOSECONDS));
+            assertTrue("Expected \"B\" to be added successfully", map.set(B_KEY, B_VALUE));
+            assertTrue("Expected \"C\" to be reset without a time to live", map.set(C_KEY, C_VALUE));
+            now[0] = 9;
+            assertEquals("Expected key/value (K: Kleiner) before expiry", K_VALUE, map.get(K_KEY));
+            
+            now[0] = 10;
+            assertEquals("Expected null for expired key \"K\"", null, map.get(K_KEY));
+            // A lookup removes an expired key only if no displaced Robin Hood key follows it
+            assertEquals("Expected load 0.75 after lookup removed \"K\", or 1 if it was only hidden",
+                    probing == FixedSizeHashMap.Probing.LINEAR ? 0.75 : 1.0, map.load(), DELTA);
+            assertEquals("Expected key/value (C: Caufield) without a time to live", C_VALUE, map.get(C_KEY));
+            assertTrue("Expected \"K\" to be added again", map.set(K_KEY, K_VALUE, 10, TimeUnit.NANOSECONDS));
+            assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+            
+            now[0] = 20;
+            assertTrue("Expected \"p\" to be added in place of expired keys", map.set(COLLISION_P_KEY, COLLISION_P_VALUE));
+            assertEquals("Expected null for expired key \"P\"", null, map.get(P_KEY));
+            assertEquals("Expected null deleting expired key \"K\"", null, map.delete(K_KEY));
+            assertEquals("Expected key/value (p: pERKINS)", COLLISION_P_VALUE, map.get(COLLISION_P_KEY));
+            assertEquals("Expected load 0.75", 0.75, map.load(), DELTA);
+            
+            assertTrue("Expected \"K\" to be added again", map.set(K_KEY, K_VALUE, 5, TimeUnit.NANOSECONDS));
+            now[0] = 30;
+            assertEquals("Expected sweep of no slots to remove nothing", 0, map.sweep(0));
+            assertEquals("Expected sweep of all slots to remove \"K\"", 1, map.sweep(SMALL_MAP_SIZE * 2));
+            assertEquals("Expected load 0.75 after sweep", 0.75, map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     scheduleSweeps(): sweeps run on a scheduler thread
+     */
+    @Test
+    public void testScheduledSweeps() throws InterruptedException {
+        final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(LARGE_MAP_SIZE);
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            synchronized (map) {
+                for (int i = 0; i < LARGE_MAP_SIZE; i++) map.set("key" + i, i, 1, TimeUnit.MILLISECONDS);
+            }
+            final ScheduledFuture<?> sweeps = map.scheduleSweeps(executor, 1, TimeUnit.MILLISECONDS, 3);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            double load = 1.0;
+            while (load > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+                synchronized (map) {
+                    load = map.load();
+                }
+            }
+            sweeps.cancel(false);
+            assertEquals("Expected scheduled sweeps to remove every expired key", 0.0, load, DELTA);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     set() with a time to live: full Robin Hood map rejects keys before any expires, or
+     *         reclaims expired keys
+     */
+    @Test
+    public void testFullRobinHoodMapWithTimeToLive() {
+        final int mapSize = 64;
+        final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(mapSize, FixedSizeHashMap.Probing.ROBIN_HOOD);
+        final long[] now = {0};
+        map.setClock(() -> now[0]);
+        assertTrue("Expected \"short\" to be added successfully", map.set("short", -1, 10, TimeUnit.NANOSECONDS));
+        for (int i = 1; i < mapSize; i++) {
+            assertTrue("Expected key" + i + " to be added successfully", map.set("key" + i, i, 1000, TimeUnit.NANOSECONDS));
+        }
+        assertTrue("Expected \"short\" to be reset without a time to live", map.set("short", -1));
+        
+        now[0] = 50;
+        assertFalse("Expected full map to reject a key before any expires", map.set("new", 0));
+        now[0] = 999;
+        for (int i = 0; i < mapSize; i++) {
+            assertFalse("Expected full map to reject new" + i, map.set("new" + i, i));
+            assertEquals("Expected computeIfAbsent() to fail for new" + i, null, map.computeIfAbsent("new" + i, key -> 0));
+        }
+        assertEquals("Expected load 1 while no key has expired", 1.0, map.load(), DELTA);
+        
+        now[0] = 1000;
+        assertTrue("Expected \"new\" to be added in place of expired keys", map.set("new", 0));
+        assertEquals("Expected every expired key reclaimed", 2.0 / mapSize, map.load(), DELTA);
+        assertEquals("Expected key/value (short: -1) without a time to live", Integer.valueOf(-1), map.get("short"));
+        assertEquals("Expected key/value (new: 0)", Integer.valueOf(0), map.get("new"));
+        for (int i = 1; i < mapSize; i++) {
+            assertEquals("Expected null for expired key" + i, null, map.get("key" + i));
+        }
+        assertEquals("Expected nothing left to sweep", 0, map.sweep(mapSize));
+    }
+    
+    /*
+     *  This test covers long runs of random set() calls with and without random times to live,
+     *  get() and delete() calls and sweeps, on maps of both probing strategies, compared against
+     *  java.util.HashMap holding each key's value and deadline.
+     */
+    @Test
+    public void testRandomExpiriesMatchHashMap() {
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final int mapSize = LARGE_MAP_SIZE * 10;
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(mapSize, probing);
+            final long[] now = {0};
+            map.setClock(() -> now[0]);
+            final Map<String, long[]> expected = new HashMap<>(); // key to {value, deadline or Long.MAX_VALUE}
+            final Random random = new Random(probing.ordinal());
+            for (int i = 0; i < 100000; i++) {
+                now[0]++;
+                expected.values().removeIf(entry -> entry[1] <= now[0]);
+                final String key = "key" + random.nextInt(mapSize * 3 / 2);
+                final int operation = random.nextInt(5);
+                if (operation <= 1) {
+                    final long ttl = operation == 0 ? 1 + random.nextInt(200) : 0;
+                    final boolean success = ttl > 0 ? map.set(key, i, ttl, TimeUnit.NANOSECONDS) : map.set(key, i);
+                    assertEquals("Expected set to fail only when key is absent from a full map",
+                            expected.size() < mapSize || expected.containsKey(key), success);
+                    if (success) expected.put(key, new long[] {i, ttl > 0 ? now[0] + ttl : Long.MAX_VALUE});
+                }
+                else if (operation == 2) {
+                    final long[] entry = expected.get(key);
+                    assertEquals("Expected get to match HashMap", entry == null ? null : (int) entry[0], map.get(key));
+                }
+                else if (operation == 3) {
+                    final long[] entry = expected.remove(key);
+                    assertEquals("Expected delete to match HashMap", entry == null ? null : (int) entry[0], map.delete(key));
+                }
+                else {
+                    map.sweep(random.nextInt(10));
+                }
+                assertTrue("Expected load to count at least the live keys", map.load() * mapSize >= expected.size() - DELTA);
+            }
+            map.sweep(mapSize);
+            assertEquals("Expected load to match HashMap size after a full sweep",
+                    expected.size() / (double) mapSize, map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     Hasher: custom hasher, hash is 0, negative, Integer.MIN_VALUE or Integer.MAX_VALUE
+     */
+    @Test
+    public void testExtremeHashes() {
+        for (int hash : new int[] {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            final FixedSizeHashMap<Integer> map =
+                    new FixedSizeHashMap<>(LARGE_MAP_SIZE, FixedSizeHashMap.Probing.LINEAR, key -> hash);
+            for (int i = 0; i < LARGE_MAP_SIZE; i++) {
+                assertTrue("Expected key" + i + " to be added successfully with hash " + hash, map.set("key" + i, i));
+            }
+            for (int i = 0; i < LARGE_MAP_SIZE; i++) {
+                assertEquals("Expected value of key" + i + " with hash " + hash, Integer.valueOf(i), map.get("key" + i));
+            }
+            assertEquals("Expected every key to collide", LARGE_MAP_SIZE, map.maxProbeLength());
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     Hasher: default and seeded hashers, sequential keys
+     */
+    @Test
+    public void testSequentialKeysSpread() {
+        for (Hasher hasher : Arrays.asList(Hasher.MURMUR, Hasher.seeded())) {
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(2048, FixedSizeHashMap.Probing.LINEAR, hasher);
+            for (int i = 0; i < 1024; i++) map.set("key" + i, i);
+            assertTrue("Expected short probes at load 0.5, got average " + map.averageProbeLength(),
+                    map.averageProbeLength() < 2.0);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     getChars() from a CharSequence, getUtf8() from a byte array range or a ByteBuffer:
+     *         every part
+     */
+    @Test
+    public void testGetWithoutString() {
+        final FixedSizeHashMap<String> empty = new FixedSizeHashMap<>(0);
+        assertEquals("Expected null from map of size 0", null, empty.getChars(new StringBuilder("K")));
+        assertEquals("Expected null from map of size 0", null, empty.getUtf8(new byte[] {'K'}, 0, 1));
+        
+        final String[] keys = {"K", "caf\u00e9", "\ud83d\ude00 smile"};
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            for (Hasher hasher : Arrays.asList(Hasher.MURMUR, Hasher.seeded())) {
+                final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE, probing, hasher);
+                for (String key : keys) map.set(key, "value of " + key);
+                for (String key : keys) {
+                    final String expected = "value of " + key;
+                    assertEquals("Expected value from a StringBuilder", expected, map.getChars(new StringBuilder(key)));
+                    final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                    assertEquals("Expected value from a byte array", expected, map.getUtf8(bytes, 0, bytes.length));
+                    final byte[] padded = new byte[bytes.length + 4];
+                    System.arraycopy(bytes, 0, padded, 2, bytes.length);
+                    assertEquals("Expected value from a byte array range", expected, map.getUtf8(padded, 2, bytes.length));
+                    assertEquals("Expected value from a buffer slice", expected,
+                            map.getUtf8(ByteBuffer.wrap(padded, 2, bytes.length).slice()));
+                    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 1);
+                    direct.put((byte) 'x').put(bytes).position(1);
+                    assertEquals("Expected value from a direct buffer", expected, map.getUtf8(direct));
+                    assertEquals("Expected buffer position unchanged", 1, direct.position());
+                }
+                assertEquals("Expected null for absent key \"C\"", null, map.getChars(new StringBuilder("C")));
+                assertEquals("Expected null for absent key \"C\"", null, map.getUtf8(new byte[] {'C'}, 0, 1));
+                assertEquals("Expected null for a prefix of a key", null, map.getUtf8(new byte[] {'c', 'a', 'f'}, 0, 3));
+            }
+        }
+        
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE);
+        map.set("\u0000", "null char");
+        map.set("\u20ac", "euro");
+        assertEquals("Expected null for an overlong encoding of U+0000", null, map.getUtf8(new byte[] {(byte) 0xc0, (byte) 0x80}, 0, 2));
+        assertEquals("Expected null for a truncated encoding of U+20AC", null, map.getUtf8(new byte[] {(byte) 0xe2, (byte) 0x82}, 0, 2));
+        assertEquals("Expected null for an encoded surrogate", null,
+                map.getUtf8(new byte[] {(byte) 0xed, (byte) 0xa0, (byte) 0x80}, 0, 3));
+        assertEquals("Expected euro from its encoding", "euro",
+                map.getUtf8(new byte[] {(byte) 0xe2, (byte) 0x82, (byte) 0xac}, 0, 3));
+        try {
+            map.getUtf8(new byte[2], 1, 2);
+            fail("Expected out of bounds range to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            map.get(null);
+            fail("Expected a null key to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     forEach(), cursor(), stream(): map size = 0, map holds deleted and expired keys,
+     *         value replaced while visiting, cursor read before it is at a pair or after the last
+     */
+    @Test
+    public void testIteration() {
+        final FixedSizeHashMap<Integer> empty = new FixedSizeHashMap<>(0);
+        empty.forEach((key, value) -> fail("Expected no pair in map of size 0"));
+        assertFalse("Expected no pair in map of size 0", empty.cursor().advance());
+        assertEquals("Expected no pair in map of size 0", 0, empty.stream().count());
+        
+        final long[] now = {0};
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(LARGE_MAP_SIZE, probing);
+            now[0] = 0;
+            map.setClock(() -> now[0]);
+            final Map<String, Integer> expected = new HashMap<>();
+            for (int i = 0; i < LARGE_MAP_SIZE; i++) {
+                if (i % 5 == 0) {
+                    map.set("key" + i, i, 10, TimeUnit.NANOSECONDS); // expires below
+                }
+                else {
+                    map.set("key" + i, i);
+                    expected.put("key" + i, i);
+                }
+            }
+            for (int i = 1; i < LARGE_MAP_SIZE; i += 5) {
+                map.delete("key" + i);
+                expected.remove("key" + i);
+            }
+            now[0] = 10;
+            
+            final Map<String, Integer> visited = new HashMap<>();
+            map.forEach((key, value) -> assertNull("Expected " + key + " visited once", visited.put(key, value)));
+            assertEquals("Expected forEach() to visit live pairs", expected, visited);
+            
+            visited.clear();
+            final FixedSizeHashMap<Integer>.Cursor cursor = map.cursor();
+            try {
+                cursor.key();
+                fail("Expected cursor before the first pair to have no key");
+            } catch (NoSuchElementException e) {
+                // expected
+            }
+            while (cursor.advance()) {
+                assertNull("Expected " + cursor.key() + " visited once", visited.put(cursor.key(), cursor.value()));
+                cursor.setValue(cursor.value() + 1);
+            }
+            assertEquals("Expected cursor to visit live pairs", expected, visited);
+            assertFalse("Expected cursor to stay after the last pair", cursor.advance());
+            try {
+                cursor.value();
+                fail("Expected cursor after the last pair to have no value");
+            } catch (NoSuchElementException e) {
+                // expected
+            }
+            
+            map.forEach((key, value) -> map.set(key, value - 1)); // replacing values is allowed
+            final Map<String, Integer> streamed = map.stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            assertEquals("Expected stream to hold live pairs", expected, streamed);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     forEach(), cursor(), stream(): map large enough for the stream to be split, scanned in
+     *         parallel, key added or key removed while visiting
+     */
+    @Test
+    public void testParallelStreamAndConcurrentModification() {
+        final int size = 1 << 16;
+        final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(size);
+        long expectedSum = 0;
+        for (int i = 0; i < size * 3 / 4; i++) {
+            map.set("key" + i, i);
+            expectedSum += i;
+        }
+        assertNotNull("Expected large map to be split", map.spliterator().trySplit());
+        assertEquals("Expected parallel sum of values", expectedSum,
+                map.stream().parallel().mapToLong(Map.Entry::getValue).sum());
+        assertEquals("Expected parallel count of pairs", size * 3 / 4, map.stream().parallel().count());
+        
+        try {
+            map.forEach((key, value) -> map.set("new" + key, value));
+            fail("Expected forEach() to fail when a key is added");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        try {
+            final FixedSizeHashMap<Integer>.Cursor cursor = map.cursor();
+            while (cursor.advance()) map.delete(cursor.key());
+            fail("Expected cursor to fail when a key is removed");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+        try {
+            map.stream().forEach(entry -> map.delete(entry.getKey()));
+            fail("Expected stream to fail when a key is removed");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     forEach(), cursor(), stream(): map holds expired keys, expired key read while visiting
+     */
+    @Test
+    public void testReadExpiredKeyWhileVisiting() {
+        final int mapSize = 64;
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(mapSize, probing);
+            final long[] now = {0};
+            map.setClock(() -> now[0]);
+            for (int i = 0; i < mapSize * 3 / 4; i++) {
+                if (i % 2 == 0) map.set("key" + i, i);
+                else map.set("key" + i, i, 10, TimeUnit.NANOSECONDS);
+            }
+            now[0] = 10;
+            final int[] visited = {0};
+            map.forEach((key, value) -> {
+                assertEquals("Expected null for expired key" + (value + 1) + " on " + probing, null, map.get("key" + (value + 1)));
+                visited[0]++;
+            });
+            assertEquals("Expected forEach() to visit every live key on " + probing, mapSize * 3 / 8, visited[0]);
+            
+            for (int i = 0; i < mapSize * 3 / 4; i++) {
+                if (i % 2 != 0) map.set("key" + i, i, 10, TimeUnit.NANOSECONDS);
+            }
+            now[0] = 20;
+            visited[0] = 0;
+            final FixedSizeHashMap<Integer>.Cursor cursor = map.cursor();
+            while (cursor.advance()) {
+                assertEquals("Expected null for expired key" + (cursor.value() + 1) + " on " + probing,
+                        null, map.get("key" + (cursor.value() + 1)));
+                visited[0]++;
+            }
+            assertEquals("Expected cursor to visit every live key on " + probing, mapSize * 3 / 8, visited[0]);
+            
+            for (int i = 0; i < mapSize * 3 / 4; i++) {
+                if (i % 2 != 0) map.set("key" + i, i, 10, TimeUnit.NANOSECONDS);
+            }
+            now[0] = 30;
+            assertEquals("Expected stream to visit every live key on " + probing, mapSize * 3 / 8,
+                    map.stream().filter(entry -> map.get("key" + (entry.getValue() + 1)) == null).count());
+        }
+    }
+    
+    /*
+     *  This test covers long runs of random set(), get() and delete() calls with colliding keys
+     *  on maps of both probing strategies, compared against java.util.HashMap.
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            for (Hasher hasher : Arrays.asList(Hasher.MURMUR, Hasher.seeded())) {
+                checkRandomOperations(new FixedSizeHashMap<>(LARGE_MAP_SIZE * 10, probing, hasher), probing.ordinal());
+            }
+        }
+    }
+    
+    /**
+     * Checks long runs of random set(), get() and delete() calls against java.util.HashMap.
+     * @param map empty map of size LARGE_MAP_SIZE * 10
+     * @param seed seed of the random calls
+     */
+    private static void checkRandomOperations(FixedSizeHashMap<Integer> map, int seed) {
+        final Map<String, Integer> expected = new HashMap<>();
+        final Random random = new Random(seed);
+        for (int i = 0; i < 100000; i++) {
+            final String key = "key" + random.nextInt(LARGE_MAP_SIZE * 15);
+            final int operation = random.nextInt(3);
+            if (operation == 0) {
+                final boolean full = expected.size() == LARGE_MAP_SIZE * 10;
+                final boolean success = map.set(key, i);
+                assertEquals("Expected set to fail only when key is absent from a full map",
+                        !full || expected.containsKey(key), success);
+                if (success) expected.put(key, i);
+            }
+            else if (operation == 1) {
+                assertEquals("Expected get to match HashMap", expected.get(key), map.get(key));
+            }
+            else {
+                assertEquals("Expected delete to match HashMap", expected.remove(key), map.delete(key));
+            }
+            assertEquals("Expected load to match HashMap size",
+                    expected.size() / (LARGE_MAP_SIZE * 10.0), map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     setAll(), getAll(), deleteAll(): map size = 0, > 0, batch empty, batch holding the
+     *                                      same key twice, inserts rejected by a full map,
+     *                                      arrays of mismatched lengths, null key
+     */
+    @Test
+    public void testBatchOperations() {
+        final FixedSizeHashMap<String> emptyMap = new FixedSizeHashMap<>(0);
+        final long[] stored = new long[1];
+        final String[] results = new String[2];
+        assertEquals("Expected no key to be stored in map of size 0",
+                0, emptyMap.setAll(new String[] {K_KEY, P_KEY}, new String[] {K_VALUE, P_VALUE}, stored));
+        assertEquals("Expected no bit set", 0L, stored[0]);
+        emptyMap.getAll(new String[] {K_KEY, P_KEY}, results);
+        assertArrayEquals("Expected no values", new String[] {null, null}, results);
+        assertEquals("Expected empty batch to delete nothing", 0, emptyMap.deleteAll(new String[0], null));
+        
+        final FixedSizeHashMap<String> map = smallMap(FixedSizeHashMap.Probing.LINEAR);
+        final String[] keys = {K_KEY, P_KEY, K_KEY, COLLISION_P_KEY, C_KEY, B_KEY};
+        final String[] values = {K_VALUE, P_VALUE, "Kleiner again", COLLISION_P_VALUE, C_VALUE, B_VALUE};
+        assertEquals("Expected 5 of 6 key/value pairs to be stored", 5, map.setAll(keys, values, stored));
+        assertEquals("Expected all but the last key to be stored", 0b011111L, stored[0]);
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        
+        final String[] found = new String[keys.length];
+        map.getAll(keys, found);
+        assertArrayEquals("Expected later value of \"K\" to win",
+                new String[] {"Kleiner again", P_VALUE, "Kleiner again", COLLISION_P_VALUE, C_VALUE, null}, found);
+        
+        final String[] deleted = new String[3];
+        assertEquals("Expected only \"P\" to be deleted", 1, map.deleteAll(new String[] {P_KEY, B_KEY, P_KEY}, deleted));
+        assertArrayEquals("Expected deleted values", new String[] {P_VALUE, null, null}, deleted);
+        assertEquals("Expected colliding key \"p\" to remain", COLLISION_P_VALUE, map.get(COLLISION_P_KEY));
+        
+        try {
+            map.setAll(new String[] {B_KEY}, new String[0], stored);
+            fail("Expected arrays of mismatched lengths to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            map.deleteAll(new String[] {K_KEY, null}, null);
+            fail("Expected null key to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("Expected \"K\" not to be deleted by a rejected batch", "Kleiner again", map.get(K_KEY));
+    }
+    
+    /*
+     *  This test covers long runs of random setAll(), getAll() and deleteAll() calls, with batches
+     *  longer than a group of keys, on maps of both probing strategies, compared against java.util.HashMap.
+     */
+    @Test
+    public void testRandomBatchesMatchHashMap() {
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final int mapSize = LARGE_MAP_SIZE * 10;
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(mapSize, probing);
+            final Map<String, Integer> expected = new HashMap<>();
+            final Random random = new Random(probing.ordinal());
+            for (int round = 0; round < 2000; round++) {
+                final int length = random.nextInt(70);
+                final String[] keys = new String[length];
+                final Integer[] values = new Integer[length];
+                for (int i = 0; i < length; i++) {
+                    keys[i] = "key" + random.nextInt(LARGE_MAP_SIZE * 15);
+                    values[i] = random.nextInt();
+                }
+                final int operation = random.nextInt(3);
+                if (operation == 0) {
+                    final long[] stored = new long[2];
+                    map.setAll(keys, values, stored);
+                    for (int i = 0; i < length; i++) {
+                        final boolean success = (stored[i >>> 6] & 1L << i) != 0;
+                        assertEquals("Expected set to fail only when key is absent from a full map",
+                                expected.size() < mapSize || expected.containsKey(keys[i]), success);
+                        if (success) expected.put(keys[i], values[i]);
+                    }
+                }
+                else if (operation == 1) {
+                    final Integer[] results = new Integer[length];
+                    map.getAll(keys, results);
+                    for (int i = 0; i < length; i++) {
+                        assertEquals("Expected get to match HashMap", expected.get(keys[i]), results[i]);
+                    }
+                }
+                else {
+                    final Integer[] results = new Integer[length];
+                    map.deleteAll(keys, results);
+                    for (int i = 0; i < length; i++) {
+                        assertEquals("Expected delete to match HashMap", expected.remove(keys[i]), results[i]);
+                    }
+                }
+                assertEquals("Expected load to match HashMap size", expected.size() / (double) mapSize, map.load(), DELTA);
+            }
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     putIfAbsent(), replace(), computeIfAbsent(), compute(), merge(): map size = 0, > 0,
+     *         key present, absent or expired, new key on a full map or on a map with room,
+     *         function returns null or a value, expected value equal or not, linear or
+     *         Robin Hood probing
+     */
+    @Test
+    public void testAtomicUpdates() {
+        final FixedSizeHashMap<Integer> none = new FixedSizeHashMap<>(0);
+        assertEquals("Expected putIfAbsent to fail on a map of size 0", FixedSizeHashMap.Outcome.FULL, none.putIfAbsent(K_KEY, 1));
+        assertEquals("Expected merge to fail on a map of size 0", null, none.merge(K_KEY, 1, Integer::sum));
+        assertFalse("Expected replace to fail on a map of size 0", none.replace(K_KEY, null, 1));
+        final int[] calls = {0};
+        assertEquals("Expected compute to store nothing", null, none.compute(K_KEY, (key, value) -> ++calls[0]));
+        assertEquals("Expected computeIfAbsent to store nothing", null, none.computeIfAbsent(K_KEY, key -> ++calls[0]));
+        assertEquals("Expected no function called on a map of size 0", 0, calls[0]);
+        
+        final long[] now = {0};
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(SMALL_MAP_SIZE, probing);
+            map.setClock(() -> now[0]);
+            assertEquals("Expected \"K\" inserted", FixedSizeHashMap.Outcome.INSERTED, map.putIfAbsent(K_KEY, 1));
+            assertEquals("Expected \"K\" present", FixedSizeHashMap.Outcome.PRESENT, map.putIfAbsent(K_KEY, 2));
+            assertEquals("Expected value of \"K\" unchanged", Integer.valueOf(1), map.get(K_KEY));
+            assertFalse("Expected replace to fail for another value", map.replace(K_KEY, 5, 3));
+            assertTrue("Expected replace to succeed for the current value", map.replace(K_KEY, 1, 3));
+            assertFalse("Expected replace to fail for an absent key", map.replace(P_KEY, null, 3));
+            
+            calls[0] = 0;
+            assertEquals("Expected computed value of \"P\"", Integer.valueOf(7), map.computeIfAbsent(P_KEY, key -> ++calls[0] * 7));
+            assertEquals("Expected stored value of \"P\"", Integer.valueOf(7), map.computeIfAbsent(P_KEY, key -> ++calls[0] * 7));
+            assertEquals("Expected the function called only for the absent key", 1, calls[0]);
+            assertEquals("Expected nothing stored for a null value", null, map.computeIfAbsent("C", key -> null));
+            assertEquals("Expected load 2/4", 0.5, map.load(), DELTA);
+            
+            for (int i = 0; i < 3; i++) map.merge("counter", 1, Integer::sum);
+            assertEquals("Expected \"counter\" counted 3 times", Integer.valueOf(3), map.get("counter"));
+            assertEquals("Expected compute to double \"counter\"", Integer.valueOf(6),
+                    map.compute("counter", (key, value) -> value == null ? 0 : value * 2));
+            assertEquals("Expected compute returning null to delete \"counter\"", null, map.compute("counter", (key, value) -> null));
+            assertEquals("Expected \"counter\" deleted", null, map.get("counter"));
+            assertEquals("Expected merge returning null to delete \"P\"", null, map.merge(P_KEY, 1, (a, b) -> null));
+            assertEquals("Expected load 1/4", 0.25, map.load(), DELTA);
+            
+            map.set("short", 9, 10, TimeUnit.NANOSECONDS);
+            now[0] += 20;
+            assertEquals("Expected expired key treated as absent", FixedSizeHashMap.Outcome.INSERTED, map.putIfAbsent("short", 4));
+            assertEquals("Expected key/value (short: 4) without a time to live", Integer.valueOf(4), map.get("short"));
+            now[0] += 1000;
+            assertEquals("Expected key/value (short: 4) to stay", Integer.valueOf(4), map.get("short"));
+            
+            assertEquals("Expected \"a\" inserted", Integer.valueOf(1), map.merge("a", 1, Integer::sum));
+            assertEquals("Expected \"b\" inserted", FixedSizeHashMap.Outcome.INSERTED, map.putIfAbsent("b", 1));
+            assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+            assertEquals("Expected putIfAbsent to fail on a full map", FixedSizeHashMap.Outcome.FULL, map.putIfAbsent("c", 1));
+            assertEquals("Expected computeIfAbsent to fail on a full map", null, map.computeIfAbsent("c", key -> 1));
+            assertEquals("Expected merge to fail on a full map", null, map.merge("c", 1, Integer::sum));
+            assertEquals("Expected merge of a present key on a full map", Integer.valueOf(2), map.merge("a", 1, Integer::sum));
+            assertEquals("Expected \"c\" absent", null, map.get("c"));
+        }
+    }
+    
+    /*
+     * This test covers long runs of random putIfAbsent(), replace(), computeIfAbsent(), compute()
+     * and merge() calls on both probing strategies, compared against java.util.HashMap.
+     */
+    @Test
+    public void testRandomAtomicUpdatesMatchHashMap() {
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final int mapSize = LARGE_MAP_SIZE * 10;
+            final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(mapSize, probing);
+            final Map<String, Integer> expected = new HashMap<>();
+            final Random random = new Random(3);
+            for (int i = 0; i < 100000; i++) {
+                final String key = "key" + random.nextInt(mapSize * 3 / 2);
+                final boolean room = expected.size() < mapSize || expected.containsKey(key);
+                final int value = random.nextInt(4);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        final FixedSizeHashMap.Outcome outcome = map.putIfAbsent(key, value);
+                        assertEquals("Expected putIfAbsent outcome", expected.containsKey(key) ? FixedSizeHashMap.Outcome.PRESENT
+                                : room ? FixedSizeHashMap.Outcome.INSERTED : FixedSizeHashMap.Outcome.FULL, outcome);
+                        if (room) expected.putIfAbsent(key, value);
+                        break;
+                    case 1:
+                        assertEquals("Expected replace to match HashMap", expected.replace(key, value, i), map.replace(key, value, i));
+                        break;
+                    case 2:
+                        final Integer computed = map.computeIfAbsent(key, k -> value);
+                        assertEquals("Expected computeIfAbsent to match HashMap", room ? expected.computeIfAbsent(key, k -> value) : null, computed);
+                        break;
+                    case 3:
+                        final Integer merged = map.merge(key, 1, (a, b) -> a + b == 3 ? null : a + b);
+                        assertEquals("Expected merge to match HashMap", room ? expected.merge(key, 1, (a, b) -> a + b == 3 ? null : a + b) : null, merged);
+                        break;
+                    case 4:
+                        final Integer result = map.compute(key, (k, v) -> v == null ? Integer.valueOf(value) : v == 0 ? null : Integer.valueOf(v - 1));
+                        assertEquals("Expected compute to match HashMap",
+                                room ? expected.compute(key, (k, v) -> v == null ? Integer.valueOf(value) : v == 0 ? null : Integer.valueOf(v - 1)) : null, result);
+                        break;
+                    default:
+                        assertEquals("Expected delete to match HashMap", expected.remove(key), map.delete(key));
+                }
+                assertEquals("Expected get to match HashMap", expected.get(key), map.get(key));
+                assertEquals("Expected load to match HashMap size", expected.size() / (double) mapSize, map.load(), DELTA);
+            }
+        }
+    }
+    
+    /**
+     * @param probing collision resolution strategy
+     * @return new map of size SMALL_MAP_SIZE whose keys are placed by SMALL_MAP_HASHER
+     */
+    private static FixedSizeHashMap<String> smallMap(FixedSizeHashMap.Probing probing) {
+        return new FixedSizeHashMap<>(SMALL_MAP_SIZE, probing, SMALL_MAP_HASHER);
+    }
+    
     public static void main(String[] args) {
         System.out.println("a".hashCode()); // 97
         System.out.println("b".hashCode()); // 98
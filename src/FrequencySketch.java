@@ -0,0 +1,98 @@
+/**
+ * A count-min sketch estimating how often each key hash has been seen recently, in 4-bit
+ * counters packed sixteen to a long. Every hash increments one counter in each of four rows
+ * and its frequency is the smallest of the four. Once as many increments as ten times the
+ * capacity have been recorded, every counter is halved, so the estimates follow changes in
+ * popularity.
+ * @author Yanlin Li
+ */
+final class FrequencySketch {
+    
+    /** Seeds making the four rows hash independently. */
+    private static final int[] SEEDS = {0x97cb3127, 0xb6d8a65b, 0x2f6eb1e1, 0xd5f4c80d};
+    
+    /** Largest value of a counter. */
+    private static final int MAX_COUNT = 15;
+    
+    /** Instance variables. */
+    private final long[] table; // counters, sixteen per long
+    private final int indexShift; // 32 - log2(table.length), to take a word index from a hash
+    private final int sampleSize; // number of increments after which counters are halved
+    private int additions; // increments since counters were last halved
+    
+    /**
+     * Make a sketch sized for the given number of keys.
+     * @param capacity number of keys whose frequencies must be told apart
+     */
+    FrequencySketch(int capacity) {
+        int length = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1; // power of two >= capacity, at least 2
+        this.table = new long[length];
+        this.indexShift = 32 - Integer.numberOfTrailingZeros(length);
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(1, capacity));
+    }
+    
+    /**
+     * Records one occurrence of a hash.
+     * @param hash hash of a key
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int h = rehash(hash, row);
+            int word = wordOf(h);
+            int shift = shiftOf(h, row);
+            if ((table[word] >>> shift & MAX_COUNT) < MAX_COUNT) {
+                table[word] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) halve();
+    }
+    
+    /**
+     * @param hash hash of a key
+     * @return estimated number of recent occurrences of hash, at most 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int h = rehash(hash, row);
+            frequency = Math.min(frequency, (int) (table[wordOf(h)] >>> shiftOf(h, row) & MAX_COUNT));
+        }
+        return frequency;
+    }
+    
+    /**
+     * Halves every counter, dropping the low bit of each.
+     */
+    private void halve() {
+        for (int i = 0; i < table.length; i++) table[i] = table[i] >>> 1 & 0x7777777777777777L;
+        additions /= 2;
+    }
+    
+    /**
+     * @param hash hash of a key
+     * @param row row of the sketch
+     * @return hash scrambled independently for each row
+     */
+    private static int rehash(int hash, int row) {
+        return Hasher.mix(hash ^ SEEDS[row]);
+    }
+    
+    /**
+     * @param h hash scrambled for a row
+     * @return index of the word holding the row's counter, from the high bits of h
+     */
+    private int wordOf(int h) {
+        return h >>> indexShift;
+    }
+    
+    /**
+     * @param h hash scrambled for a row
+     * @param row row of the sketch
+     * @return bit offset in its word of the row's counter; each row owns four of the sixteen
+     */
+    private static int shiftOf(int h, int row) {
+        return ((h & 3) + (row << 2)) << 2;
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable map from string keys to arbitrary data object references, built once by
+ * FixedSizeHashMap.freeze() and then only read.
+ * Keys are placed with a minimal perfect hash built by hash-and-displace (CHD): every key is
+ * hashed into a small bucket, and each bucket stores a displacement that sends its keys to
+ * distinct slots, so n keys fill exactly n slots and a lookup examines one slot, with no
+ * probing, no tombstones and no empty slots. A bucket of a single key stores its slot directly.
+ * The characters of every key are packed end to end in one char[] arena, so the map holds
+ * four arrays rather than a String object per key.
+ * Every field is final and never written after construction, so the map can be shared by any
+ * number of threads without synchronization once it has been published.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public final class FrozenFixedSizeHashMap<V> {
+    
+    /** Average number of keys per bucket. */
+    private static final int BUCKET_KEYS = 4;
+    
+    /** Displacements tried for one bucket before the map is rebuilt with another seed. */
+    private static final int MAX_DISPLACEMENTS = 1 << 20;
+    
+    /** Seeds tried before giving up on building the map. */
+    private static final int MAX_SEEDS = 32;
+    
+    /** Instance variables. */
+    private final int count; // number of keys, and of slots
+    private final long seed; // seed of the hash of keys
+    private final int[] displacements; // displacement of each bucket, or -(slot + 1) for a single key
+    private final char[] chars; // characters of every key, in slot order
+    private final int[] offsets; // start of the key of each slot in chars, then the end of the last
+    private final Object[] values; // value of the key of each slot
+    
+    /**
+     * Make a frozen map of the given keys and values.
+     * @param keys distinct keys
+     * @param values value of each key
+     * @param count number of keys
+     * @throws IllegalStateException if no perfect hash of the keys is found, which happens
+     *         only if keys were chosen to collide under every seed
+     */
+    FrozenFixedSizeHashMap(final String[] keys, final Object[] values, final int count) {
+        this.count = count;
+        this.displacements = new int[Math.max(1, count / BUCKET_KEYS)];
+        this.offsets = new int[count + 1];
+        this.values = new Object[count];
+        final long[] hashes = new long[count];
+        final int[] slots = new int[count];
+        long seed = 0;
+        for (int attempt = 0; ; attempt++) {
+            if (attempt == MAX_SEEDS)
+                throw new IllegalStateException("Could not build a perfect hash for the keys.");
+            seed = 0xcbf29ce484222325L ^ mix(attempt); // FNV-1a offset basis, then other seeds
+            for (int i = 0; i < count; i++) hashes[i] = hash(keys[i], seed);
+            if (place(hashes, slots)) break;
+        }
+        this.seed = seed;
+        
+        int length = 0;
+        for (int i = 0; i < count; i++) length += keys[i].length();
+        this.chars = new char[length];
+        final String[] keyAt = new String[count];
+        for (int i = 0; i < count; i++) {
+            keyAt[slots[i]] = keys[i];
+            this.values[slots[i]] = values[i];
+        }
+        int offset = 0;
+        for (int slot = 0; slot < count; slot++) {
+            offsets[slot] = offset;
+            keyAt[slot].getChars(0, keyAt[slot].length(), chars, offset);
+            offset += keyAt[slot].length();
+        }
+        offsets[count] = offset;
+    }
+    
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or null if this map contains no mapping for the key.
+     * @param key key whose associated value is to be returned, as a String or any other
+     *            character sequence
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final CharSequence key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (count == 0) return null; // empty map has no value to get
+        
+        int slot = slotOf(hash(key, seed));
+        int start = offsets[slot];
+        if (offsets[slot + 1] - start != key.length()) return null;
+        for (int i = 0; i < key.length(); i++) {
+            if (chars[start + i] != key.charAt(i)) return null;
+        }
+        return (V) values[slot];
+    }
+    
+    /**
+     * Returns the number of key/value pairs in the map.
+     * @return number of keys
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Performs an action on every key/value pair in the map, in slot order. Each key is
+     * copied out of the arena into a new String.
+     * @param action action to perform on each key and its value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(final BiConsumer<? super String, ? super V> action) {
+        if (action == null)
+            throw new IllegalArgumentException("Action cannot be null.");
+        
+        for (int slot = 0; slot < count; slot++) {
+            action.accept(new String(chars, offsets[slot], offsets[slot + 1] - offsets[slot]), (V) values[slot]);
+        }
+    }
+    
+    /**
+     * Finds a displacement for every bucket so that the keys of all buckets land on distinct
+     * slots. Buckets are placed largest first, while most slots are still free; buckets of one
+     * key are then given the remaining free slots directly.
+     * @param hashes hash of each key
+     * @param slots receives the slot of each key
+     * @return true if every bucket was placed, false if some bucket held two keys that no
+     *         displacement separates, or whose displacement was not found
+     */
+    private boolean place(long[] hashes, int[] slots) {
+        final int buckets = displacements.length;
+        // Group the keys by bucket, in the order of the buckets
+        final int[] starts = new int[buckets + 1];
+        for (long hash : hashes) starts[bucketOf(hash) + 1]++;
+        int maxKeys = 0;
+        for (int b = 0; b < buckets; b++) {
+            maxKeys = Math.max(maxKeys, starts[b + 1]);
+            starts[b + 1] += starts[b];
+        }
+        final int[] members = new int[count];
+        final int[] filled = new int[buckets];
+        for (int i = 0; i < count; i++) {
+            int b = bucketOf(hashes[i]);
+            members[starts[b] + filled[b]++] = i;
+        }
+        
+        final boolean[] taken = new boolean[count];
+        final int[] trial = new int[maxKeys];
+        for (int keysInBucket = maxKeys; keysInBucket >= 2; keysInBucket--) {
+            for (int b = 0; b < buckets; b++) {
+                if (starts[b + 1] - starts[b] != keysInBucket) continue;
+                int displacement = 0;
+                while (!fits(hashes, members, starts[b], keysInBucket, displacement, taken, trial)) {
+                    if (++displacement == MAX_DISPLACEMENTS) return false;
+                }
+                displacements[b] = displacement;
+                for (int k = 0; k < keysInBucket; k++) {
+                    taken[trial[k]] = true;
+                    slots[members[starts[b] + k]] = trial[k];
+                }
+            }
+        }
+        int free = 0;
+        for (int b = 0; b < buckets; b++) {
+            if (starts[b + 1] - starts[b] != 1) continue;
+            while (taken[free]) free++;
+            taken[free] = true;
+            displacements[b] = -(free + 1);
+            slots[members[starts[b]]] = free;
+        }
+        return true;
+    }
+    
+    /**
+     * @param hashes hash of each key
+     * @param members keys grouped by bucket
+     * @param start index in members of the first key of the bucket
+     * @param keysInBucket number of keys in the bucket
+     * @param displacement displacement to try
+     * @param taken slots already given to keys of other buckets
+     * @param trial receives the slot of each key of the bucket
+     * @return true if displacement sends the keys of the bucket to distinct free slots
+     */
+    private boolean fits(long[] hashes, int[] members, int start, int keysInBucket, int displacement,
+            boolean[] taken, int[] trial) {
+        for (int k = 0; k < keysInBucket; k++) {
+            int slot = slotOf(hashes[members[start + k]], displacement);
+            if (taken[slot]) return false;
+            for (int j = 0; j < k; j++) {
+                if (trial[j] == slot) return false;
+            }
+            trial[k] = slot;
+        }
+        return true;
+    }
+    
+    /**
+     * @param hash hash of a key
+     * @return slot of the key
+     */
+    private int slotOf(long hash) {
+        int displacement = displacements[bucketOf(hash)];
+        return displacement < 0 ? -displacement - 1 : slotOf(hash, displacement);
+    }
+    
+    /**
+     * @param hash hash of a key
+     * @param displacement displacement of the key's bucket
+     * @return slot the displacement sends the key to
+     */
+    private int slotOf(long hash, int displacement) {
+        return Hasher.indexFor(Hasher.mix((int) hash ^ displacement * 0x9e3779b9), count);
+    }
+    
+    /**
+     * Buckets are chosen by the high 32 bits of the hash of a key, and slots by the low 32.
+     * @param hash hash of a key
+     * @return bucket of the key
+     */
+    private int bucketOf(long hash) {
+        return Hasher.indexFor((int) (hash >>> 32), displacements.length);
+    }
+    
+    /**
+     * Computes a 64-bit FNV-1a hash of the UTF-16 code units of a key, finished with the
+     * MurmurHash3 64-bit finalizer.
+     * @param key key to hash
+     * @param seed seed of the hash
+     * @return hash of key
+     */
+    private static long hash(CharSequence key, long seed) {
+        long hash = seed;
+        for (int i = 0; i < key.length(); i++) hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        return mix(hash ^ key.length());
+    }
+    
+    /**
+     * Scrambles a 64-bit value with the MurmurHash3 64-bit finalizer.
+     * @param hash value to scramble
+     * @return scrambled value
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,134 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tester class for FrozenFixedSizeHashMap and FixedSizeHashMap.freeze().
+ * @author Yanlin Li
+ */
+public class FrozenFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for FrozenFixedSizeHashMap
+     *
+     * freeze():
+     *     - map size = 0, map empty, with 1 key, with fewer keys than a bucket holds, with many
+     *     - map with tombstones, with expired and unexpired keys
+     *     - map changed after freezing
+     *
+     * get():
+     *     - key present or absent, absent key of the same length as a present one
+     *     - key a String or another CharSequence, key empty
+     *     - read by one thread or by many at once
+     *
+     * size(), forEach():
+     *     - map empty, not empty
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    /*
+     * This test covers:
+     *     freeze(): map size = 0, map empty, with 1 key
+     *     get(): key present or absent, key empty
+     *     size(), forEach(): map empty, not empty
+     */
+    @Test
+    public void testSmallMaps() {
+        final FrozenFixedSizeHashMap<String> none = new FixedSizeHashMap<String>(0).freeze();
+        assertEquals("Expected no keys", 0, none.size());
+        assertEquals("Expected null for absent key \"K\"", null, none.get("K"));
+        final FrozenFixedSizeHashMap<String> empty = new FixedSizeHashMap<String>(8).freeze();
+        assertEquals("Expected no keys", 0, empty.size());
+        empty.forEach((key, value) -> fail("Expected no key/value pair"));
+        
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(8);
+        map.set("", "nothing");
+        final FrozenFixedSizeHashMap<String> one = map.freeze();
+        assertEquals("Expected 1 key", 1, one.size());
+        assertEquals("Expected key/value (\"\": nothing)", "nothing", one.get(""));
+        assertEquals("Expected null for absent key \"K\"", null, one.get("K"));
+        final Map<String, String> visited = new HashMap<>();
+        one.forEach(visited::put);
+        assertEquals("Expected forEach to visit the key", Map.of("", "nothing"), visited);
+    }
+    
+    /*
+     * This test covers:
+     *     freeze(): map with fewer keys than a bucket holds, with tombstones, with expired and
+     *         unexpired keys, map changed after freezing
+     *     get(): key a String or another CharSequence
+     */
+    @Test
+    public void testFreezeCopiesLiveKeys() {
+        final long[] now = {0};
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(8);
+        map.setClock(() -> now[0]);
+        map.set("K", "Kleiner");
+        map.set("C", "Cruz");
+        map.set("P", "Pine");
+        map.set("gone", "soon", 10, TimeUnit.NANOSECONDS);
+        map.set("kept", "later", 100, TimeUnit.NANOSECONDS);
+        map.delete("P");
+        now[0] = 50;
+        final FrozenFixedSizeHashMap<String> frozen = map.freeze();
+        assertEquals("Expected deleted and expired keys left out", 3, frozen.size());
+        assertEquals("Expected key/value (K: Kleiner)", "Kleiner", frozen.get("K"));
+        assertEquals("Expected key/value (C: Cruz) from a StringBuilder", "Cruz", frozen.get(new StringBuilder("C")));
+        assertEquals("Expected key/value (kept: later)", "later", frozen.get("kept"));
+        assertEquals("Expected null for deleted key \"P\"", null, frozen.get("P"));
+        assertEquals("Expected null for expired key \"gone\"", null, frozen.get("gone"));
+        
+        map.set("K", "Kim");
+        map.delete("C");
+        now[0] = 1000;
+        assertEquals("Expected frozen value unchanged", "Kleiner", frozen.get("K"));
+        assertEquals("Expected frozen key kept", "Cruz", frozen.get("C"));
+        assertEquals("Expected frozen key not to expire", "later", frozen.get("kept"));
+    }
+    
+    /*
+     * This test covers:
+     *     freeze(): map with many keys
+     *     get(): key present or absent, absent key of the same length as a present one,
+     *         read by many threads at once
+     */
+    @Test
+    public void testManyKeysAndReaders() throws InterruptedException {
+        final int keys = 100000;
+        final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(keys + keys / 4);
+        for (int i = 0; i < keys; i++) map.set("key" + i, i);
+        final FrozenFixedSizeHashMap<Integer> frozen = map.freeze();
+        assertEquals("Expected every key frozen", keys, frozen.size());
+        
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int reader = t;
+            readers.add(new Thread(() -> {
+                try {
+                    for (int i = reader; i < keys; i += 4) {
+                        assertEquals("Expected value of key" + i, Integer.valueOf(i), frozen.get("key" + i));
+                        assertEquals("Expected null for absent key kez" + i, null, frozen.get("kez" + i));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread reader : readers) reader.start();
+        for (Thread reader : readers) reader.join();
+        assertNull("Expected readers to finish without failure", failure.get());
+        
+        final long[] sum = {0};
+        frozen.forEach((key, value) -> sum[0] += value);
+        assertEquals("Expected forEach to visit every value once", keys * (keys - 1L) / 2, sum[0]);
+    }
+}
@@ -0,0 +1,87 @@
+import java.security.SecureRandom;
+
+/**
+ * Computes the 32-bit hash of a string key used to place it in a map. Maps take the slot
+ * index from the high bits of the hash, so every bit of the result should depend on every
+ * character of the key. The hash must depend only on the characters, since maps also look
+ * keys up from other character sequences and from UTF-8 bytes, which must hash as the String
+ * holding the same characters does.
+ * @author Yanlin Li
+ */
+@FunctionalInterface
+public interface Hasher {
+    
+    /**
+     * The default hasher: String.hashCode(), which a String caches, scrambled with the
+     * MurmurHash3 32-bit finalizer, so keys that differ in their last character, like
+     * sequential keys, spread over the whole table instead of filling adjacent slots.
+     * Keys whose String.hashCode() collide still collide, so keys chosen by an attacker
+     * should be hashed with seeded() instead.
+     */
+    Hasher MURMUR = key -> mix(key instanceof String ? key.hashCode() : stringHashCode(key));
+    
+    /**
+     * @param key key to hash
+     * @return hash of key
+     */
+    int hash(CharSequence key);
+    
+    /**
+     * Makes a hasher computing SipHash-1-3 of the UTF-16 code units of a key, keyed with a
+     * random 128-bit secret. Without the secret, keys that collide cannot be found faster than
+     * by trying keys at random, so a map can be filled with keys chosen by an attacker without
+     * its probes growing long. SipHash reads every character of a key on every call, so it is
+     * slower than MURMUR for long keys.
+     * @return hasher with a new random secret
+     */
+    static Hasher seeded() {
+        final SecureRandom random = new SecureRandom();
+        return seeded(random.nextLong(), random.nextLong());
+    }
+    
+    /**
+     * Makes a hasher computing SipHash-1-3 of the UTF-16 code units of a key, keyed with
+     * the given 128-bit secret.
+     * @param k0 first half of the secret
+     * @param k1 second half of the secret
+     * @return hasher with the given secret
+     */
+    static Hasher seeded(final long k0, final long k1) {
+        return key -> SipHash.hash(k0, k1, key);
+    }
+    
+    /**
+     * Scrambles a 32-bit hash with the MurmurHash3 finalizer.
+     * @param hash hash to scramble
+     * @return scrambled hash
+     */
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+    
+    /**
+     * @param key character sequence
+     * @return the hash code String would compute for the same characters
+     */
+    static int stringHashCode(CharSequence key) {
+        int hash = 0;
+        for (int i = 0; i < key.length(); i++) hash = 31 * hash + key.charAt(i);
+        return hash;
+    }
+    
+    /**
+     * Reduces a 32-bit hash to an index in [0, size) with a multiply-shift, which takes the
+     * high bits of the hash and avoids the integer division of hash % size.
+     * @param hash hash to reduce
+     * @param size number of slots, at least 1
+     * @return slot index
+     */
+    static int indexFor(int hash, int size) {
+        return (int) (((hash & 0xffffffffL) * size) >>> 32);
+    }
+}
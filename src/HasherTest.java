@@ -0,0 +1,84 @@
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tester class for Hasher.
+ * @author Yanlin Li
+ */
+public class HasherTest {
+    
+    /*
+     * Testing strategy for Hasher
+     * 
+     * hash():
+     *     - MURMUR, seeded with a given secret, seeded with a random secret
+     *     - key is a String, or another CharSequence with the same characters
+     *     - key length 0, not a multiple of 4 characters, a multiple of 4 characters
+     *     - keys differ in a single character
+     * 
+     * indexFor():
+     *     - hash is 0, negative, Integer.MIN_VALUE, Integer.MAX_VALUE
+     *     - size = 1, > 1
+     * 
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final String[] KEYS = {"", "a", "ab", "abc", "abcd", "abcde", "key", "key0", "\u96ea\u00e9"};
+    
+    /*
+     * This test covers:
+     *     hash(): MURMUR, seeded with a given secret, key String or other CharSequence,
+     *             key lengths 0 to 5
+     */
+    @Test
+    public void testCharSequencesHashLikeStrings() {
+        for (Hasher hasher : new Hasher[] {Hasher.MURMUR, Hasher.seeded(1, 2)}) {
+            for (String key : KEYS) {
+                assertEquals("Expected StringBuilder to hash like String " + key,
+                        hasher.hash(key), hasher.hash(new StringBuilder(key)));
+            }
+        }
+        assertEquals("Expected MURMUR to scramble String.hashCode()", Hasher.mix("key".hashCode()), Hasher.MURMUR.hash("key"));
+        assertEquals("Expected same secret to give same hash", Hasher.seeded(1, 2).hash("key"), Hasher.seeded(1, 2).hash("key"));
+    }
+    
+    /*
+     * This test covers:
+     *     hash(): seeded with different secrets, keys differ in a single character
+     */
+    @Test
+    public void testSeededHashesDiffer() {
+        final Hasher first = Hasher.seeded();
+        final Hasher second = Hasher.seeded();
+        int equal = 0;
+        final Set<Integer> hashes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            final String key = "key" + i;
+            if (first.hash(key) == second.hash(key)) equal++;
+            hashes.add(first.hash(key));
+        }
+        assertTrue("Expected random secrets to hash keys differently", equal < 5);
+        assertTrue("Expected sequential keys to have distinct hashes", hashes.size() > 990);
+    }
+    
+    /*
+     * This test covers:
+     *     indexFor(): hash 0, negative, Integer.MIN_VALUE, Integer.MAX_VALUE, size 1 and > 1
+     */
+    @Test
+    public void testIndexInRange() {
+        for (int size : new int[] {1, 3, 1000, Integer.MAX_VALUE}) {
+            for (int hash : new int[] {0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+                final int index = Hasher.indexFor(hash, size);
+                assertTrue("Expected index of hash " + hash + " in [0, " + size + "), got " + index,
+                        index >= 0 && index < size);
+            }
+        }
+        assertEquals("Expected hash 0 at index 0", 0, Hasher.indexFor(0, 1000));
+        assertEquals("Expected hash -1 at the last index", 999, Hasher.indexFor(-1, 1000));
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * A fixed-sized hash map that associates primitive int keys with primitive int values.
+ * Collision is resolved through linear probing.
+ * Keys are stored unboxed in an int[] and spread over the slots by a 32-bit mixing function,
+ * so set, get and delete never allocate or box. A deletion shifts the keys that follow it back
+ * instead of leaving a tombstone, so probes never lengthen from churn.
+ * @author Yanlin Li
+ */
+public class IntToIntFixedSizeHashMap {
+    
+    /** Instance variables. */
+    private final int size; // fixed size of bucket
+    private final int[] keys; // key stored in each slot
+    private final int[] values; // value stored in each slot
+    private final boolean[] used; // true if slot holds a key/value pair
+    private int itemCount; // number of key/value pairs currently present in map
+    private final int noEntryValue; // value returned for keys not in map
+    
+    /**
+     * Make a new fixed-size hash map of the specified size, returning 0 for absent keys.
+     * @param size fixed size of the map
+     */
+    public IntToIntFixedSizeHashMap(final int size) {
+        this(size, 0);
+    }
+    
+    /**
+     * Make a new fixed-size hash map of the specified size.
+     * @param size fixed size of the map
+     * @param noEntryValue value returned by get() and delete() for keys not in the map
+     */
+    public IntToIntFixedSizeHashMap(final int size, final int noEntryValue) {
+        this.noEntryValue = noEntryValue;
+        this.size = size;
+        this.keys = new int[size];
+        this.values = new int[size];
+        this.used = new boolean[size];
+        this.itemCount = 0;
+    }
+    
+    /**
+     * Stores the specified value with the specified key in this fixed-size map.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     */
+    public boolean set(final int key, final int value) {
+        if (size == 0) return false; // operation always fails if map has size 0
+        
+        int home = indexFor(key);
+        int probe = home; // probe starts at index home
+        do {
+            if (!used[probe]) { // key is absent, store it in the first unused slot
+                keys[probe] = key;
+                values[probe] = value;
+                used[probe] = true;
+                itemCount++;
+                return true;
+            }
+            else if (keys[probe] == key) {
+                values[probe] = value; // reset value if keys are the same
+                return true;
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return false; // if probe looped back to home, then map is full, operation failure
+    }
+    
+    /**
+     * Adds the specified amount to the value of the specified key, probing for the key once,
+     * so that counting a key takes one call. An absent key is stored with the amount as its
+     * value, as if its value had been 0.
+     * @param key key whose value is to be increased
+     * @param delta amount to add to the value of the key
+     * @return the new value of the key, or the no-entry value if the key was absent and could
+     *         not be stored because the map is full; containsKey() tells the two apart when the
+     *         new value may equal the no-entry value
+     */
+    public int addTo(final int key, final int delta) {
+        if (size == 0) return noEntryValue; // operation always fails if map has size 0
+        
+        int home = indexFor(key);
+        int probe = home; // probe starts at index home
+        do {
+            if (!used[probe]) { // key is absent, store it in the first unused slot
+                keys[probe] = key;
+                values[probe] = delta;
+                used[probe] = true;
+                itemCount++;
+                return delta;
+            }
+            else if (keys[probe] == key) {
+                values[probe] += delta;
+                return values[probe];
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return noEntryValue; // if probe looped back to home, then map is full, operation failure
+    }
+    
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or the no-entry value if this map contains no mapping for the key.
+     * @param key key whose associated value is to be returned
+     * @return the value to which the specified key is mapped,
+     *         or the no-entry value if this map contains no mapping for the key
+     */
+    public int get(final int key) {
+        int slot = find(key);
+        return slot < 0 ? noEntryValue : values[slot];
+    }
+    
+    /**
+     * Returns whether this map contains a mapping for the specified key.
+     * @param key key whose presence is to be tested
+     * @return true if this map contains a mapping for key, false otherwise
+     */
+    public boolean containsKey(final int key) {
+        return find(key) >= 0;
+    }
+    
+    /**
+     * Deletes the value associated with the given key if present.
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key,
+     *         or the no-entry value if there was no mapping for key
+     */
+    public int delete(final int key) {
+        int slot = find(key);
+        if (slot < 0) return noEntryValue;
+        int value = values[slot];
+        shiftBackward(slot);
+        itemCount--;
+        return value;
+    }
+    
+    /**
+     * Returns the load factor (`(items in map)/(size of map)`).
+     * @return load factor.
+     *         Since the size of the map is fixed, this should never be greater than 1.
+     *         If map has size 0, this value is 1.
+     */
+    public double load() {
+        if (size == 0) return 1.0; // map of size 0 has load factor 1
+        return (double) itemCount / size;
+    }
+    
+    /**
+     * Finds the slot holding the given key.
+     * @param key key to look for
+     * @return index of the slot holding key, or -1 if key is not in the map
+     */
+    private int find(int key) {
+        if (size == 0) return -1; // map of size 0 has no keys
+        
+        int home = indexFor(key);
+        int probe = home; // probe starts at index home
+        do {
+            if (!used[probe]) return -1;
+            if (keys[probe] == key) return probe;
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return -1; // if probe looped back to home, then key does not exist
+    }
+    
+    /**
+     * Empties a slot, moving back every following key whose probe sequence passes through it,
+     * so that no key is separated from its home slot by an unused slot.
+     * @param hole index of the slot to empty
+     */
+    private void shiftBackward(int hole) {
+        used[hole] = false;
+        int next = hole;
+        while (true) {
+            next = next + 1 == size ? 0 : next + 1;
+            if (!used[next]) return; // end of the cluster
+            int home = indexFor(keys[next]);
+            // The key at next can fill the hole if its home is not cyclically within (hole, next]
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                used[hole] = true;
+                used[next] = false;
+                hole = next;
+            }
+        }
+    }
+    
+    /**
+     * Maps a key to the slot index at which probing for the key starts.
+     * The key is mixed with the MurmurHash3 32-bit finalizer, so sequential keys spread over
+     * the whole table, and the mix is scaled down to [0, size).
+     * @param key key to be hashed
+     * @return home slot index
+     */
+    private int indexFor(int key) {
+        int hash = key;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (int) (((hash & 0xffffffffL) * size) >>> 32);
+    }
+}
@@ -0,0 +1,131 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tester class for IntToIntFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class IntToIntFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for IntToIntFixedSizeHashMap
+     *
+     * set(), get(), containsKey(), delete():
+     *     - map size = 0, > 0
+     *     - key = 0, negative, Integer.MIN_VALUE, Integer.MAX_VALUE, other
+     *     - key present or absent (never inserted or already deleted)
+     *     - no-entry value is default 0, or given
+     *     - fixed-size constraint: cannot set more unique keys if map is full
+     *     - long runs of random calls on a map whose keys collide, compared to java.util.HashMap
+     *
+     * addTo():
+     *     - map size = 0, > 0
+     *     - key present or absent, new key on a full map
+     *
+     * load():
+     *     - map size = 0, > 0
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int SMALL_MAP_SIZE = 4;
+    private static final int LARGE_MAP_SIZE = 100;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * This test covers:
+     *     set(), get(), containsKey(), delete(), load(): map size = 0
+     */
+    @Test
+    public void testSizeZeroMap() {
+        final IntToIntFixedSizeHashMap map = new IntToIntFixedSizeHashMap(0);
+        assertFalse("Expected 1 to be added unsuccessfully", map.set(1, 1));
+        assertEquals("Expected no-entry value 0 for absent key 1", 0, map.get(1));
+        assertFalse("Expected absent key 1", map.containsKey(1));
+        assertEquals("Expected no-entry value 0 for key 1 not contained in map", 0, map.delete(1));
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), containsKey(), delete(): map size > 0, extreme keys, keys present and
+     *                                            absent, fixed-size map is full
+     *     load(): map size > 0
+     */
+    @Test
+    public void testExtremeKeysFullMap() {
+        final IntToIntFixedSizeHashMap map = new IntToIntFixedSizeHashMap(SMALL_MAP_SIZE, -7);
+        final int[] keys = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int key : keys) {
+            assertTrue("Expected " + key + " to be added successfully", map.set(key, key / 2));
+        }
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        assertFalse("Expected 7 to be added unsuccessfully", map.set(7, 70));
+        assertTrue("Expected 0 to be reset successfully", map.set(0, 100));
+        assertEquals("Expected key/value (0: 100)", 100, map.get(0));
+        assertEquals("Expected key/value (-1: 0)", 0, map.get(-1));
+        assertEquals("Expected deleted value " + Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, map.delete(Integer.MIN_VALUE));
+        assertFalse("Expected absent key " + Integer.MIN_VALUE, map.containsKey(Integer.MIN_VALUE));
+        assertEquals("Expected no-entry value -7 for deleted key", -7, map.delete(Integer.MIN_VALUE));
+        assertEquals("Expected no-entry value -7 for deleted key", -7, map.get(Integer.MIN_VALUE));
+        assertTrue("Expected present key " + Integer.MAX_VALUE, map.containsKey(Integer.MAX_VALUE));
+        assertEquals("Expected load 0.75", 0.75, map.load(), DELTA);
+        assertTrue("Expected 7 to be added successfully", map.set(7, 70));
+        assertEquals("Expected key/value (7: 70)", 70, map.get(7));
+    }
+    
+    /*
+     * This test covers:
+     *     addTo(): map size = 0, > 0, key present or absent, new key on a full map
+     */
+    @Test
+    public void testAddTo() {
+        assertEquals("Expected no-entry value -1 on a map of size 0", -1, new IntToIntFixedSizeHashMap(0, -1).addTo(5, 1));
+        final IntToIntFixedSizeHashMap map = new IntToIntFixedSizeHashMap(SMALL_MAP_SIZE, -1);
+        assertEquals("Expected new key 5 to start from 0", 3, map.addTo(5, 3));
+        assertEquals("Expected 5 increased to 7", 7, map.addTo(5, 4));
+        assertEquals("Expected 5 decreased to 0", 0, map.addTo(5, -7));
+        assertEquals("Expected key/value (5: 0)", 0, map.get(5));
+        for (int key = 1; key <= SMALL_MAP_SIZE - 1; key++) map.addTo(key * 1000003, 1);
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        assertEquals("Expected no-entry value -1 for a new key on a full map", -1, map.addTo(6, 1));
+        assertFalse("Expected key 6 absent", map.containsKey(6));
+        assertEquals("Expected a present key increased on a full map", 2, map.addTo(1000003, 1));
+    }
+    
+    /*
+     * This test covers long runs of random set(), get(), containsKey() and delete() calls on
+     * a map whose keys collide, compared against java.util.HashMap.
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        final IntToIntFixedSizeHashMap map = new IntToIntFixedSizeHashMap(LARGE_MAP_SIZE);
+        final Map<Integer, Integer> expected = new HashMap<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final int key = random.nextInt(LARGE_MAP_SIZE * 3 / 2) * 1000003;
+            switch (random.nextInt(3)) {
+                case 0:
+                    final boolean success = map.set(key, i);
+                    assertEquals("Expected set to fail only when key is absent from a full map",
+                            expected.size() < LARGE_MAP_SIZE || expected.containsKey(key), success);
+                    if (success) expected.put(key, i);
+                    break;
+                case 1:
+                    assertEquals("Expected get to match HashMap", (int) expected.getOrDefault(key, 0), map.get(key));
+                    assertEquals("Expected containsKey to match HashMap", expected.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    final Integer removed = expected.remove(key);
+                    assertEquals("Expected delete to match HashMap", removed == null ? 0 : (int) removed, map.delete(key));
+            }
+            assertEquals("Expected load to match HashMap size",
+                    expected.size() / (double) LARGE_MAP_SIZE, map.load(), DELTA);
+        }
+    }
+}
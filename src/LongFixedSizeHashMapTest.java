@@ -0,0 +1,105 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tester class for LongFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class LongFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for LongFixedSizeHashMap
+     *
+     * set(), get(), containsKey(), delete():
+     *     - map size = 0, > 0
+     *     - key = 0, negative, Long.MIN_VALUE, Long.MAX_VALUE, other
+     *     - key present or absent (never inserted or already deleted)
+     *     - fixed-size constraint: cannot set more unique keys if map is full
+     *     - long runs of random calls on a map whose keys collide, compared to java.util.HashMap
+     *
+     * load():
+     *     - map size = 0, > 0
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int SMALL_MAP_SIZE = 4;
+    private static final int LARGE_MAP_SIZE = 100;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * This test covers:
+     *     set(), get(), containsKey(), delete(), load(): map size = 0
+     */
+    @Test
+    public void testSizeZeroMap() {
+        final LongFixedSizeHashMap<String> map = new LongFixedSizeHashMap<>(0);
+        assertFalse("Expected 1 to be added unsuccessfully", map.set(1, "one"));
+        assertEquals("Expected null for absent key 1", null, map.get(1));
+        assertFalse("Expected absent key 1", map.containsKey(1));
+        assertEquals("Expected null value for key 1 not contained in map", null, map.delete(1));
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), containsKey(), delete(): map size > 0, extreme keys, keys present and
+     *                                            absent, fixed-size map is full
+     *     load(): map size > 0
+     */
+    @Test
+    public void testExtremeKeysFullMap() {
+        final LongFixedSizeHashMap<String> map = new LongFixedSizeHashMap<>(SMALL_MAP_SIZE);
+        final long[] keys = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (long key : keys) {
+            assertTrue("Expected " + key + " to be added successfully", map.set(key, "v" + key));
+        }
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        assertFalse("Expected 7 to be added unsuccessfully", map.set(7, "v7"));
+        assertTrue("Expected 0 to be reset successfully", map.set(0, "zero"));
+        assertEquals("Expected key/value (0: zero)", "zero", map.get(0));
+        assertEquals("Expected key/value (-1: v-1)", "v-1", map.get(-1));
+        assertEquals("Expected deleted value v" + Long.MIN_VALUE, "v" + Long.MIN_VALUE, map.delete(Long.MIN_VALUE));
+        assertFalse("Expected absent key " + Long.MIN_VALUE, map.containsKey(Long.MIN_VALUE));
+        assertEquals("Expected null for deleted key", null, map.delete(Long.MIN_VALUE));
+        assertTrue("Expected present key " + Long.MAX_VALUE, map.containsKey(Long.MAX_VALUE));
+        assertEquals("Expected load 0.75", 0.75, map.load(), DELTA);
+        assertTrue("Expected 7 to be added successfully", map.set(7, "v7"));
+        assertEquals("Expected key/value (7: v7)", "v7", map.get(7));
+    }
+    
+    /*
+     * This test covers long runs of random set(), get(), containsKey() and delete() calls on
+     * a map whose keys collide, compared against java.util.HashMap.
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        final LongFixedSizeHashMap<Integer> map = new LongFixedSizeHashMap<>(LARGE_MAP_SIZE);
+        final Map<Long, Integer> expected = new HashMap<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final long key = random.nextInt(LARGE_MAP_SIZE * 3 / 2) * 1000003L;
+            switch (random.nextInt(3)) {
+                case 0:
+                    final boolean success = map.set(key, i);
+                    assertEquals("Expected set to fail only when key is absent from a full map",
+                            expected.size() < LARGE_MAP_SIZE || expected.containsKey(key), success);
+                    if (success) expected.put(key, i);
+                    break;
+                case 1:
+                    assertEquals("Expected get to match HashMap", expected.get(key), map.get(key));
+                    assertEquals("Expected containsKey to match HashMap", expected.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    assertEquals("Expected delete to match HashMap", expected.remove(key), map.delete(key));
+            }
+            assertEquals("Expected load to match HashMap size",
+                    expected.size() / (double) LARGE_MAP_SIZE, map.load(), DELTA);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts the operations on a FixedSizeHashMap and the number of slots each examined, once
+ * enableMetrics() has been called on the map.
+ * Counters are only written by the thread using the map, one thread at a time, so each is
+ * incremented with a plain read and an ordered write rather than an atomic update, which costs
+ * no more than an ordinary increment. They can be read from any thread, while the map is in use,
+ * through snapshot() or through JMX once the metrics are registered as an MXBean.
+ * The load, tombstones and longest cluster are read from the map when asked for, without
+ * locking it, so while the map changes they may be slightly out of date with each other.
+ * @author Yanlin Li
+ */
+public final class MapMetrics implements MapMetricsMXBean {
+    
+    /** Indices of the counters. */
+    private static final int GET_HITS = 0;
+    private static final int GET_MISSES = 1;
+    private static final int SET_SUCCESSES = 2;
+    private static final int SET_FAILURES = 3;
+    private static final int DELETE_HITS = 4;
+    private static final int DELETE_MISSES = 5;
+    private static final int COUNTERS = 6;
+    
+    /** Instance variables. */
+    private final FixedSizeHashMap<?> map; // map whose operations are counted
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS); // operation counts
+    private final AtomicLongArray getProbes; // get() probe length histogram
+    private final AtomicLongArray setProbes; // set() probe length histogram
+    private final AtomicLongArray deleteProbes; // delete() probe length histogram
+    private ObjectName name; // name the metrics are registered under, or null
+    
+    /**
+     * Make metrics with every count zero.
+     * @param map map whose operations are counted
+     * @param size fixed size of map, the longest possible probe
+     */
+    MapMetrics(FixedSizeHashMap<?> map, int size) {
+        this.map = map;
+        int buckets = bucket(Math.max(1, size)) + 1;
+        this.getProbes = new AtomicLongArray(buckets);
+        this.setProbes = new AtomicLongArray(buckets);
+        this.deleteProbes = new AtomicLongArray(buckets);
+    }
+    
+    /**
+     * Records a get() lookup.
+     * @param hit true if the key was found
+     * @param probes number of slots examined
+     */
+    void recordGet(boolean hit, int probes) {
+        increment(counters, hit ? GET_HITS : GET_MISSES);
+        increment(getProbes, bucket(probes));
+    }
+    
+    /**
+     * Records a set() call.
+     * @param success true if the key/value pair was stored
+     * @param probes number of slots examined
+     */
+    void recordSet(boolean success, int probes) {
+        increment(counters, success ? SET_SUCCESSES : SET_FAILURES);
+        increment(setProbes, bucket(probes));
+    }
+    
+    /**
+     * Records a delete() call.
+     * @param hit true if the key was found
+     * @param probes number of slots examined
+     */
+    void recordDelete(boolean hit, int probes) {
+        increment(counters, hit ? DELETE_HITS : DELETE_MISSES);
+        increment(deleteProbes, bucket(probes));
+    }
+    
+    /**
+     * Copies every metric at once. It may be called from any thread while the map is in use.
+     * @return immutable copy of the metrics
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(counters.get(GET_HITS), counters.get(GET_MISSES), counters.get(SET_SUCCESSES),
+                counters.get(SET_FAILURES), counters.get(DELETE_HITS), counters.get(DELETE_MISSES),
+                copy(getProbes), copy(setProbes), copy(deleteProbes),
+                map.load(), map.tombstones(), map.longestCluster());
+    }
+    
+    /**
+     * Registers the metrics as an MXBean with the platform MBean server, so they can be read
+     * through JMX. Registering metrics that are already registered has no effect.
+     * @param name name to register the metrics under,
+     *        such as "FixedSizeHashMap:type=Metrics,name=sessions"
+     * @throws JMException if the name is malformed or already taken
+     */
+    public synchronized void register(final String name) throws JMException {
+        if (name == null)
+            throw new IllegalArgumentException("Name cannot be null.");
+        
+        if (this.name != null) return;
+        final ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+    }
+    
+    /**
+     * Unregisters the metrics from the platform MBean server, if they are registered.
+     * @throws JMException if the metrics were unregistered by other means
+     */
+    public synchronized void unregister() throws JMException {
+        if (name == null) return;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        name = null;
+    }
+    
+    @Override
+    public long getGetHits() {
+        return counters.get(GET_HITS);
+    }
+    
+    @Override
+    public long getGetMisses() {
+        return counters.get(GET_MISSES);
+    }
+    
+    @Override
+    public long getSetSuccesses() {
+        return counters.get(SET_SUCCESSES);
+    }
+    
+    @Override
+    public long getSetFailures() {
+        return counters.get(SET_FAILURES);
+    }
+    
+    @Override
+    public long getDeleteHits() {
+        return counters.get(DELETE_HITS);
+    }
+    
+    @Override
+    public long getDeleteMisses() {
+        return counters.get(DELETE_MISSES);
+    }
+    
+    @Override
+    public long[] getGetProbeHistogram() {
+        return copy(getProbes);
+    }
+    
+    @Override
+    public long[] getSetProbeHistogram() {
+        return copy(setProbes);
+    }
+    
+    @Override
+    public long[] getDeleteProbeHistogram() {
+        return copy(deleteProbes);
+    }
+    
+    @Override
+    public double getLoad() {
+        return map.load();
+    }
+    
+    @Override
+    public int getTombstones() {
+        return map.tombstones();
+    }
+    
+    @Override
+    public int getLongestCluster() {
+        return map.longestCluster();
+    }
+    
+    /**
+     * Maps a probe length to its histogram bucket: 1 to bucket 0, and lengths from
+     * 2^(b-1) + 1 to 2^b to bucket b.
+     * @param probes number of slots examined, at least 1
+     * @return bucket index
+     */
+    static int bucket(int probes) {
+        return 32 - Integer.numberOfLeadingZeros(probes - 1);
+    }
+    
+    /**
+     * Adds 1 to a counter written by a single thread at a time.
+     * @param counters array of counters
+     * @param index index of the counter
+     */
+    private static void increment(AtomicLongArray counters, int index) {
+        counters.lazySet(index, counters.get(index) + 1);
+    }
+    
+    /**
+     * @param histogram histogram to copy
+     * @return array holding the counts of histogram
+     */
+    private static long[] copy(AtomicLongArray histogram) {
+        final long[] copy = new long[histogram.length()];
+        for (int i = 0; i < copy.length; i++) copy[i] = histogram.get(i);
+        return copy;
+    }
+}
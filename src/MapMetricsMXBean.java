@@ -0,0 +1,68 @@
+/**
+ * Management interface of the metrics of a FixedSizeHashMap, through which JMX clients such as
+ * JConsole read them. Every attribute is read from the map as it is at the time, so attributes
+ * read one after another may describe slightly different states of a map in use.
+ * @author Yanlin Li
+ */
+public interface MapMetricsMXBean {
+    
+    /**
+     * @return number of get() lookups that found their key
+     */
+    long getGetHits();
+    
+    /**
+     * @return number of get() lookups that did not find their key
+     */
+    long getGetMisses();
+    
+    /**
+     * @return number of set() calls that stored their key/value pair
+     */
+    long getSetSuccesses();
+    
+    /**
+     * @return number of set() calls rejected because the map was full
+     */
+    long getSetFailures();
+    
+    /**
+     * @return number of delete() calls that removed a key
+     */
+    long getDeleteHits();
+    
+    /**
+     * @return number of delete() calls that did not find their key
+     */
+    long getDeleteMisses();
+    
+    /**
+     * @return number of get() lookups by probe length, as described by MetricsSnapshot
+     */
+    long[] getGetProbeHistogram();
+    
+    /**
+     * @return number of set() calls by probe length, as described by MetricsSnapshot
+     */
+    long[] getSetProbeHistogram();
+    
+    /**
+     * @return number of delete() calls by probe length, as described by MetricsSnapshot
+     */
+    long[] getDeleteProbeHistogram();
+    
+    /**
+     * @return load factor of the map
+     */
+    double getLoad();
+    
+    /**
+     * @return number of tombstones in the map
+     */
+    int getTombstones();
+    
+    /**
+     * @return length of the longest cluster of the map
+     */
+    int getLongestCluster();
+}
@@ -0,0 +1,230 @@
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Tester class for MapMetrics and the metrics of FixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class MapMetricsTest {
+    
+    /*
+     * Testing strategy for MapMetrics
+     *
+     * enableMetrics(), disableMetrics():
+     *     - metrics never enabled, enabled, enabled twice, disabled and enabled again
+     *
+     * get(), set(), delete(), getAll(), deleteAll() with metrics enabled:
+     *     - key present or absent, map full or not
+     *     - probe length 1, 2, 3 to 4 slots
+     *     - probing LINEAR or ROBIN_HOOD, miss stopped by an EMPTY slot, a closer key
+     *       or the largest displacement
+     *
+     * snapshot():
+     *     - taken from the thread using the map, or from another thread while the map is in use
+     *     - map with or without tombstones, with or without an EMPTY slot
+     *
+     * register(), unregister():
+     *     - metrics registered or not, registered twice
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int MAP_SIZE = 8;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * Places each key at the home slot given by its second character, so keys "A0", "B0" and
+     * "C0" form a cluster at the start of the map.
+     */
+    private static final Hasher HOME_HASHER = key -> (int) ((((long) (key.charAt(1) - '0') << 32) + MAP_SIZE - 1) / MAP_SIZE);
+    
+    /*
+     * This test covers:
+     *     enableMetrics(): metrics never enabled
+     *     snapshot(): map with tombstones
+     */
+    @Test
+    public void testMetricsDisabled() {
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(MAP_SIZE, FixedSizeHashMap.Probing.LINEAR, HOME_HASHER);
+        map.set("A0", "Alice");
+        map.set("B0", "Bob");
+        map.set("C0", "Carol");
+        map.get("A0");
+        map.delete("B0");
+        final MetricsSnapshot snapshot = map.snapshot();
+        assertEquals("Expected no gets counted", 0, snapshot.getHits() + snapshot.getMisses());
+        assertEquals("Expected no sets counted", 0, snapshot.setSuccesses() + snapshot.setFailures());
+        assertEquals("Expected no deletes counted", 0, snapshot.deleteHits() + snapshot.deleteMisses());
+        assertEquals("Expected load 2/8", 2.0 / MAP_SIZE, snapshot.load(), DELTA);
+        assertEquals("Expected 1 tombstone", 1, snapshot.tombstones());
+        assertEquals("Expected longest cluster of 3 slots", 3, snapshot.longestCluster());
+    }
+    
+    /*
+     * This test covers:
+     *     enableMetrics(): metrics enabled, enabled twice, disabled and enabled again
+     *     get(), set(), delete(), getAll(), deleteAll(): key present or absent, map not full,
+     *         probe length 1, 2, 3 to 4 slots, LINEAR
+     *     snapshot(): taken from the thread using the map, map with tombstones
+     */
+    @Test
+    public void testLinearCounts() {
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(MAP_SIZE, FixedSizeHashMap.Probing.LINEAR, HOME_HASHER);
+        final MapMetrics metrics = map.enableMetrics();
+        assertSame("Expected the same metrics when enabled twice", metrics, map.enableMetrics());
+        assertTrue("Expected \"A0\" to be added successfully", map.set("A0", "Alice")); // 1 slot
+        assertTrue("Expected \"B0\" to be added successfully", map.set("B0", "Bob")); // 2 slots
+        assertTrue("Expected \"C0\" to be added successfully", map.set("C0", "Carol")); // 3 slots
+        assertTrue("Expected \"A0\" to be reset successfully", map.set("A0", "Ada")); // 1 slot
+        assertEquals("Expected key/value (C0: Carol)", "Carol", map.get("C0")); // 3 slots
+        assertEquals("Expected null for absent key \"D0\"", null, map.get("D0")); // 4 slots, up to EMPTY slot 3
+        assertEquals("Expected null for absent key \"E5\"", null, map.get("E5")); // 1 slot
+        assertEquals("Expected deleted value of \"B0\"", "Bob", map.delete("B0")); // 2 slots
+        assertEquals("Expected null for deleted key \"B0\"", null, map.delete("B0")); // 4 slots, over the tombstone
+        
+        MetricsSnapshot snapshot = map.snapshot();
+        assertEquals("Expected 1 get hit", 1, snapshot.getHits());
+        assertEquals("Expected 2 get misses", 2, snapshot.getMisses());
+        assertArrayEquals("Expected get probe lengths 3, 4 and 1", new long[] {1, 0, 2, 0}, snapshot.getProbeHistogram());
+        assertEquals("Expected 4 set successes", 4, snapshot.setSuccesses());
+        assertEquals("Expected no set failures", 0, snapshot.setFailures());
+        assertArrayEquals("Expected set probe lengths 1, 2, 3 and 1", new long[] {2, 1, 1, 0}, snapshot.setProbeHistogram());
+        assertEquals("Expected 1 delete hit", 1, snapshot.deleteHits());
+        assertEquals("Expected 1 delete miss", 1, snapshot.deleteMisses());
+        assertArrayEquals("Expected delete probe lengths 2 and 4", new long[] {0, 1, 1, 0}, snapshot.deleteProbeHistogram());
+        assertEquals("Expected 1 tombstone", 1, snapshot.tombstones());
+        assertEquals("Expected longest cluster of 3 slots", 3, snapshot.longestCluster());
+        
+        final String[] keys = {"A0", "C0", "F6"};
+        map.getAll(keys, new String[keys.length]);
+        map.deleteAll(keys, null);
+        snapshot = metrics.snapshot();
+        assertEquals("Expected batch gets counted key by key", 6, snapshot.getHits() + snapshot.getMisses());
+        assertEquals("Expected batch deletes counted key by key", 3, snapshot.deleteHits());
+        
+        map.disableMetrics();
+        map.get("A0");
+        assertEquals("Expected no gets counted while metrics are disabled", 6, metrics.getGetHits() + metrics.getGetMisses());
+        assertEquals("Expected new metrics to start from zero", 0, map.enableMetrics().getGetMisses());
+    }
+    
+    /*
+     * This test covers:
+     *     set(): map full
+     *     get(): ROBIN_HOOD, miss stopped by an EMPTY slot, a closer key or the largest displacement
+     *     snapshot(): map without an EMPTY slot
+     */
+    @Test
+    public void testFullAndRobinHood() {
+        final FixedSizeHashMap<String> full = new FixedSizeHashMap<>(2);
+        full.enableMetrics();
+        full.set("K", "Kleiner");
+        full.set("C", "Cruz");
+        assertFalse("Expected \"P\" to be added unsuccessfully", full.set("P", "Pine"));
+        MetricsSnapshot snapshot = full.snapshot();
+        assertEquals("Expected 1 set failure", 1, snapshot.setFailures());
+        assertEquals("Expected 2 set successes", 2, snapshot.setSuccesses());
+        assertEquals("Expected longest cluster to be the whole map", 2, snapshot.longestCluster());
+        
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(MAP_SIZE, FixedSizeHashMap.Probing.ROBIN_HOOD, HOME_HASHER);
+        map.set("A0", "Alice"); // slot 0
+        map.set("B0", "Bob"); // slot 1, 1 from home
+        map.set("C1", "Carol"); // slot 2, 1 from home
+        map.set("D3", "Dave"); // slot 3, at home
+        map.enableMetrics();
+        assertEquals("Expected null for absent key \"E5\"", null, map.get("E5")); // 1 slot, EMPTY
+        assertEquals("Expected null for absent key \"F1\"", null, map.get("F1")); // 2 slots, largest displacement
+        assertEquals("Expected null for absent key \"G2\"", null, map.get("G2")); // 2 slots, "D3" is at home
+        snapshot = map.snapshot();
+        assertEquals("Expected 3 get misses", 3, snapshot.getMisses());
+        assertArrayEquals("Expected get probe lengths 1, 2 and 2", new long[] {1, 2, 0, 0}, snapshot.getProbeHistogram());
+        assertEquals("Expected longest cluster of 4 slots", 4, snapshot.longestCluster());
+    }
+    
+    /*
+     * This test covers:
+     *     register(): metrics not registered, registered twice
+     *     unregister(): metrics registered, not registered
+     */
+    @Test
+    public void testMXBean() throws JMException {
+        final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(MAP_SIZE, FixedSizeHashMap.Probing.LINEAR, HOME_HASHER);
+        final MapMetrics metrics = map.enableMetrics();
+        final String name = "FixedSizeHashMap:type=Metrics,name=testMXBean";
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        metrics.register(name);
+        metrics.register(name);
+        try {
+            map.set("A0", "Alice");
+            map.get("A0");
+            map.get("B0");
+            assertEquals("Expected 1 get hit through JMX", 1L, server.getAttribute(new ObjectName(name), "GetHits"));
+            assertEquals("Expected 1 get miss through JMX", 1L, server.getAttribute(new ObjectName(name), "GetMisses"));
+            assertArrayEquals("Expected set probe histogram through JMX", new long[] {1, 0, 0, 0},
+                    (long[]) server.getAttribute(new ObjectName(name), "SetProbeHistogram"));
+            assertEquals("Expected load through JMX", 1.0 / MAP_SIZE,
+                    (Double) server.getAttribute(new ObjectName(name), "Load"), DELTA);
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse("Expected metrics to be unregistered", server.isRegistered(new ObjectName(name)));
+        metrics.unregister();
+    }
+    
+    /*
+     * This test covers:
+     *     snapshot(): taken from another thread while the map is in use
+     */
+    @Test
+    public void testSnapshotWhileMapInUse() throws InterruptedException {
+        final FixedSizeHashMap<Integer> map = new FixedSizeHashMap<>(64);
+        map.enableMetrics();
+        final int operations = 200000;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            try {
+                final Random random = new Random(13);
+                for (int i = 0; i < operations; i++) {
+                    final String key = "k" + random.nextInt(100);
+                    switch (random.nextInt(3)) {
+                        case 0: map.set(key, i); break;
+                        case 1: map.get(key); break;
+                        default: map.delete(key); break;
+                    }
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        writer.start();
+        long previous = 0;
+        while (writer.isAlive()) {
+            final MetricsSnapshot snapshot = map.snapshot();
+            final long count = snapshot.getHits() + snapshot.getMisses() + snapshot.setSuccesses()
+                    + snapshot.setFailures() + snapshot.deleteHits() + snapshot.deleteMisses();
+            assertTrue("Expected counts never to decrease", count >= previous);
+            assertTrue("Expected longest cluster within the map", snapshot.longestCluster() <= 64);
+            previous = count;
+        }
+        writer.join();
+        assertNull("Expected writer to finish without failure", failure.get());
+        final MetricsSnapshot snapshot = map.snapshot();
+        assertEquals("Expected every operation counted", operations, snapshot.getHits() + snapshot.getMisses()
+                + snapshot.setSuccesses() + snapshot.setFailures() + snapshot.deleteHits() + snapshot.deleteMisses());
+        long histogramTotal = 0;
+        for (long[] histogram : new long[][] {snapshot.getProbeHistogram(), snapshot.setProbeHistogram(),
+                snapshot.deleteProbeHistogram()}) {
+            for (long count : histogram) histogramTotal += count;
+        }
+        assertEquals("Expected every operation in a histogram", operations, histogramTotal);
+    }
+}
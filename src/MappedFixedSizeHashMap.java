@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * An off-heap fixed-size hash map whose slots live in a memory-mapped file, so the map
+ * outlives the process and can be reopened and served right away after a restart.
+ * Every set() and delete() writes through to the mapping.
+ * The file starts with a header recording the format version, the shape of the map, the
+ * number of items and whether the file is dirty. Every LIVE slot carries a CRC32C checksum
+ * of its key and value. The file is marked dirty, durably, before the first change after it is opened
+ * or flushed, and marked clean by flush() and close() once all slots have reached the disk.
+ * Reopening a dirty file, left behind by a crash, verifies every LIVE slot, repairs any
+ * compaction of tombstones the crash stopped halfway, and recounts the items, so a slot torn
+ * by a partial write is reported rather than served.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public class MappedFixedSizeHashMap<V> extends OffHeapFixedSizeHashMap<V> {
+    
+    /** Layout of the header at the start of the file. */
+    static final int MAGIC = 0x46534d48; // "FSMH"
+    static final int FORMAT_VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int SIZE_OFFSET = 8;
+    static final int MAX_KEY_LENGTH_OFFSET = 12;
+    static final int VALUE_WIDTH_OFFSET = 16;
+    static final int ITEM_COUNT_OFFSET = 20;
+    static final int DIRTY_OFFSET = 24;
+    static final int HEADER_CHECKSUM_OFFSET = 28; // CRC32C of the bytes before it
+    static final int HEADER_BYTES = 4096; // slots start on a page boundary
+    
+    /** Number of bytes of the checksum at the end of every slot. */
+    static final int CHECKSUM_BYTES = 4;
+    
+    /** Instance variables. */
+    private final Path file; // file holding the map
+    private final FileChannel channel; // open channel to file, holding its lock
+    private final MappedByteBuffer header; // mapping of the header
+    private final MappedByteBuffer[] mappings; // mappings of the slots, one per chunk
+    private final ByteBuffer[] views; // views of mappings whose position and limit are changed by checksums
+    private final int chunkShift; // each chunk holds 1 << chunkShift slots
+    private final int slotWidth; // number of bytes of a slot
+    private final CRC32C crc = new CRC32C(); // computes checksums
+    private boolean dirty; // true if the header marks the file as dirty
+    
+    /**
+     * Opens the map held in a file, creating the file and an empty map if the file does not
+     * exist or is empty.
+     * @param file file holding the map
+     * @param size fixed size of the map
+     * @param maxKeyLength maximum number of bytes of a key, at most 65535
+     * @param codec converts values to and from bytes
+     * @return map held in file
+     * @throws IOException if the file cannot be opened or mapped, is used by another map,
+     *         holds a map of another size, maximum key length or value width, or is corrupted
+     */
+    public static <V> MappedFixedSizeHashMap<V> open(final Path file, final int size, final int maxKeyLength,
+            final ValueCodec<V> codec) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("File cannot be null.");
+        final int slotWidth = slotWidth(size, maxKeyLength, codec, CHECKSUM_BYTES);
+        
+        final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final FileLock lock = channel.tryLock();
+            if (lock == null)
+                throw new IOException(file + " is in use by another process.");
+            final boolean created = channel.size() == 0;
+            if (!created && channel.size() < HEADER_BYTES)
+                throw new IOException(file + " does not hold a map.");
+            final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (created) {
+                header.putInt(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, FORMAT_VERSION);
+                header.putInt(SIZE_OFFSET, size);
+                header.putInt(MAX_KEY_LENGTH_OFFSET, maxKeyLength);
+                header.putInt(VALUE_WIDTH_OFFSET, codec.width());
+            }
+            else {
+                checkHeader(file, header, size, maxKeyLength, codec);
+            }
+            
+            final int chunkShift = chunkShift(slotWidth);
+            final MappedByteBuffer[] mappings = new MappedByteBuffer[chunkCount(size, chunkShift)];
+            for (int chunk = 0; chunk < mappings.length; chunk++) {
+                final long position = HEADER_BYTES + ((long) chunk << chunkShift) * slotWidth;
+                final long bytes = (long) chunkSlots(size, chunkShift, chunk) * slotWidth;
+                // Bytes past the end of the file read as zero, so new slots are EMPTY
+                mappings[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+            }
+            final int itemCount = header.getInt(ITEM_COUNT_OFFSET);
+            final MappedFixedSizeHashMap<V> map = new MappedFixedSizeHashMap<>(file, channel, header, mappings,
+                    size, maxKeyLength, codec, itemCount);
+            if (created) map.flush();
+            else if (header.get(DIRTY_OFFSET) != 0) map.recover();
+            return map;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Make a map over mapped memory. Use open() to make one.
+     */
+    private MappedFixedSizeHashMap(Path file, FileChannel channel, MappedByteBuffer header, MappedByteBuffer[] mappings,
+            int size, int maxKeyLength, ValueCodec<V> codec, int itemCount) {
+        super(size, maxKeyLength, codec, CHECKSUM_BYTES, mappings, itemCount);
+        this.file = file;
+        this.channel = channel;
+        this.header = header;
+        this.mappings = mappings;
+        this.views = new ByteBuffer[mappings.length];
+        for (int chunk = 0; chunk < mappings.length; chunk++) views[chunk] = mappings[chunk].duplicate();
+        this.slotWidth = slotWidth(size, maxKeyLength, codec, CHECKSUM_BYTES);
+        this.chunkShift = chunkShift(slotWidth);
+        this.dirty = header.get(DIRTY_OFFSET) != 0;
+    }
+    
+    /**
+     * Writes every change made to the map to the disk, then marks the file clean,
+     * so reopening it does not need to verify the slots.
+     * @throws IOException if the file cannot be written
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        for (MappedByteBuffer mapping : mappings) mapping.force();
+        header.putInt(ITEM_COUNT_OFFSET, itemCount());
+        header.put(DIRTY_OFFSET, (byte) 0);
+        writeHeader();
+        dirty = false;
+    }
+    
+    /**
+     * Flushes the map, then unmaps the file and closes it. Further operations on the map
+     * throw IllegalStateException. Closing a closed map has no effect.
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void close() {
+        if (!channel.isOpen()) return;
+        try {
+            try {
+                flush();
+            } finally {
+                super.close();
+                free(header);
+                channel.close(); // releases the lock
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close " + file + ".", e);
+        }
+    }
+    
+    /**
+     * Marks the file dirty, and waits for the mark to reach the disk, before the first change
+     * since the file was opened or flushed.
+     */
+    @Override
+    void beforeWrite() {
+        if (dirty) return;
+        header.put(DIRTY_OFFSET, (byte) 1);
+        writeHeader();
+        dirty = true;
+    }
+    
+    /**
+     * Stores the checksum of a slot in its trailer.
+     * @param slot index of the slot written
+     */
+    @Override
+    void slotWritten(int slot) {
+        chunk(slot).putInt(base(slot) + slotWidth - CHECKSUM_BYTES, checksum(slot));
+    }
+    
+    /**
+     * Verifies every slot of a file left dirty by a crash, repairs probe sequences a compaction
+     * may have left halfway, recounts the items, then marks the file clean again.
+     * @throws IOException if a slot is corrupted, in which case the map must be rebuilt
+     */
+    private void recover() throws IOException {
+        for (int chunk = 0; chunk < mappings.length; chunk++) {
+            final int first = chunk << chunkShift;
+            final int last = first + mappings[chunk].capacity() / slotWidth;
+            for (int slot = first; slot < last; slot++) {
+                final byte state = chunk(slot).get(base(slot) + STATE_OFFSET);
+                if (state == LIVE) {
+                    if (chunk(slot).getInt(base(slot) + slotWidth - CHECKSUM_BYTES) != checksum(slot))
+                        throw new IOException("Slot " + slot + " of " + file + " is corrupted.");
+                }
+                else if (state != EMPTY && state != DELETED) {
+                    throw new IOException("Slot " + slot + " of " + file + " is corrupted.");
+                }
+            }
+        }
+        repair();
+        for (MappedByteBuffer mapping : mappings) mapping.force();
+        header.putInt(ITEM_COUNT_OFFSET, itemCount());
+        header.put(DIRTY_OFFSET, (byte) 0);
+        writeHeader();
+        dirty = false;
+    }
+    
+    /**
+     * Computes the checksum of the bytes of a slot between its state and its trailer. The state
+     * is left out so that the checksum can be stored before a new slot becomes LIVE.
+     * @param slot slot index
+     * @return CRC32C of the slot
+     */
+    private int checksum(int slot) {
+        final ByteBuffer view = views[slot >>> chunkShift];
+        final int base = base(slot);
+        view.limit(base + slotWidth - CHECKSUM_BYTES).position(base + STATE_OFFSET + 1);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Stores the checksum of the header, then waits for the header to reach the disk.
+     */
+    private void writeHeader() {
+        header.putInt(HEADER_CHECKSUM_OFFSET, headerChecksum(header, crc));
+        header.force();
+    }
+    
+    /**
+     * Checks that a header is intact and describes a map of the given shape.
+     * @throws IOException if it does not
+     */
+    private static void checkHeader(Path file, ByteBuffer header, int size, int maxKeyLength, ValueCodec<?> codec)
+            throws IOException {
+        if (header.getInt(MAGIC_OFFSET) != MAGIC)
+            throw new IOException(file + " does not hold a map.");
+        if (header.getInt(HEADER_CHECKSUM_OFFSET) != headerChecksum(header, new CRC32C()))
+            throw new IOException("Header of " + file + " is corrupted.");
+        if (header.getInt(VERSION_OFFSET) != FORMAT_VERSION)
+            throw new IOException(file + " has unsupported format version " + header.getInt(VERSION_OFFSET) + ".");
+        if (header.getInt(SIZE_OFFSET) != size || header.getInt(MAX_KEY_LENGTH_OFFSET) != maxKeyLength
+                || header.getInt(VALUE_WIDTH_OFFSET) != codec.width())
+            throw new IOException(file + " holds a map of a different size, maximum key length or value width.");
+    }
+    
+    /**
+     * @param header header of a file
+     * @param crc checksum to compute with
+     * @return CRC32C of the bytes of the header before its checksum
+     */
+    private static int headerChecksum(ByteBuffer header, CRC32C crc) {
+        final ByteBuffer view = header.duplicate();
+        view.limit(HEADER_CHECKSUM_OFFSET).position(0);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+}
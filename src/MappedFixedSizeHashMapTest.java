@@ -0,0 +1,236 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tester class for MappedFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class MappedFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for MappedFixedSizeHashMap
+     *
+     * open():
+     *     - file absent, holding a clean map, holding a dirty map left behind by a crash
+     *     - file holds a map of the same shape, of a different shape, or no map at all
+     *     - dirty map has intact slots, or a torn LIVE slot
+     *     - dirty map left by a compaction stopped halfway: a key stored twice, or a key past an
+     *       EMPTY slot of its probe sequence
+     *     - header intact or corrupted
+     *     - map size = 0, > 0
+     *
+     * set(), get(), delete(), load():
+     *     - before and after the map is reopened
+     *
+     * flush(), close():
+     *     - map open or already closed
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int MAP_SIZE = 16;
+    private static final int MAX_KEY_LENGTH = 8;
+    private static final double DELTA = 0.0001;
+    
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    
+    /*
+     * This test covers:
+     *     open(): file absent, file holding a clean map of the same shape, map size > 0
+     *     set(), get(), delete(), load(): before and after the map is reopened
+     *     close(): map open, map already closed
+     */
+    @Test
+    public void testReopenCleanMap() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("map");
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertTrue("Expected \"K\" to be added successfully", map.set("K", 1L));
+            assertTrue("Expected \"C\" to be added successfully", map.set("C", 2L));
+            assertTrue("Expected \"P\" to be added successfully", map.set("P", 3L));
+            assertEquals("Expected deleted value of \"C\"", Long.valueOf(2L), map.delete("C"));
+            assertTrue("Expected \"K\" to be reset successfully", map.set("K", 4L));
+        }
+        // Opened outside try-with-resources, since this map is closed explicitly, twice
+        final MappedFixedSizeHashMap<Long> reopened = MappedFixedSizeHashMap.open(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG);
+        try {
+            assertEquals("Expected key/value (K: 4)", Long.valueOf(4L), reopened.get("K"));
+            assertEquals("Expected null for deleted key \"C\"", null, reopened.get("C"));
+            assertEquals("Expected key/value (P: 3)", Long.valueOf(3L), reopened.get("P"));
+            assertEquals("Expected load 2/16", 2.0 / MAP_SIZE, reopened.load(), DELTA);
+            assertTrue("Expected \"B\" to be added successfully", reopened.set("B", 5L));
+        } finally {
+            reopened.close();
+        }
+        reopened.close();
+        try {
+            reopened.get("K");
+            fail("Expected closed map to be unusable");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertEquals("Expected key/value (B: 5)", Long.valueOf(5L), map.get("B"));
+            assertEquals("Expected load 3/16", 3.0 / MAP_SIZE, map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     open(): map size = 0, file holding a map of a different shape, file holding no map
+     */
+    @Test
+    public void testOpenMismatchedFile() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("map");
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(file, 0, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertFalse("Expected \"K\" to be added unsuccessfully", map.set("K", 1L));
+            assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        }
+        assertOpenFails(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG);
+        assertOpenFails(file, 0, MAX_KEY_LENGTH + 1, ValueCodec.LONG);
+        assertOpenFails(file, 0, MAX_KEY_LENGTH, ValueCodec.INT);
+        
+        final Path text = folder.newFile("text").toPath();
+        Files.write(text, "not a map".getBytes(StandardCharsets.UTF_8));
+        assertOpenFails(text, 0, MAX_KEY_LENGTH, ValueCodec.LONG);
+    }
+    
+    /*
+     * This test covers:
+     *     open(): file holding a dirty map with intact slots
+     *     flush(): map open
+     */
+    @Test
+    public void testRecoverAfterCrash() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("map");
+        final Path crashed = folder.getRoot().toPath().resolve("crashed");
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            map.set("K", 1L);
+            map.set("C", 2L);
+            map.flush();
+            map.set("P", 3L);
+            map.delete("K");
+            Files.copy(file, crashed); // the file as a crash would leave it, dirty with a stale item count
+        }
+        assertEquals("Expected crashed file to be dirty", 1, readByte(crashed, MappedFixedSizeHashMap.DIRTY_OFFSET));
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(crashed, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertEquals("Expected null for deleted key \"K\"", null, map.get("K"));
+            assertEquals("Expected key/value (C: 2)", Long.valueOf(2L), map.get("C"));
+            assertEquals("Expected key/value (P: 3)", Long.valueOf(3L), map.get("P"));
+            assertEquals("Expected load 2/16 after items are recounted", 2.0 / MAP_SIZE, map.load(), DELTA);
+        }
+        assertEquals("Expected recovered file to be clean", 0, readByte(crashed, MappedFixedSizeHashMap.DIRTY_OFFSET));
+    }
+    
+    /*
+     * This test covers:
+     *     open(): file holding a dirty map with a torn LIVE slot, header corrupted
+     */
+    @Test
+    public void testCorruptionDetected() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("map");
+        final Path crashed = folder.getRoot().toPath().resolve("crashed");
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            map.set("KEY", Long.MAX_VALUE);
+            Files.copy(file, crashed);
+        }
+        
+        // Tear the value of the only LIVE slot, as if only part of it reached the disk
+        final byte[] bytes = Files.readAllBytes(crashed);
+        final int keyIndex = indexOf(bytes, "KEY".getBytes(StandardCharsets.UTF_8));
+        assertTrue("Expected key bytes in the file", keyIndex >= 0);
+        bytes[keyIndex + MAX_KEY_LENGTH] = 0;
+        Files.write(crashed, bytes);
+        assertOpenFails(crashed, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG);
+        
+        // A clean file is trusted, but only if its header is intact
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(MappedFixedSizeHashMap.ITEM_COUNT_OFFSET);
+            raf.writeInt(7);
+        }
+        assertOpenFails(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG);
+    }
+    
+    /*
+     * This test covers:
+     *     open(): dirty map left by a compaction stopped halfway: a key stored twice, or a key
+     *         past an EMPTY slot of its probe sequence
+     */
+    @Test
+    public void testRepairAfterCrashDuringCompaction() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("map");
+        final Path crashed = folder.getRoot().toPath().resolve("crashed");
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(file, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            map.set("KEY", 1L);
+            Files.copy(file, crashed);
+        }
+        final int slotWidth = OffHeapFixedSizeHashMap.slotWidth(MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG,
+                MappedFixedSizeHashMap.CHECKSUM_BYTES);
+        final byte[] bytes = Files.readAllBytes(crashed);
+        final int keyIndex = indexOf(bytes, "KEY".getBytes(StandardCharsets.UTF_8));
+        assertTrue("Expected key bytes in the file", keyIndex >= 0);
+        final int home = (keyIndex - MappedFixedSizeHashMap.HEADER_BYTES) / slotWidth;
+        final int next = (home + 1) % MAP_SIZE;
+        
+        // The key copied into the next slot, as if a move from there had not cleared its old slot
+        System.arraycopy(bytes, MappedFixedSizeHashMap.HEADER_BYTES + home * slotWidth,
+                bytes, MappedFixedSizeHashMap.HEADER_BYTES + next * slotWidth, slotWidth);
+        Files.write(crashed, bytes);
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(crashed, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertEquals("Expected load 1/16 with the copy dropped", 1.0 / MAP_SIZE, map.load(), DELTA);
+            assertEquals("Expected key/value (KEY: 1) deleted", Long.valueOf(1L), map.delete("KEY"));
+            assertEquals("Expected no copy of \"KEY\" left", null, map.get("KEY"));
+        }
+        
+        // The key only in the next slot, as if tombstones before it had been cleared first
+        bytes[MappedFixedSizeHashMap.HEADER_BYTES + home * slotWidth + OffHeapFixedSizeHashMap.STATE_OFFSET] =
+                OffHeapFixedSizeHashMap.EMPTY;
+        Files.write(crashed, bytes);
+        try (MappedFixedSizeHashMap<Long> map = MappedFixedSizeHashMap.open(crashed, MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertEquals("Expected key/value (KEY: 1) moved back into reach", Long.valueOf(1L), map.get("KEY"));
+            assertEquals("Expected load 1/16", 1.0 / MAP_SIZE, map.load(), DELTA);
+        }
+    }
+    
+    /**
+     * Asserts that opening a map in a file throws IOException.
+     */
+    private static void assertOpenFails(Path file, int size, int maxKeyLength, ValueCodec<?> codec) {
+        try {
+            MappedFixedSizeHashMap.open(file, size, maxKeyLength, codec).close();
+            fail("Expected opening " + file + " to fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+    
+    /**
+     * @return byte at an index of a file
+     */
+    private static int readByte(Path file, int index) throws IOException {
+        return Files.readAllBytes(file)[index];
+    }
+    
+    /**
+     * @return index of the first occurrence of pattern in bytes, or -1 if there is none
+     */
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
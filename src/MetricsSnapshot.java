@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the metrics of a FixedSizeHashMap, taken by snapshot().
+ * Probe lengths are counted in histograms of power-of-two buckets: bucket 0 counts operations
+ * that examined 1 slot, and bucket b > 0 those that examined from 2^(b-1) + 1 to 2^b slots,
+ * so bucket 1 is 2 slots, bucket 2 is 3 to 4 slots, bucket 3 is 5 to 8 slots and so on, up to
+ * the bucket holding the size of the map.
+ * @author Yanlin Li
+ */
+public final class MetricsSnapshot {
+    
+    /** Instance variables. */
+    private final long getHits, getMisses; // get() lookups that found or missed their key
+    private final long setSuccesses, setFailures; // set() calls that stored or were rejected
+    private final long deleteHits, deleteMisses; // delete() calls that removed or missed their key
+    private final long[] getProbes, setProbes, deleteProbes; // probe length histograms
+    private final double load; // load factor
+    private final int tombstones; // number of tombstones
+    private final int longestCluster; // length of the longest run of non-EMPTY slots
+    
+    /**
+     * Make a snapshot of the given metrics. The histograms are not copied.
+     */
+    MetricsSnapshot(long getHits, long getMisses, long setSuccesses, long setFailures, long deleteHits,
+            long deleteMisses, long[] getProbes, long[] setProbes, long[] deleteProbes, double load,
+            int tombstones, int longestCluster) {
+        this.getHits = getHits;
+        this.getMisses = getMisses;
+        this.setSuccesses = setSuccesses;
+        this.setFailures = setFailures;
+        this.deleteHits = deleteHits;
+        this.deleteMisses = deleteMisses;
+        this.getProbes = getProbes;
+        this.setProbes = setProbes;
+        this.deleteProbes = deleteProbes;
+        this.load = load;
+        this.tombstones = tombstones;
+        this.longestCluster = longestCluster;
+    }
+    
+    /**
+     * @return number of get() lookups that found their key
+     */
+    public long getHits() {
+        return getHits;
+    }
+    
+    /**
+     * @return number of get() lookups that did not find their key, including expired keys
+     */
+    public long getMisses() {
+        return getMisses;
+    }
+    
+    /**
+     * @return number of set() calls that stored their key/value pair
+     */
+    public long setSuccesses() {
+        return setSuccesses;
+    }
+    
+    /**
+     * @return number of set() calls rejected because the map was full
+     */
+    public long setFailures() {
+        return setFailures;
+    }
+    
+    /**
+     * @return number of delete() calls that removed a key
+     */
+    public long deleteHits() {
+        return deleteHits;
+    }
+    
+    /**
+     * @return number of delete() calls that did not find their key
+     */
+    public long deleteMisses() {
+        return deleteMisses;
+    }
+    
+    /**
+     * @return number of get() lookups by probe length bucket
+     */
+    public long[] getProbeHistogram() {
+        return getProbes.clone();
+    }
+    
+    /**
+     * @return number of set() calls by probe length bucket
+     */
+    public long[] setProbeHistogram() {
+        return setProbes.clone();
+    }
+    
+    /**
+     * @return number of delete() calls by probe length bucket
+     */
+    public long[] deleteProbeHistogram() {
+        return deleteProbes.clone();
+    }
+    
+    /**
+     * @return load factor of the map
+     */
+    public double load() {
+        return load;
+    }
+    
+    /**
+     * @return number of tombstones in the map
+     */
+    public int tombstones() {
+        return tombstones;
+    }
+    
+    /**
+     * Returns the length of the longest run of consecutive slots that are not EMPTY, which
+     * bounds the number of slots a lookup in a LINEAR map examines.
+     * @return length of the longest cluster of the map
+     */
+    public int longestCluster() {
+        return longestCluster;
+    }
+    
+    /**
+     * Returns the smallest probe length in the bucket of a histogram.
+     * @param bucket index of a histogram bucket
+     * @return smallest number of slots counted by bucket
+     */
+    public static long bucketLowerBound(final int bucket) {
+        return bucket == 0 ? 1 : (1L << (bucket - 1)) + 1;
+    }
+    
+    @Override
+    public String toString() {
+        return "get: " + getHits + " hits, " + getMisses + " misses, probes " + Arrays.toString(getProbes)
+                + "; set: " + setSuccesses + " successes, " + setFailures + " failures, probes " + Arrays.toString(setProbes)
+                + "; delete: " + deleteHits + " hits, " + deleteMisses + " misses, probes " + Arrays.toString(deleteProbes)
+                + "; load " + load + ", " + tombstones + " tombstones, longest cluster " + longestCluster;
+    }
+}
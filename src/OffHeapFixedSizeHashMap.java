@@ -0,0 +1,644 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed-sized hash map that stores byte string keys and fixed-width values outside the
+ * Java heap. Collision is resolved through linear probing.
+ * Every slot has the same width and holds the key, its length, its hash and the value bytes
+ * written by a ValueCodec, all in native memory, so the map adds no objects for the garbage
+ * collector to trace however many entries it holds. Keys are byte arrays of at most a fixed
+ * length, or Strings stored as their UTF-8 bytes. Looking up a key allocates nothing beyond
+ * what the codec allocates to return the value.
+ * The memory is released by close(), after which the map cannot be used.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public class OffHeapFixedSizeHashMap<V> implements AutoCloseable {
+    
+    /** Slot states. */
+    static final byte EMPTY = 0; // slot has never held a key
+    static final byte LIVE = 1; // slot holds a key/value pair
+    static final byte DELETED = 2; // slot held a key/value pair that has since been deleted
+    
+    /** Layout of a slot: state, an unused byte, key length, key hash, key bytes, value bytes, then any trailer. */
+    static final int STATE_OFFSET = 0;
+    static final int KEY_LENGTH_OFFSET = 2;
+    static final int HASH_OFFSET = 4;
+    static final int KEY_OFFSET = 8;
+    
+    /** Largest number of bytes of a single chunk of slots. */
+    static final int MAX_CHUNK_BYTES = 1 << 30;
+    
+    /** Tombstones are compacted away once they exceed 1/MAX_TOMBSTONE_FRACTION of the slots. */
+    private static final int MAX_TOMBSTONE_FRACTION = 4;
+    
+    /** Unsafe.invokeCleaner(ByteBuffer), which releases a direct buffer's memory right away. */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available, buffers are released when garbage collected instead
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+    
+    /** Instance variables. */
+    private final int size; // fixed size of bucket
+    private final int maxKeyLength; // maximum number of bytes of a key
+    private final ValueCodec<V> codec; // converts values to and from bytes
+    private final int slotWidth; // number of bytes of a slot, including any trailer
+    private final int valueOffset; // offset of the value bytes in a slot
+    private final int chunkShift; // each chunk of memory holds 1 << chunkShift slots
+    private ByteBuffer[] chunks; // memory holding the slots, null once the map is closed
+    private final byte[] scratch; // UTF-8 bytes of the String key being looked up
+    private int itemCount; // number of key/value pairs currently present in map
+    private int tombstoneCount; // number of DELETED slots currently in map
+    
+    /**
+     * Make a new off-heap fixed-size hash map of the specified size.
+     * @param size fixed size of the map
+     * @param maxKeyLength maximum number of bytes of a key, at most 65535
+     * @param codec converts values to and from bytes
+     */
+    public OffHeapFixedSizeHashMap(final int size, final int maxKeyLength, final ValueCodec<V> codec) {
+        this(size, maxKeyLength, codec, 0, allocate(size, slotWidth(size, maxKeyLength, codec, 0)), 0);
+    }
+    
+    /**
+     * Make a fixed-size hash map over memory supplied by a subclass, counting its tombstones.
+     * @param size fixed size of the map
+     * @param maxKeyLength maximum number of bytes of a key
+     * @param codec converts values to and from bytes
+     * @param trailerWidth number of bytes reserved for the subclass at the end of every slot
+     * @param chunks memory holding the slots, laid out as chunkShift() and chunkCount() describe
+     * @param itemCount number of LIVE slots in chunks
+     */
+    OffHeapFixedSizeHashMap(final int size, final int maxKeyLength, final ValueCodec<V> codec,
+            final int trailerWidth, final ByteBuffer[] chunks, final int itemCount) {
+        this.size = size;
+        this.maxKeyLength = maxKeyLength;
+        this.codec = codec;
+        this.valueOffset = KEY_OFFSET + maxKeyLength;
+        this.slotWidth = slotWidth(size, maxKeyLength, codec, trailerWidth);
+        this.chunkShift = chunkShift(slotWidth);
+        this.chunks = chunks;
+        this.scratch = new byte[maxKeyLength];
+        this.itemCount = itemCount;
+        this.tombstoneCount = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (chunk(slot).get(base(slot) + STATE_OFFSET) == DELETED) tombstoneCount++;
+        }
+    }
+    
+    /**
+     * Stores the specified value with the specified key in this fixed-size map.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     * @throws IllegalArgumentException if key is longer than the maximum key length
+     */
+    public boolean set(final byte[] key, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        return set(key, 0, key.length, value);
+    }
+    
+    /**
+     * Stores the specified value with the key in a range of a byte array.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key array holding the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     * @throws IllegalArgumentException if key is longer than the maximum key length
+     */
+    public boolean set(final byte[] key, final int offset, final int length, final V value) {
+        checkKey(key, offset, length);
+        if (length > maxKeyLength)
+            throw new IllegalArgumentException("Key is longer than " + maxKeyLength + " bytes.");
+        
+        if (size == 0) return false; // operation always fails if map has size 0
+        
+        int keyHash = hash(key, offset, length);
+        int home = indexFor(keyHash);
+        int free = -1; // first DELETED or EMPTY slot seen along the probe sequence
+        int probe = home; // probe starts at index home
+        do {
+            ByteBuffer chunk = chunk(probe);
+            int base = base(probe);
+            byte state = chunk.get(base + STATE_OFFSET);
+            if (state == EMPTY) { // key is not present further on
+                if (free < 0) free = probe;
+                break;
+            }
+            else if (state == DELETED) {
+                if (free < 0) free = probe;
+            }
+            else if (keyEquals(chunk, base, keyHash, key, offset, length)) {
+                beforeWrite();
+                codec.write(chunk, base + valueOffset, value); // reset value if keys are the same
+                slotWritten(probe);
+                return true;
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        
+        if (free < 0) return false; // probe looped back to home without a free slot, map is full
+        beforeWrite();
+        ByteBuffer chunk = chunk(free);
+        int base = base(free);
+        if (chunk.get(base + STATE_OFFSET) == DELETED) tombstoneCount--;
+        chunk.putChar(base + KEY_LENGTH_OFFSET, (char) length);
+        chunk.putInt(base + HASH_OFFSET, keyHash);
+        for (int i = 0; i < length; i++) chunk.put(base + KEY_OFFSET + i, key[offset + i]);
+        codec.write(chunk, base + valueOffset, value);
+        slotWritten(free);
+        chunk.put(base + STATE_OFFSET, LIVE); // slot becomes visible once fully written
+        itemCount++;
+        return true;
+    }
+    
+    /**
+     * Stores the specified value with the UTF-8 encoding of the specified key.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     * @throws IllegalArgumentException if key's encoding is longer than the maximum key length
+     */
+    public boolean set(final String key, final V value) {
+        int length = encode(key);
+        if (length < 0)
+            throw new IllegalArgumentException("Key is longer than " + maxKeyLength + " bytes.");
+        return set(scratch, 0, length, value);
+    }
+    
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or null if this map contains no mapping for the key.
+     * @param key key whose associated value is to be returned
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    public V get(final byte[] key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        return get(key, 0, key.length);
+    }
+    
+    /**
+     * Returns the value to which the key in a range of a byte array is mapped,
+     * or null if this map contains no mapping for the key.
+     * @param key array holding the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    public V get(final byte[] key, final int offset, final int length) {
+        checkKey(key, offset, length);
+        int slot = find(key, offset, length);
+        return slot < 0 ? null : codec.read(chunk(slot), base(slot) + valueOffset);
+    }
+    
+    /**
+     * Returns the value to which the UTF-8 encoding of the specified key is mapped,
+     * or null if this map contains no mapping for the key.
+     * @param key String key whose associated value is to be returned
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    public V get(final String key) {
+        int length = encode(key);
+        return length < 0 ? null : get(scratch, 0, length);
+    }
+    
+    /**
+     * Deletes the value associated with the given key if present.
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V delete(final byte[] key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        return delete(key, 0, key.length);
+    }
+    
+    /**
+     * Deletes the value associated with the key in a range of a byte array if present.
+     * @param key array holding the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V delete(final byte[] key, final int offset, final int length) {
+        checkKey(key, offset, length);
+        int slot = find(key, offset, length);
+        if (slot < 0) return null;
+        beforeWrite();
+        ByteBuffer chunk = chunk(slot);
+        V value = codec.read(chunk, base(slot) + valueOffset);
+        chunk.put(base(slot) + STATE_OFFSET, DELETED);
+        itemCount--;
+        tombstoneCount++;
+        reclaimTombstones(slot);
+        return value;
+    }
+    
+    /**
+     * Deletes the value associated with the UTF-8 encoding of the given key if present.
+     * @param key String key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V delete(final String key) {
+        int length = encode(key);
+        return length < 0 ? null : delete(scratch, 0, length);
+    }
+    
+    /**
+     * Returns the load factor (`(items in map)/(size of map)`).
+     * @return load factor.
+     *         Since the size of the map is fixed, this should never be greater than 1.
+     *         If map has size 0, this value is 1.
+     */
+    public double load() {
+        if (size == 0) return 1.0; // map of size 0 has load factor 1
+        return (double) itemCount / size;
+    }
+    
+    /**
+     * Releases the memory holding the map. Further operations on the map throw
+     * IllegalStateException. Closing a closed map has no effect.
+     */
+    @Override
+    public void close() {
+        if (chunks == null) return;
+        for (ByteBuffer chunk : chunks) free(chunk);
+        chunks = null;
+    }
+    
+    /**
+     * Called before set() or delete() first changes any slot. Does nothing by default.
+     */
+    void beforeWrite() {
+    }
+    
+    /**
+     * Called after set() has written the key and value of a slot, before a new slot becomes LIVE.
+     * Does nothing by default.
+     * @param slot index of the slot written
+     */
+    void slotWritten(int slot) {
+    }
+    
+    /**
+     * @return number of key/value pairs currently present in map
+     */
+    int itemCount() {
+        return itemCount;
+    }
+    
+    /**
+     * @return number of DELETED slots currently in map
+     */
+    int tombstoneCount() {
+        return tombstoneCount;
+    }
+    
+    /**
+     * Restores the probe sequences of memory left behind by a crash, which may have stopped
+     * compact() halfway: some keys may sit past an EMPTY slot in their probe sequence, and a
+     * key being moved may be LIVE in both its old and its new slot. The map is rehashed as
+     * compact() does, the copy of any key stored twice that comes later in its probe sequence
+     * is deleted, and the items and tombstones are counted again.
+     */
+    void repair() {
+        rehash();
+        for (int slot = 0; slot < size; slot++) {
+            ByteBuffer chunk = chunk(slot);
+            int base = base(slot);
+            if (chunk.get(base + STATE_OFFSET) != LIVE) continue;
+            int length = chunk.getChar(base + KEY_LENGTH_OFFSET);
+            for (int i = 0; i < length; i++) scratch[i] = chunk.get(base + KEY_OFFSET + i);
+            if (find(scratch, 0, length) != slot) chunk.put(base + STATE_OFFSET, DELETED); // an earlier copy wins
+        }
+        itemCount = 0;
+        tombstoneCount = 0;
+        for (int slot = 0; slot < size; slot++) {
+            byte state = chunk(slot).get(base(slot) + STATE_OFFSET);
+            if (state == LIVE) itemCount++;
+            else if (state == DELETED) tombstoneCount++;
+        }
+    }
+    
+    /**
+     * Finds the slot holding the given key.
+     * @param key array holding the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @return index of the LIVE slot holding key, or -1 if key is not in the map
+     */
+    private int find(byte[] key, int offset, int length) {
+        if (size == 0 || length > maxKeyLength) return -1; // key cannot be present
+        
+        int keyHash = hash(key, offset, length);
+        int home = indexFor(keyHash);
+        int probe = home; // probe starts at index home
+        do {
+            ByteBuffer chunk = chunk(probe);
+            int base = base(probe);
+            byte state = chunk.get(base + STATE_OFFSET);
+            if (state == EMPTY) {
+                return -1;
+            }
+            else if (state == LIVE && keyEquals(chunk, base, keyHash, key, offset, length)) {
+                return probe;
+            }
+            probe++; // increment to the next slot index
+            if (probe == size) probe = 0; // wrap around to 0 at the end of the array
+        } while (probe != home);
+        return -1; // if probe looped back to home, then key does not exist
+    }
+    
+    /**
+     * Compares the key stored in a LIVE slot with a given key, cached hash and length first.
+     * @param chunk chunk holding the slot
+     * @param base index in chunk of the slot
+     * @param keyHash hash of the given key
+     * @param key array holding the given key
+     * @param offset index in key of the first byte of the given key
+     * @param length number of bytes of the given key
+     * @return true if the keys are equal
+     */
+    private static boolean keyEquals(ByteBuffer chunk, int base, int keyHash, byte[] key, int offset, int length) {
+        if (chunk.getInt(base + HASH_OFFSET) != keyHash || chunk.getChar(base + KEY_LENGTH_OFFSET) != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(base + KEY_OFFSET + i) != key[offset + i]) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Reclaims tombstones after a deletion. If the slot following the deleted slot is EMPTY,
+     * no probe sequence can continue past the deleted slot, so it and the tombstones right
+     * before it become EMPTY again. Otherwise, once tombstones exceed the threshold, the map
+     * is compacted so that lookups of absent keys keep ending at an EMPTY slot early.
+     * @param slot index of the slot that was just deleted
+     */
+    private void reclaimTombstones(int slot) {
+        int next = slot + 1 == size ? 0 : slot + 1;
+        if (chunk(next).get(base(next) + STATE_OFFSET) == EMPTY) {
+            int probe = slot;
+            for (int n = 0; n < size && chunk(probe).get(base(probe) + STATE_OFFSET) == DELETED; n++) {
+                chunk(probe).put(base(probe) + STATE_OFFSET, EMPTY);
+                tombstoneCount--;
+                probe = probe == 0 ? size - 1 : probe - 1; // step back, wrapping around to the end
+            }
+        }
+        else if (tombstoneCount * MAX_TOMBSTONE_FRACTION > size) {
+            rehash();
+        }
+    }
+    
+    /**
+     * Rehashes the map in place, without any extra storage, so that it holds no tombstones.
+     * All tombstones are turned EMPTY, then every key is moved to the first EMPTY slot of its
+     * probe sequence if one now comes before the slot it is stored in. A move can open a gap
+     * in the probe sequence of a key that wrapped around the end of the array and was already
+     * visited, so passes repeat until none moves a key.
+     */
+    private void rehash() {
+        for (int slot = 0; slot < size; slot++) {
+            ByteBuffer chunk = chunk(slot);
+            if (chunk.get(base(slot) + STATE_OFFSET) == DELETED) chunk.put(base(slot) + STATE_OFFSET, EMPTY);
+        }
+        tombstoneCount = 0;
+        
+        boolean moved;
+        do {
+            moved = false;
+            for (int slot = 0; slot < size; slot++) {
+                if (chunk(slot).get(base(slot) + STATE_OFFSET) != LIVE) continue;
+                int probe = indexFor(chunk(slot).getInt(base(slot) + HASH_OFFSET));
+                while (probe != slot && chunk(probe).get(base(probe) + STATE_OFFSET) != EMPTY) {
+                    probe++;
+                    if (probe == size) probe = 0;
+                }
+                if (probe != slot) {
+                    moveSlot(slot, probe);
+                    moved = true;
+                }
+            }
+        } while (moved);
+    }
+    
+    /**
+     * Moves the key and value in one LIVE slot to an EMPTY slot, leaving the former EMPTY.
+     * The new slot becomes LIVE before the old one is cleared, so a crash in between leaves
+     * the key stored twice rather than lost, for repair() to resolve.
+     * @param from index of the LIVE slot
+     * @param to index of the EMPTY slot
+     */
+    private void moveSlot(int from, int to) {
+        ByteBuffer fromChunk = chunk(from);
+        ByteBuffer toChunk = chunk(to);
+        int fromBase = base(from);
+        int toBase = base(to);
+        for (int i = STATE_OFFSET + 1; i < valueOffset + codec.width(); i++) {
+            toChunk.put(toBase + i, fromChunk.get(fromBase + i));
+        }
+        slotWritten(to);
+        toChunk.put(toBase + STATE_OFFSET, LIVE);
+        fromChunk.put(fromBase + STATE_OFFSET, EMPTY);
+    }
+    
+    /**
+     * Encodes a String key as UTF-8 into the scratch array.
+     * @param key String key
+     * @return number of bytes of the key, or -1 if it is longer than the maximum key length
+     */
+    private int encode(String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        ensureOpen();
+        return Utf8.encode(key, scratch);
+    }
+    
+    /**
+     * Checks the arguments describing a key, and that the map is open.
+     */
+    private void checkKey(byte[] key, int offset, int length) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        if (offset < 0 || length < 0 || offset > key.length - length)
+            throw new IllegalArgumentException("Key range is out of bounds.");
+        ensureOpen();
+    }
+    
+    /**
+     * @throws IllegalStateException if the map is closed
+     */
+    void ensureOpen() {
+        if (chunks == null)
+            throw new IllegalStateException("Map is closed.");
+    }
+    
+    /**
+     * @param slot slot index
+     * @return chunk of memory holding slot
+     */
+    ByteBuffer chunk(int slot) {
+        return chunks[slot >>> chunkShift];
+    }
+    
+    /**
+     * @param slot slot index
+     * @return index in its chunk of the first byte of slot
+     */
+    int base(int slot) {
+        return (slot & ((1 << chunkShift) - 1)) * slotWidth;
+    }
+    
+    /**
+     * Maps the hash of a key to the slot index at which probing for the key starts,
+     * scaling the hash down to [0, size) with a multiply-shift.
+     * @param keyHash hash of the key
+     * @return home slot index
+     */
+    private int indexFor(int keyHash) {
+        return (int) (((keyHash & 0xffffffffL) * size) >>> 32);
+    }
+    
+    /**
+     * Returns the number of bytes of a slot, checking the arguments describing a map.
+     * @param size fixed size of the map
+     * @param maxKeyLength maximum number of bytes of a key
+     * @param codec converts values to and from bytes
+     * @param trailerWidth number of bytes reserved at the end of every slot
+     * @return number of bytes of a slot
+     */
+    static int slotWidth(int size, int maxKeyLength, ValueCodec<?> codec, int trailerWidth) {
+        if (size < 0)
+            throw new IllegalArgumentException("Size cannot be negative.");
+        if (maxKeyLength < 0 || maxKeyLength > 0xFFFF)
+            throw new IllegalArgumentException("Maximum key length must be in [0, 65535].");
+        if (codec == null)
+            throw new IllegalArgumentException("Codec cannot be null.");
+        if (codec.width() < 0 || codec.width() > MAX_CHUNK_BYTES - KEY_OFFSET - maxKeyLength - trailerWidth)
+            throw new IllegalArgumentException("Codec width is out of range.");
+        return KEY_OFFSET + maxKeyLength + codec.width() + trailerWidth;
+    }
+    
+    /**
+     * Allocates zeroed native memory, in which every slot is EMPTY.
+     * @param size number of slots
+     * @param slotWidth number of bytes of a slot
+     * @return chunks holding the slots
+     */
+    private static ByteBuffer[] allocate(int size, int slotWidth) {
+        int chunkShift = chunkShift(slotWidth);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, chunkShift)];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = ByteBuffer.allocateDirect(chunkSlots(size, chunkShift, chunk) * slotWidth);
+        }
+        return chunks;
+    }
+    
+    /**
+     * Returns the number of slots per chunk, as a power of two, so that a chunk does not
+     * exceed MAX_CHUNK_BYTES.
+     * @param slotWidth number of bytes of a slot
+     * @return base 2 logarithm of the number of slots per chunk
+     */
+    static int chunkShift(int slotWidth) {
+        return 31 - Integer.numberOfLeadingZeros(MAX_CHUNK_BYTES / slotWidth);
+    }
+    
+    /**
+     * @param size number of slots
+     * @param chunkShift base 2 logarithm of the number of slots per chunk
+     * @return number of chunks needed to hold size slots
+     */
+    static int chunkCount(int size, int chunkShift) {
+        return (int) ((size + (1L << chunkShift) - 1) >>> chunkShift);
+    }
+    
+    /**
+     * @param size number of slots
+     * @param chunkShift base 2 logarithm of the number of slots per chunk
+     * @param chunk chunk index
+     * @return number of slots held by the chunk, which is smaller for the last chunk
+     */
+    static int chunkSlots(int size, int chunkShift, int chunk) {
+        return Math.min(1 << chunkShift, size - (chunk << chunkShift));
+    }
+    
+    /**
+     * Hashes key bytes with MurmurHash3 (x86, 32-bit).
+     * @param key array holding the key
+     * @param offset index in key of the first byte of the key
+     * @param length number of bytes of the key
+     * @return hash of the key
+     */
+    static int hash(byte[] key, int offset, int length) {
+        int hash = 0;
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            int block = (key[offset + i] & 0xFF) | (key[offset + i + 1] & 0xFF) << 8
+                    | (key[offset + i + 2] & 0xFF) << 16 | key[offset + i + 3] << 24;
+            hash ^= mixBlock(block);
+            hash = Integer.rotateLeft(hash, 13) * 5 + 0xe6546b64;
+        }
+        int rem = length - i; // 0 to 3 bytes left after the last whole block
+        int tail = 0;
+        if (rem >= 3) tail ^= (key[offset + i + 2] & 0xFF) << 16;
+        if (rem >= 2) tail ^= (key[offset + i + 1] & 0xFF) << 8;
+        if (rem >= 1) {
+            tail ^= key[offset + i] & 0xFF;
+            hash ^= mixBlock(tail);
+        }
+        hash ^= length;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+    
+    /**
+     * @param block 4 bytes of a key
+     * @return block scrambled by MurmurHash3
+     */
+    private static int mixBlock(int block) {
+        return Integer.rotateLeft(block * 0xcc9e2d51, 15) * 0x1b873593;
+    }
+    
+    /**
+     * Releases the memory of a direct buffer, or unmaps a mapped buffer, if the runtime allows
+     * it. The buffer must not be used afterwards.
+     * @param buffer buffer to release
+     */
+    static void free(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || !buffer.isDirect()) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // Released when garbage collected instead
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tester class for OffHeapFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class OffHeapFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for OffHeapFixedSizeHashMap
+     * 
+     * set(), get(), delete():
+     *     - map size = 0, > 0
+     *     - key given as String, byte[], or range of a byte[]
+     *     - String key is ASCII, or has multi-byte characters
+     *     - key length < maximum, = maximum, > maximum
+     *     - key present or absent (never inserted or already deleted)
+     *     - fixed-size constraint: cannot set more unique keys if map is full
+     *     - long runs of random calls with colliding keys, compared to java.util.HashMap
+     *     - deletions that leave tombstones below or past the compaction threshold
+     * 
+     * load():
+     *     - map size = 0, > 0
+     * 
+     * close():
+     *     - map open or already closed
+     * 
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int SMALL_MAP_SIZE = 4;
+    private static final int LARGE_MAP_SIZE = 100;
+    private static final int MAX_KEY_LENGTH = 8;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(), load(): map size = 0
+     *     close(): map open
+     */
+    @Test
+    public void testSizeZeroMap() {
+        try (OffHeapFixedSizeHashMap<Long> map = new OffHeapFixedSizeHashMap<>(0, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            assertFalse("Expected \"K\" to be added unsuccessfully", map.set("K", 1L));
+            assertEquals("Expected null for absent key \"K\"", null, map.get("K"));
+            assertEquals("Expected null value for key \"K\" not contained in map", null, map.delete("K"));
+            assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): map size > 0, key given as String, byte[] and range of byte[],
+     *                             ASCII and multi-byte keys, keys present and absent
+     */
+    @Test
+    public void testStringAndByteKeysAgree() {
+        try (OffHeapFixedSizeHashMap<String> map =
+                new OffHeapFixedSizeHashMap<>(SMALL_MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.utf8(16))) {
+            final String[] keys = {"K", "\u00e9t\u00e9", "\u96ea", "\ud83d\ude00"};
+            for (String key : keys) {
+                assertTrue("Expected " + key + " to be added successfully", map.set(key, "value of " + key));
+            }
+            for (String key : keys) {
+                final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                final byte[] padded = new byte[bytes.length + 2];
+                System.arraycopy(bytes, 0, padded, 1, bytes.length);
+                assertEquals("Expected value of String " + key, "value of " + key, map.get(key));
+                assertEquals("Expected value of bytes " + key, "value of " + key, map.get(bytes));
+                assertEquals("Expected value of byte range " + key, "value of " + key, map.get(padded, 1, bytes.length));
+            }
+            assertTrue("Expected null value to be stored", map.set("K".getBytes(StandardCharsets.UTF_8), null));
+            assertEquals("Expected null value of \"K\"", null, map.get("K"));
+            assertEquals("Expected deleted value of \u96ea", "value of \u96ea", map.delete("\u96ea".getBytes(StandardCharsets.UTF_8)));
+            assertEquals("Expected null for deleted key \u96ea", null, map.get("\u96ea"));
+            assertEquals("Expected null for absent key \"P\"", null, map.get("P"));
+            assertEquals("Expected load 0.75", 0.75, map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): key length = maximum, > maximum, fixed-size map is full
+     */
+    @Test
+    public void testKeyLengthAndFullMap() {
+        try (OffHeapFixedSizeHashMap<Integer> map =
+                new OffHeapFixedSizeHashMap<>(SMALL_MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.INT)) {
+            assertTrue("Expected 8-byte key to be added successfully", map.set("12345678", 8));
+            try {
+                map.set("123456789", 9);
+                fail("Expected 9-byte key to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertEquals("Expected null for 9-byte key", null, map.get("123456789"));
+            assertEquals("Expected null deleting 9-byte key", null, map.delete("123456789"));
+            map.set("a", 1);
+            map.set("b", 2);
+            map.set("c", 3);
+            assertFalse("Expected \"d\" to be added unsuccessfully", map.set("d", 4));
+            assertTrue("Expected \"a\" to be reset successfully", map.set("a", 10));
+            assertEquals("Expected key/value (a: 10)", Integer.valueOf(10), map.get("a"));
+            assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     close(): map open, map already closed
+     */
+    @Test
+    public void testClose() {
+        final OffHeapFixedSizeHashMap<Long> map = new OffHeapFixedSizeHashMap<>(SMALL_MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG);
+        map.set("K", 1L);
+        map.close();
+        map.close();
+        try {
+            map.get("K");
+            fail("Expected closed map to be unusable");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    /*
+     * This test covers long runs of random set(), get() and delete() calls with colliding keys,
+     * compared against java.util.HashMap.
+     */
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+        try (OffHeapFixedSizeHashMap<Long> map =
+                new OffHeapFixedSizeHashMap<>(LARGE_MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            final Map<String, Long> expected = new HashMap<>();
+            final Random random = new Random(0);
+            for (long i = 0; i < 100000; i++) {
+                final String key = "k" + random.nextInt(LARGE_MAP_SIZE * 3 / 2);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        final boolean success = map.set(key, i);
+                        assertEquals("Expected set to fail only when key is absent from a full map",
+                                expected.size() < LARGE_MAP_SIZE || expected.containsKey(key), success);
+                        if (success) expected.put(key, i);
+                        break;
+                    case 1:
+                        assertEquals("Expected get to match HashMap", expected.get(key), map.get(key));
+                        break;
+                    default:
+                        assertEquals("Expected delete to match HashMap", expected.remove(key), map.delete(key));
+                }
+                assertEquals("Expected load to match HashMap size",
+                        expected.size() / (double) LARGE_MAP_SIZE, map.load(), DELTA);
+            }
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): deletions that leave tombstones below or past the compaction
+     *         threshold
+     */
+    @Test
+    public void testChurnKeepsTombstonesBounded() {
+        try (OffHeapFixedSizeHashMap<Long> map =
+                new OffHeapFixedSizeHashMap<>(LARGE_MAP_SIZE, MAX_KEY_LENGTH, ValueCodec.LONG)) {
+            final Map<String, Long> expected = new HashMap<>();
+            for (long i = 0; i < LARGE_MAP_SIZE * 3 / 4; i++) {
+                map.set("k" + i, i);
+                expected.put("k" + i, i);
+            }
+            // Every key is deleted in turn and replaced by one never seen before
+            for (long i = LARGE_MAP_SIZE * 3 / 4; i < 20000; i++) {
+                final String oldest = "k" + (i - LARGE_MAP_SIZE * 3 / 4);
+                assertEquals("Expected delete to match HashMap", expected.remove(oldest), map.delete(oldest));
+                assertTrue("Expected tombstones to stay below 1/4 of the slots, got " + map.tombstoneCount(),
+                        map.tombstoneCount() * 4 <= LARGE_MAP_SIZE);
+                assertTrue("Expected k" + i + " to be added successfully", map.set("k" + i, i));
+                expected.put("k" + i, i);
+                assertEquals("Expected null for deleted key " + oldest, null, map.get(oldest));
+            }
+            for (Map.Entry<String, Long> entry : expected.entrySet()) {
+                assertEquals("Expected value of " + entry.getKey() + " to match HashMap", entry.getValue(), map.get(entry.getKey()));
+            }
+            assertEquals("Expected load 0.75", 0.75, map.load(), DELTA);
+        }
+    }
+}
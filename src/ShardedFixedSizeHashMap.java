@@ -0,0 +1,263 @@
+/**
+ * A thread-safe fixed-size hash map that spreads its capacity over independent shards, each
+ * a FixedSizeHashMap guarded by its own lock, so operations on keys of different shards run
+ * in parallel on different cores.
+ * The high bits of a key's hash choose its shard: the hash is reduced to a shard index with a
+ * multiply-shift, and the low 32 bits of the same product, which the shard index did not use,
+ * become the hash the shard probes with. Keys of one shard therefore still spread over the
+ * whole shard. An operation on one key locks only the key's shard.
+ * A skewed set of keys can fill one shard while the others are mostly empty. With the
+ * NEIGHBOR overflow policy, a key whose shard is full is stored in the next shard instead,
+ * which lookups then check too, so set() only fails once both shards are full.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public class ShardedFixedSizeHashMap<V> {
+    
+    /**
+     * What set() does with a new key whose shard is full.
+     */
+    public enum Overflow {
+        /** Fail, as a FixedSizeHashMap does when full. */
+        REJECT,
+        /** Store the key in the next shard, failing only if that shard is full too. */
+        NEIGHBOR
+    }
+    
+    /** Instance variables. */
+    private final int size; // fixed total size of the shards
+    private final FixedSizeHashMap<V>[] shards; // independent maps, each its own lock
+    private final int[] lent; // number of keys of each shard stored in the next shard
+    private final Overflow overflow; // policy for new keys of full shards
+    private final Hasher hasher; // computes the hashes of keys
+    
+    /**
+     * Make a new sharded map of the specified total size and number of shards, rejecting new
+     * keys of full shards.
+     * @param size fixed total size of the map
+     * @param shardCount number of shards, from 1 to size
+     */
+    public ShardedFixedSizeHashMap(final int size, final int shardCount) {
+        this(size, shardCount, Overflow.REJECT, FixedSizeHashMap.Probing.LINEAR, Hasher.MURMUR);
+    }
+    
+    /**
+     * Make a new sharded map of the specified total size, number of shards, overflow policy,
+     * probing scheme of the shards and hash function. The size is divided as evenly as possible
+     * among the shards.
+     * @param size fixed total size of the map
+     * @param shardCount number of shards, from 1 to size, or 1 if size is 0
+     * @param overflow policy for new keys of full shards
+     * @param probing probing scheme of each shard
+     * @param hasher computes the hashes of keys
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedFixedSizeHashMap(final int size, final int shardCount, final Overflow overflow,
+            final FixedSizeHashMap.Probing probing, final Hasher hasher) {
+        if (shardCount < 1 || shardCount > Math.max(1, size))
+            throw new IllegalArgumentException("Number of shards must be in [1, max(1, size)].");
+        if (overflow == null || probing == null || hasher == null)
+            throw new IllegalArgumentException("Overflow policy, probing and hasher cannot be null.");
+        
+        this.size = size;
+        this.overflow = overflow;
+        this.hasher = hasher;
+        this.shards = (FixedSizeHashMap<V>[]) new FixedSizeHashMap<?>[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int shardSize = size / shardCount + (i < size % shardCount ? 1 : 0);
+            shards[i] = new FixedSizeHashMap<>(shardSize, probing, hasher);
+        }
+        this.lent = new int[shardCount];
+    }
+    
+    /**
+     * Stores the specified value with the specified key in this fixed-size map.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     */
+    public boolean set(final String key, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return false; // operation always fails if map has size 0
+        
+        long product = spread(key);
+        int home = shardOf(product);
+        int shardHash = (int) product;
+        FixedSizeHashMap<V> shard = shards[home];
+        synchronized (shard) {
+            if (lent[home] == 0) {
+                if (shard.putHashed(key, shardHash, value, 0L)) return true;
+                if (overflow == Overflow.REJECT) return false;
+            }
+        }
+        // The key may be, or must go, in the next shard
+        FixedSizeHashMap<V> next = shards[nextOf(home)];
+        synchronized (first(home)) {
+            synchronized (second(home)) {
+                if (lent[home] > 0 && next.containsHashed(key, shardHash)) return next.putHashed(key, shardHash, value, 0L);
+                if (shard.putHashed(key, shardHash, value, 0L)) return true;
+                if (next == shard || !next.putHashed(key, shardHash, value, 0L)) return false;
+                lent[home]++;
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or null if this map contains no mapping for the key.
+     * @param key String key whose associated value is to be returned
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    public V get(final String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return null; // map of size 0 has no value to get
+        
+        long product = spread(key);
+        int home = shardOf(product);
+        int shardHash = (int) product;
+        FixedSizeHashMap<V> shard = shards[home];
+        synchronized (shard) {
+            V value = shard.getHashed(key, shardHash);
+            if (value != null || lent[home] == 0) return value;
+        }
+        // The key may be in the next shard
+        synchronized (first(home)) {
+            synchronized (second(home)) {
+                if (shard.containsHashed(key, shardHash)) return shard.getHashed(key, shardHash);
+                return lent[home] == 0 ? null : shards[nextOf(home)].getHashed(key, shardHash);
+            }
+        }
+    }
+    
+    /**
+     * Deletes the value associated with the given key if present.
+     * @param key String key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    public V delete(final String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return null; // map of size 0 has no value to delete
+        
+        long product = spread(key);
+        int home = shardOf(product);
+        int shardHash = (int) product;
+        FixedSizeHashMap<V> shard = shards[home];
+        synchronized (shard) {
+            if (lent[home] == 0) return shard.deleteHashed(key, shardHash);
+        }
+        // The key may be in the next shard
+        FixedSizeHashMap<V> next = shards[nextOf(home)];
+        synchronized (first(home)) {
+            synchronized (second(home)) {
+                if (shard.containsHashed(key, shardHash)) return shard.deleteHashed(key, shardHash);
+                if (lent[home] == 0 || !next.containsHashed(key, shardHash)) return null;
+                lent[home]--;
+                return next.deleteHashed(key, shardHash);
+            }
+        }
+    }
+    
+    /**
+     * Returns the load factor of the whole map (`(items in map)/(size of map)`).
+     * Shards are read one after another, so under concurrent writes the result may not match
+     * any single moment.
+     * @return load factor. If map has size 0, this value is 1.
+     */
+    public double load() {
+        if (size == 0) return 1.0; // map of size 0 has load factor 1
+        long items = 0;
+        for (FixedSizeHashMap<V> shard : shards) {
+            synchronized (shard) {
+                items += shard.itemCount();
+            }
+        }
+        return (double) items / size;
+    }
+    
+    /**
+     * Returns the load factor of each shard, counting the keys it holds for the shard before
+     * it, which shows how evenly keys spread over the shards.
+     * @return load factor of each shard, in shard order
+     */
+    public double[] shardLoads() {
+        final double[] loads = new double[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            synchronized (shards[i]) {
+                loads[i] = shards[i].load();
+            }
+        }
+        return loads;
+    }
+    
+    /**
+     * Returns the shard a key belongs to, so that callers can route the operations on each
+     * shard's keys to one thread and keep its lock uncontended.
+     * @param key String key
+     * @return index of the key's shard, from 0 to shardCount() - 1
+     */
+    public int shardOf(final String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        return shardOf(spread(key));
+    }
+    
+    /**
+     * @return number of shards
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+    
+    /**
+     * Multiplies the hash of a key by the number of shards. The high 32 bits of the product are
+     * the key's shard, and the low 32 bits are the hash the shard probes with.
+     * @param key String key
+     * @return product of the unsigned hash of key and the number of shards
+     */
+    private long spread(String key) {
+        return (hasher.hash(key) & 0xffffffffL) * shards.length;
+    }
+    
+    /**
+     * @param product result of spread()
+     * @return shard index
+     */
+    private static int shardOf(long product) {
+        return (int) (product >>> 32);
+    }
+    
+    /**
+     * @param shard shard index
+     * @return index of the shard a full shard lends keys to
+     */
+    private int nextOf(int shard) {
+        return shard + 1 == shards.length ? 0 : shard + 1;
+    }
+    
+    /**
+     * Shards are always locked in index order, so that two threads locking a shard and its
+     * neighbour cannot deadlock.
+     * @param home shard index
+     * @return the shard of home and its next shard with the lower index
+     */
+    private Object first(int home) {
+        return shards[Math.min(home, nextOf(home))];
+    }
+    
+    /**
+     * @param home shard index
+     * @return the shard of home and its next shard with the higher index
+     */
+    private Object second(int home) {
+        return shards[Math.max(home, nextOf(home))];
+    }
+}
@@ -0,0 +1,217 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tester class for ShardedFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class ShardedFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for ShardedFixedSizeHashMap
+     *
+     * constructor:
+     *     - map size = 0, size > 0 divided evenly or not among the shards
+     *     - number of shards < 1, = 1, > 1, > size
+     *
+     * set(), get(), delete():
+     *     - key present or absent, shard full or not
+     *     - overflow REJECT or NEIGHBOR, next shard full or not, last shard lending to the first
+     *     - key stored in its own shard, or lent to the next one and then replaced, read,
+     *       deleted, or set again once its own shard has room
+     *     - random calls give the same results as java.util.HashMap while the map has room
+     *
+     * load(), shardLoads():
+     *     - map empty, partly full, with one shard full
+     *
+     * Multiple threads:
+     *     - threads write disjoint keys that overflow into neighbouring shards
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final int SHARDS = 4;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 200000;
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * Places each key in the shard given by its first character, out of SHARDS shards.
+     */
+    private static final Hasher SHARD_HASHER = key -> ((key.charAt(0) - '0') << 30) | (Hasher.MURMUR.hash(key) >>> 2);
+    
+    /*
+     * This test covers:
+     *     constructor: map size = 0, size > 0 divided evenly or not, number of shards < 1,
+     *         = 1, > 1, > size
+     *     load(), shardLoads(): map empty
+     */
+    @Test
+    public void testConstructor() {
+        final ShardedFixedSizeHashMap<String> empty = new ShardedFixedSizeHashMap<>(0, 1);
+        assertFalse("Expected \"K\" to be added unsuccessfully", empty.set("K", "Kleiner"));
+        assertEquals("Expected null for absent key \"K\"", null, empty.get("K"));
+        assertEquals("Expected null value for key \"K\" not contained in map", null, empty.delete("K"));
+        assertEquals("Expected load 1", 1.0, empty.load(), DELTA);
+        
+        final ShardedFixedSizeHashMap<String> uneven = new ShardedFixedSizeHashMap<>(10, 4);
+        assertEquals("Expected 4 shards", 4, uneven.shardCount());
+        assertEquals("Expected load 0", 0.0, uneven.load(), DELTA);
+        assertArrayEquals("Expected every shard empty", new double[4], uneven.shardLoads(), DELTA);
+        for (int size = 1; size <= 10; size++) {
+            final ShardedFixedSizeHashMap<Integer> map = new ShardedFixedSizeHashMap<>(size, Math.min(size, 3));
+            int stored = 0;
+            for (int i = 0; i < 100; i++) {
+                if (map.set("key" + i, i)) stored++;
+            }
+            assertTrue("Expected no more keys than the total size", stored <= size);
+            assertEquals("Expected load to count every stored key", (double) stored / size, map.load(), DELTA);
+        }
+        for (int shards : new int[] {0, 11}) {
+            try {
+                new ShardedFixedSizeHashMap<String>(10, shards);
+                fail("Expected " + shards + " shards to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): shard full, overflow REJECT
+     *     load(), shardLoads(): map with one shard full
+     */
+    @Test
+    public void testRejectWhenShardFull() {
+        final ShardedFixedSizeHashMap<String> map = new ShardedFixedSizeHashMap<>(2 * SHARDS, SHARDS,
+                ShardedFixedSizeHashMap.Overflow.REJECT, FixedSizeHashMap.Probing.LINEAR, SHARD_HASHER);
+        assertEquals("Expected \"0a\" in shard 0", 0, map.shardOf("0a"));
+        assertEquals("Expected \"2a\" in shard 2", 2, map.shardOf("2a"));
+        assertTrue("Expected \"0a\" to be added successfully", map.set("0a", "Alice"));
+        assertTrue("Expected \"0b\" to be added successfully", map.set("0b", "Bob"));
+        assertFalse("Expected \"0c\" to be added unsuccessfully", map.set("0c", "Carol"));
+        assertTrue("Expected \"0a\" to be reset successfully", map.set("0a", "Ada"));
+        assertTrue("Expected \"2a\" to be added successfully", map.set("2a", "Dave"));
+        assertEquals("Expected key/value (0a: Ada)", "Ada", map.get("0a"));
+        assertEquals("Expected null for absent key \"0c\"", null, map.get("0c"));
+        assertEquals("Expected load 3/8", 3.0 / (2 * SHARDS), map.load(), DELTA);
+        assertArrayEquals("Expected shard 0 full", new double[] {1, 0, 0.5, 0}, map.shardLoads(), DELTA);
+        assertEquals("Expected deleted value of \"0b\"", "Bob", map.delete("0b"));
+        assertTrue("Expected \"0c\" to be added successfully once shard 0 has room", map.set("0c", "Carol"));
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): key absent or present, overflow NEIGHBOR, next shard full or
+     *         not, last shard lending to the first, key lent to the next shard and then
+     *         replaced, read, deleted, or set again once its own shard has room
+     *     load(), shardLoads(): map partly full
+     */
+    @Test
+    public void testNeighborOverflow() {
+        final ShardedFixedSizeHashMap<String> map = new ShardedFixedSizeHashMap<>(2 * SHARDS, SHARDS,
+                ShardedFixedSizeHashMap.Overflow.NEIGHBOR, FixedSizeHashMap.Probing.ROBIN_HOOD, SHARD_HASHER);
+        assertTrue("Expected \"0a\" to be added successfully", map.set("0a", "Alice"));
+        assertTrue("Expected \"0b\" to be added successfully", map.set("0b", "Bob"));
+        assertTrue("Expected \"0c\" to be lent to shard 1", map.set("0c", "Carol"));
+        assertTrue("Expected \"0d\" to be lent to shard 1", map.set("0d", "Dave"));
+        assertFalse("Expected \"0e\" to be added unsuccessfully with shards 0 and 1 full", map.set("0e", "Eve"));
+        assertArrayEquals("Expected shards 0 and 1 full", new double[] {1, 1, 0, 0}, map.shardLoads(), DELTA);
+        
+        assertEquals("Expected key/value (0c: Carol) from shard 1", "Carol", map.get("0c"));
+        assertTrue("Expected \"0c\" to be reset successfully", map.set("0c", "Cruz"));
+        assertEquals("Expected key/value (0c: Cruz) from shard 1", "Cruz", map.get("0c"));
+        assertEquals("Expected null for absent key \"0e\"", null, map.get("0e"));
+        assertEquals("Expected null value for key \"0e\" not contained in map", null, map.delete("0e"));
+        
+        assertEquals("Expected deleted value of \"0a\"", "Alice", map.delete("0a"));
+        assertTrue("Expected \"0c\" to be reset successfully", map.set("0c", "Carmen"));
+        assertEquals("Expected \"0c\" to stay in shard 1", 0.5, map.shardLoads()[0], DELTA);
+        assertEquals("Expected deleted value of \"0c\"", "Carmen", map.delete("0c"));
+        assertEquals("Expected null for deleted key \"0c\"", null, map.get("0c"));
+        assertEquals("Expected deleted value of \"0d\"", "Dave", map.delete("0d"));
+        assertArrayEquals("Expected only \"0b\" left", new double[] {0.5, 0, 0, 0}, map.shardLoads(), DELTA);
+        
+        assertTrue("Expected \"3a\" to be added successfully", map.set("3a", "Alice"));
+        assertTrue("Expected \"3b\" to be added successfully", map.set("3b", "Bob"));
+        assertTrue("Expected \"3c\" to be lent to shard 0", map.set("3c", "Carol"));
+        assertEquals("Expected key/value (3c: Carol) from shard 0", "Carol", map.get("3c"));
+        assertEquals("Expected load 4/8", 0.5, map.load(), DELTA);
+        assertArrayEquals("Expected \"3c\" in shard 0", new double[] {1, 0, 0, 1}, map.shardLoads(), DELTA);
+        
+        final ShardedFixedSizeHashMap<String> single = new ShardedFixedSizeHashMap<>(1, 1,
+                ShardedFixedSizeHashMap.Overflow.NEIGHBOR, FixedSizeHashMap.Probing.LINEAR, Hasher.MURMUR);
+        assertTrue("Expected \"K\" to be added successfully", single.set("K", "Kleiner"));
+        assertFalse("Expected \"C\" to be added unsuccessfully with a single shard", single.set("C", "Cruz"));
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): random calls match java.util.HashMap
+     */
+    @Test
+    public void testMatchesHashMap() {
+        final int keys = 200;
+        final ShardedFixedSizeHashMap<Integer> map = new ShardedFixedSizeHashMap<>(keys, 16,
+                ShardedFixedSizeHashMap.Overflow.NEIGHBOR, FixedSizeHashMap.Probing.LINEAR, Hasher.MURMUR);
+        final java.util.Map<String, Integer> expected = new java.util.HashMap<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < OPERATIONS; i++) {
+            final String key = "key" + random.nextInt(keys / 2);
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (map.set(key, i)) expected.put(key, i);
+                    else assertFalse("Expected set to fail only for new keys", expected.containsKey(key));
+                    break;
+                case 1:
+                    assertEquals("Expected get to match", expected.get(key), map.get(key));
+                    break;
+                default:
+                    assertEquals("Expected delete to match", expected.remove(key), map.delete(key));
+            }
+        }
+        assertEquals("Expected load to match", (double) expected.size() / keys, map.load(), DELTA);
+    }
+    
+    /*
+     * This test covers:
+     *     multiple threads: threads write disjoint keys that overflow into neighbouring shards
+     */
+    @Test
+    public void testConcurrentOverflow() throws InterruptedException {
+        final int size = 64;
+        final ShardedFixedSizeHashMap<Integer> map = new ShardedFixedSizeHashMap<>(size, SHARDS,
+                ShardedFixedSizeHashMap.Overflow.NEIGHBOR, FixedSizeHashMap.Probing.LINEAR, SHARD_HASHER);
+        final int keysPerThread = size * 3 / THREADS / 8; // 24 keys per shard, 16 slots per shard
+        TestThreads.run(THREADS, thread -> {
+            final Random random = new Random(thread);
+            final Integer[] model = new Integer[keysPerThread];
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                final int k = random.nextInt(keysPerThread);
+                // Threads write only shards 0 and 1, so shard 0 lends to shard 1 and shard 1 to shard 2
+                final String key = (thread % 2) + ":" + thread + ":" + k;
+                if (random.nextBoolean()) {
+                    assertTrue("Expected set to succeed with room in the next shard", map.set(key, i));
+                    model[k] = i;
+                }
+                else {
+                    assertEquals("Expected delete to see own writes", model[k], map.delete(key));
+                    model[k] = null;
+                }
+                assertEquals("Expected get to see own writes", model[k], map.get(key));
+            }
+        });
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int k = 0; k < keysPerThread; k++) {
+                final String key = (thread % 2) + ":" + thread + ":" + k;
+                map.delete(key);
+                assertEquals("Expected no duplicate of key " + key, null, map.get(key));
+            }
+        }
+        assertEquals("Expected load 0 after deleting every key", 0, map.load(), DELTA);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * SipHash-1-3 of character sequences: one compression round per 8 bytes of input and three
+ * finalization rounds. Characters are read four at a time as their little-endian UTF-16
+ * encoding, so no byte array is ever made.
+ * @author Yanlin Li
+ */
+final class SipHash {
+    
+    private SipHash() {
+    }
+    
+    /**
+     * @param k0 first half of the secret
+     * @param k1 second half of the secret
+     * @param key characters to hash
+     * @return SipHash-1-3 of key, folded to 32 bits
+     */
+    static int hash(long k0, long k1, CharSequence key) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        final int length = key.length();
+        for (int i = 0; ; i += 4) {
+            final boolean last = i + 4 > length;
+            long m;
+            if (!last) {
+                m = key.charAt(i) | (long) key.charAt(i + 1) << 16
+                        | (long) key.charAt(i + 2) << 32 | (long) key.charAt(i + 3) << 48;
+            }
+            else { // last word holds the remaining characters and the low byte of the byte length
+                m = (long) (length * 2) << 56;
+                for (int shift = 0; i < length; i++, shift += 16) m |= (long) key.charAt(i) << shift;
+            }
+            v3 ^= m;
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+            if (last) break;
+        }
+        v2 ^= 0xff;
+        for (int round = 0; round < 3; round++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        final long hash = v0 ^ v1 ^ v2 ^ v3;
+        return (int) (hash ^ hash >>> 32);
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes and reads the binary snapshots of FixedSizeHashMap. All numbers are big-endian.
+ * A snapshot starts with a header:
+ *     int magic "FSHS", int format version, int map size, byte probing, byte flags,
+ *     int number of key/value pairs, int value width, int hasher fingerprint,
+ *     int CRC32C of the header bytes before it.
+ * Chunks of key/value pairs follow, each made of
+ *     int number of pairs, int number of bytes of the pairs, the pairs, int CRC32C of the pairs,
+ * and a chunk of 0 pairs ends the snapshot. Each pair is recorded as
+ *     int slot, int hash, int key length in bytes, key, [long remaining time to live in
+ *     nanoseconds, 0 if none, present if flags has TTL set], value in value width bytes.
+ * Keys are recorded char by char, each UTF-16 code unit taking 1 to 3 bytes as in UTF-8, so
+ * ASCII keys take a byte per char and any String, even one with an unpaired surrogate, is
+ * restored exactly. The hasher fingerprint is the hash of a fixed string; it is not trusted on
+ * restore, where every key is hashed again and its recorded slot reused only if its recorded
+ * hash agrees.
+ * @author Yanlin Li
+ */
+final class SnapshotFormat {
+    
+    /** Header layout. */
+    static final int MAGIC = 0x46534853; // "FSHS"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 30; // including its checksum
+    
+    /** Flag set if pairs record their remaining time to live. */
+    static final int TTL = 1;
+    
+    /** Number of bytes of pairs a chunk is filled with before it is written. */
+    static final int CHUNK_BYTES = 1 << 16;
+    
+    /** Smallest number of pairs in a chunk worth decoding in parallel. */
+    private static final int PARALLEL_PAIRS = 1024;
+    
+    /** String hashed to compare the hashers of two maps. */
+    private static final String FINGERPRINT_KEY = "FixedSizeHashMap snapshot";
+    
+    private SnapshotFormat() {
+    }
+    
+    /**
+     * Writes a snapshot of a map.
+     * @param map map to write
+     * @param out channel to write to
+     * @param codec converts values to bytes
+     * @throws IOException if the channel cannot be written
+     */
+    static <V> void write(FixedSizeHashMap<V> map, WritableByteChannel out, ValueCodec<? super V> codec)
+            throws IOException {
+        final int size = map.capacity();
+        final long now = map.now();
+        boolean ttl = false;
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (map.isLive(slot) && !isExpired(map.deadlineAt(slot), now)) {
+                count++;
+                ttl |= map.deadlineAt(slot) != 0;
+            }
+        }
+        
+        final CRC32C crc = new CRC32C();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(size).put((byte) map.probing().ordinal())
+                .put((byte) (ttl ? TTL : 0)).putInt(count).putInt(codec.width()).putInt(fingerprint(map.hasher()));
+        header.putInt(checksum(crc, header, 0, header.position()));
+        writeFully(out, header.flip());
+        
+        // Pairs are written after the 8 bytes of the chunk's counts, which are filled in last
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES + 12);
+        chunk.position(8);
+        int pairs = 0;
+        for (int slot = 0; slot < size; slot++) {
+            final long deadline = map.isLive(slot) ? map.deadlineAt(slot) : 0;
+            if (!map.isLive(slot) || isExpired(deadline, now)) continue;
+            final String key = map.keyAt(slot);
+            final int pairBytes = 12 + encodedLength(key) + (ttl ? 8 : 0) + codec.width();
+            if (pairs > 0 && chunk.position() - 8 + pairBytes > CHUNK_BYTES) {
+                writeChunk(out, chunk, pairs, crc);
+                pairs = 0;
+            }
+            if (chunk.remaining() < pairBytes + 4) { // a pair larger than a chunk
+                chunk = ByteBuffer.allocate(pairBytes + 12);
+                chunk.position(8);
+            }
+            chunk.putInt(slot).putInt(map.hashAt(slot)).putInt(encodedLength(key));
+            encode(key, chunk);
+            if (ttl) chunk.putLong(deadline == 0 ? 0 : deadline - now);
+            @SuppressWarnings("unchecked")
+            final V value = (V) map.valueAt(slot);
+            codec.write(chunk, chunk.position(), value);
+            chunk.position(chunk.position() + codec.width());
+            pairs++;
+        }
+        if (pairs > 0) writeChunk(out, chunk, pairs, crc);
+        writeFully(out, ByteBuffer.allocate(4).putInt(0).flip());
+    }
+    
+    /**
+     * Restores a snapshot into an empty map.
+     * @param map map to restore into
+     * @param in channel to read from
+     * @param codec converts bytes to values
+     * @return number of key/value pairs restored
+     * @throws IOException if the channel cannot be read or does not hold an intact snapshot
+     */
+    static <V> int read(FixedSizeHashMap<V> map, ReadableByteChannel in, ValueCodec<? extends V> codec)
+            throws IOException {
+        final CRC32C crc = new CRC32C();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(in, header);
+        if (header.getInt(0) != MAGIC)
+            throw new IOException("Stream does not hold a snapshot.");
+        if (header.getInt(HEADER_BYTES - 4) != checksum(crc, header, 0, HEADER_BYTES - 4))
+            throw new IOException("Snapshot header is corrupted.");
+        if (header.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Snapshot has unsupported format version " + header.getInt(4) + ".");
+        final int size = header.getInt(8);
+        final int probing = header.get(12);
+        final boolean ttl = (header.get(13) & TTL) != 0;
+        final int count = header.getInt(14);
+        final int valueWidth = header.getInt(18);
+        if (valueWidth != codec.width())
+            throw new IOException("Snapshot holds values of width " + valueWidth + ", not " + codec.width() + ".");
+        if (count > map.capacity())
+            throw new IOException("Snapshot holds " + count + " keys, more than the map can.");
+        
+        // Every key is hashed again by the map's hasher, and a key whose recorded hash agrees
+        // goes back in its recorded slot if the maps have the same LINEAR layout. A Robin Hood
+        // map is always probed again: the keys left out of a snapshot, having expired, would
+        // leave EMPTY holes in its clusters that stop lookups for the keys past them
+        final boolean sameSlots = size == map.capacity() && probing == map.probing().ordinal()
+                && map.probing() == FixedSizeHashMap.Probing.LINEAR;
+        final long now = map.now();
+        final Chunk chunk = new Chunk();
+        final ByteBuffer counts = ByteBuffer.allocate(8);
+        int restored = 0;
+        while (true) {
+            readFully(in, counts.clear().limit(4));
+            final int pairs = counts.getInt(0);
+            if (pairs == 0) break;
+            readFully(in, counts.limit(8));
+            final int bytes = counts.getInt(4);
+            if (pairs < 0 || bytes < 0 || restored + pairs > count)
+                throw new IOException("Snapshot is corrupted.");
+            chunk.read(in, pairs, bytes, crc);
+            chunk.decode(pairs, ttl, valueWidth, codec, map.hasher());
+            for (int i = 0; i < pairs; i++) {
+                final long remaining = chunk.ttls[i];
+                final long deadline = remaining == 0 ? 0 : (now + remaining == 0 ? 1 : now + remaining);
+                final int slot = chunk.slots[i];
+                if (slot < -1 || slot >= size)
+                    throw new IOException("Snapshot is corrupted.");
+                // A key probed in may have taken the recorded slot of a later key, probe that one in too
+                final boolean stored = sameSlots && slot >= 0
+                        && map.restoreAt(slot, chunk.keys[i], chunk.hashes[i], chunk.values[i], deadline)
+                        || map.putHashed(chunk.keys[i], chunk.hashes[i], chunk.values[i], deadline);
+                if (!stored)
+                    throw new IOException("Snapshot is corrupted.");
+            }
+            restored += pairs;
+        }
+        if (restored != count)
+            throw new IOException("Snapshot is truncated.");
+        if (sameSlots) map.restored();
+        return restored;
+    }
+    
+    /**
+     * Pairs of a chunk being restored, in arrays that grow as needed and are reused by every
+     * chunk of a snapshot.
+     */
+    private static final class Chunk {
+        
+        /** Instance variables. */
+        private ByteBuffer bytes = ByteBuffer.allocate(0); // pairs read from the snapshot
+        private int[] offsets = new int[0]; // index in bytes of each pair
+        private int[] slots = new int[0]; // recorded slot of each pair, or -1 if its recorded hash is wrong
+        private int[] hashes = new int[0]; // hash of each key by the map's hasher
+        private String[] keys = new String[0]; // decoded keys
+        private Object[] values = new Object[0]; // decoded values
+        private long[] ttls = new long[0]; // remaining time to live of each pair, 0 if none
+        
+        /**
+         * Reads the pairs of a chunk and its checksum, and checks the checksum.
+         */
+        void read(ReadableByteChannel in, int pairs, int length, CRC32C crc) throws IOException {
+            if (bytes.capacity() < length + 4) bytes = ByteBuffer.allocate(Math.max(length + 4, 2 * bytes.capacity()));
+            bytes.clear().limit(length + 4);
+            readFully(in, bytes);
+            if (bytes.getInt(length) != checksum(crc, bytes, 0, length))
+                throw new IOException("Snapshot chunk is corrupted.");
+            if (offsets.length < pairs) {
+                final int capacity = Math.max(pairs, 2 * offsets.length);
+                offsets = new int[capacity];
+                slots = new int[capacity];
+                hashes = new int[capacity];
+                keys = new String[capacity];
+                values = new Object[capacity];
+                ttls = new long[capacity];
+            }
+        }
+        
+        /**
+         * Finds where each pair starts, then decodes the pairs and hashes their keys, in
+         * parallel for large chunks. A recorded slot is only kept if the recorded hash of its
+         * key agrees with the map's hasher, so a snapshot from another hasher is never trusted.
+         * @param hasher hasher of the map being restored
+         */
+        void decode(int pairs, boolean ttl, int valueWidth, ValueCodec<?> codec, Hasher hasher) throws IOException {
+            final int length = bytes.limit() - 4;
+            int offset = 0;
+            for (int i = 0; i < pairs; i++) {
+                offsets[i] = offset;
+                if (offset > length - 12)
+                    throw new IOException("Snapshot chunk is corrupted.");
+                final int keyLength = bytes.getInt(offset + 8);
+                final long next = (long) offset + 12 + keyLength + (ttl ? 8 : 0) + valueWidth;
+                if (keyLength < 0 || next > length)
+                    throw new IOException("Snapshot chunk is corrupted.");
+                offset = (int) next;
+            }
+            if (offset != length)
+                throw new IOException("Snapshot chunk is corrupted.");
+            
+            final IntStream indices = IntStream.range(0, pairs);
+            (pairs >= PARALLEL_PAIRS ? indices.parallel() : indices).forEach(i -> {
+                int at = offsets[i];
+                final int keyLength = bytes.getInt(at + 8);
+                keys[i] = decodeKey(bytes, at + 12, keyLength);
+                hashes[i] = keys[i] == null ? 0 : hasher.hash(keys[i]);
+                slots[i] = hashes[i] == bytes.getInt(at + 4) ? bytes.getInt(at) : -1;
+                at += 12 + keyLength;
+                ttls[i] = ttl ? bytes.getLong(at) : 0;
+                if (ttl) at += 8;
+                values[i] = codec.read(bytes, at);
+            });
+            for (int i = 0; i < pairs; i++) {
+                if (keys[i] == null)
+                    throw new IOException("Snapshot chunk is corrupted.");
+            }
+        }
+    }
+    
+    /**
+     * Writes a chunk of pairs, preceded by its counts and followed by its checksum, then
+     * empties the chunk.
+     */
+    private static void writeChunk(WritableByteChannel out, ByteBuffer chunk, int pairs, CRC32C crc)
+            throws IOException {
+        final int length = chunk.position() - 8;
+        chunk.putInt(0, pairs).putInt(4, length);
+        chunk.putInt(checksum(crc, chunk, 8, length));
+        writeFully(out, chunk.flip());
+        chunk.clear().position(8);
+    }
+    
+    /**
+     * @param key key to record
+     * @return number of bytes of key recorded char by char
+     */
+    static int encodedLength(String key) {
+        int length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return length;
+    }
+    
+    /**
+     * Records a key char by char, each in 1 to 3 bytes as in UTF-8.
+     * @param key key to record
+     * @param buffer buffer to write to, at its position
+     */
+    static void encode(String key, ByteBuffer buffer) {
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            }
+            else {
+                buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+    
+    /**
+     * Decodes a key recorded by encode(), without changing the buffer's position.
+     * @param buffer buffer holding the key
+     * @param offset index in buffer of the first byte of the key
+     * @param length number of bytes of the key
+     * @return decoded key, or null if the bytes were not written by encode()
+     */
+    static String decodeKey(ByteBuffer buffer, int offset, int length) {
+        final byte[] array = buffer.array();
+        final int start = buffer.arrayOffset() + offset;
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) ascii = array[start + i] >= 0;
+        if (ascii) return new String(array, start, length, StandardCharsets.ISO_8859_1);
+        
+        final char[] chars = new char[length];
+        int count = 0;
+        for (int i = start; i < start + length; ) {
+            final int b = array[i++];
+            if (b >= 0) {
+                chars[count++] = (char) b;
+            }
+            else if ((b & 0xE0) == 0xC0 && i < start + length) {
+                chars[count++] = (char) ((b & 0x1F) << 6 | array[i++] & 0x3F);
+            }
+            else if ((b & 0xF0) == 0xE0 && i + 1 < start + length) {
+                chars[count++] = (char) ((b & 0x0F) << 12 | (array[i] & 0x3F) << 6 | array[i + 1] & 0x3F);
+                i += 2;
+            }
+            else {
+                return null;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+    
+    /**
+     * @param deadline expiry deadline, or 0 if none
+     * @param now current time
+     * @return true if deadline has passed
+     */
+    private static boolean isExpired(long deadline, long now) {
+        return deadline != 0 && now - deadline >= 0;
+    }
+    
+    /**
+     * @param hasher hasher of a map
+     * @return hash of a fixed string, recorded in the header but no proof that two hashers agree
+     */
+    private static int fingerprint(Hasher hasher) {
+        return hasher.hash(FINGERPRINT_KEY);
+    }
+    
+    /**
+     * @return CRC32C of a range of a buffer, whose position and limit are left unchanged
+     */
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int offset, int length) {
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + offset, length);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Writes every remaining byte of a buffer to a channel.
+     */
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+    
+    /**
+     * Fills the remaining bytes of a buffer from a channel.
+     * @throws EOFException if the channel ends first
+     */
+    private static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0)
+                throw new EOFException("Snapshot is truncated.");
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tester class for the snapshots of FixedSizeHashMap, written by writeTo() and restored by readFrom().
+ * @author Yanlin Li
+ */
+public class SnapshotFormatTest {
+    
+    /*
+     * Testing strategy for writeTo() and readFrom()
+     *
+     * writeTo():
+     *     - map size = 0, > 0
+     *     - map empty, with tombstones, with expired and unexpired keys
+     *     - snapshot in one chunk or in many
+     *     - keys ASCII, non-ASCII, with an unpaired surrogate
+     *     - stream or channel
+     *
+     * readFrom():
+     *     - map of the same size, probing and hasher (slots copied if LINEAR, keys probed
+     *       again if ROBIN_HOOD), of another size, of another probing, or with another hasher
+     *       (keys rehashed)
+     *     - ROBIN_HOOD snapshot with expired keys left out of its clusters
+     *     - map with a hasher that agrees with the writer's on the fingerprint string only
+     *     - map too small for the snapshot, map not empty
+     *     - snapshot intact, corrupted, truncated, written with values of another width,
+     *       or not a snapshot at all
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final ValueCodec<String> STRINGS = ValueCodec.utf8(32);
+    
+    /*
+     * This test covers:
+     *     writeTo(): map size = 0, map empty, stream
+     *     readFrom(): map of the same size, probing and hasher
+     */
+    @Test
+    public void testEmptyMaps() throws IOException {
+        for (int size : new int[] {0, 16}) {
+            final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(size);
+            final FixedSizeHashMap<String> copy = new FixedSizeHashMap<>(size);
+            assertEquals("Expected nothing restored from an empty map", 0, copy.readFrom(snapshot(map, STRINGS), STRINGS));
+            assertEquals("Expected restored map to be empty", size == 0 ? 1.0 : 0.0, copy.load(), 0.0);
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     writeTo(): map with tombstones, snapshot in many chunks, keys ASCII, non-ASCII and
+     *         with an unpaired surrogate, stream or channel
+     *     readFrom(): map of the same size, probing and hasher, of another size, of another
+     *         probing, or with another hasher
+     */
+    @Test
+    public void testRoundTrips() throws IOException {
+        final int size = 20000;
+        final Hasher seeded = Hasher.seeded();
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final FixedSizeHashMap<String> map = new FixedSizeHashMap<>(size, probing, seeded);
+            final Map<String, String> expected = new HashMap<>();
+            final Random random = new Random(5);
+            for (int i = 0; i < size * 9 / 10; i++) {
+                final String key = i % 3 == 0 ? "key" + i : i % 3 == 1 ? "cl\u00e9" + i : "\ud800" + i;
+                map.set(key, "v" + i);
+                expected.put(key, "v" + i);
+            }
+            for (int i = 0; i < size / 4; i++) {
+                final String key = "key" + 3 * random.nextInt(size * 3 / 10);
+                map.delete(key);
+                expected.remove(key);
+            }
+            
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            map.writeTo(Channels.newChannel(bytes), STRINGS);
+            assertTrue("Expected snapshot larger than one chunk", bytes.size() > SnapshotFormat.CHUNK_BYTES);
+            final FixedSizeHashMap<?>[] targets = {
+                new FixedSizeHashMap<String>(size, probing, seeded), // same layout
+                new FixedSizeHashMap<String>(size * 2, probing, seeded), // another size
+                new FixedSizeHashMap<String>(size, probing == FixedSizeHashMap.Probing.LINEAR
+                        ? FixedSizeHashMap.Probing.ROBIN_HOOD : FixedSizeHashMap.Probing.LINEAR, seeded),
+                new FixedSizeHashMap<String>(size, probing, Hasher.MURMUR) // another hasher
+            };
+            for (FixedSizeHashMap<?> target : targets) {
+                @SuppressWarnings("unchecked")
+                final FixedSizeHashMap<String> copy = (FixedSizeHashMap<String>) target;
+                assertEquals("Expected every key restored", expected.size(),
+                        copy.readFrom(new ByteArrayInputStream(bytes.toByteArray()), STRINGS));
+                for (Map.Entry<String, String> entry : expected.entrySet()) {
+                    assertEquals("Expected restored value of " + entry.getKey(), entry.getValue(), copy.get(entry.getKey()));
+                }
+                assertEquals("Expected absent key to stay absent", null, copy.get("key0x"));
+                assertTrue("Expected restored map to accept new keys", copy.set("new", "value"));
+                assertEquals("Expected restored map to find new keys", "value", copy.get("new"));
+            }
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     writeTo(): map with expired and unexpired keys
+     *     readFrom(): map of the same size, probing and hasher
+     */
+    @Test
+    public void testTimeToLive() throws IOException {
+        final AtomicLong now = new AtomicLong(1000);
+        final FixedSizeHashMap<Long> map = new FixedSizeHashMap<>(16);
+        map.setClock(now::get);
+        map.set("forever", 1L);
+        map.set("short", 2L, 10, TimeUnit.NANOSECONDS);
+        map.set("long", 3L, 100, TimeUnit.NANOSECONDS);
+        now.set(1050); // "short" expired, "long" has 50 ns left
+        
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        map.writeTo(bytes, ValueCodec.LONG);
+        final AtomicLong later = new AtomicLong(-500);
+        final FixedSizeHashMap<Long> copy = new FixedSizeHashMap<>(16);
+        copy.setClock(later::get);
+        assertEquals("Expected expired key left out", 2, copy.readFrom(new ByteArrayInputStream(bytes.toByteArray()), ValueCodec.LONG));
+        later.set(-451);
+        assertEquals("Expected key/value (long: 3) before its time to live resumes and passes", Long.valueOf(3L), copy.get("long"));
+        later.set(-450);
+        assertEquals("Expected null for expired key \"long\"", null, copy.get("long"));
+        assertEquals("Expected key/value (forever: 1)", Long.valueOf(1L), copy.get("forever"));
+    }
+    
+    /*
+     * This test covers:
+     *     writeTo(): map with expired and unexpired keys
+     *     readFrom(): map of the same size, probing and hasher, ROBIN_HOOD snapshot with
+     *         expired keys left out of its clusters
+     */
+    @Test
+    public void testRobinHoodWithExpiredKeys() throws IOException {
+        for (FixedSizeHashMap.Probing probing : FixedSizeHashMap.Probing.values()) {
+            final Random random = new Random(15);
+            for (int round = 0; round < 200; round++) {
+                final AtomicLong now = new AtomicLong(0);
+                final FixedSizeHashMap<Long> map = new FixedSizeHashMap<>(64, probing);
+                map.setClock(now::get);
+                final Map<String, Long> expected = new HashMap<>();
+                for (long i = 0; i < 60; i++) {
+                    final String key = "key" + random.nextInt(1000);
+                    if (random.nextInt(4) == 0) {
+                        map.set(key, i, 10, TimeUnit.NANOSECONDS);
+                        expected.remove(key);
+                    }
+                    else {
+                        map.set(key, i);
+                        expected.put(key, i);
+                    }
+                }
+                now.set(20); // every key with a time to live has expired
+                
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                map.writeTo(bytes, ValueCodec.LONG);
+                final FixedSizeHashMap<Long> copy = new FixedSizeHashMap<>(64, probing);
+                copy.setClock(now::get);
+                assertEquals("Expected unexpired keys restored", expected.size(),
+                        copy.readFrom(new ByteArrayInputStream(bytes.toByteArray()), ValueCodec.LONG));
+                for (Map.Entry<String, Long> entry : expected.entrySet()) {
+                    assertEquals("Expected restored value of " + entry.getKey() + " in " + probing + " map",
+                            entry.getValue(), copy.get(entry.getKey()));
+                }
+            }
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     readFrom(): map of the same size and probing, with a hasher that agrees with the
+     *         writer's on the fingerprint string only
+     */
+    @Test
+    public void testHasherAgreeingOnFingerprintOnly() throws IOException {
+        final Hasher impostor = key -> "FixedSizeHashMap snapshot".contentEquals(key)
+                ? Hasher.MURMUR.hash(key) : Hasher.MURMUR.hash(key) ^ 0x5bd1e995;
+        final FixedSizeHashMap<Long> map = new FixedSizeHashMap<>(64);
+        for (long i = 0; i < 48; i++) map.set("key" + i, i);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        map.writeTo(bytes, ValueCodec.LONG);
+        
+        final FixedSizeHashMap<Long> copy = new FixedSizeHashMap<>(64, FixedSizeHashMap.Probing.LINEAR, impostor);
+        assertEquals("Expected every key restored", 48, copy.readFrom(new ByteArrayInputStream(bytes.toByteArray()), ValueCodec.LONG));
+        for (long i = 0; i < 48; i++) {
+            assertEquals("Expected restored value of key" + i, Long.valueOf(i), copy.get("key" + i));
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     readFrom(): map too small, map not empty, snapshot corrupted, truncated, written with
+     *         values of another width, or not a snapshot at all
+     */
+    @Test
+    public void testRejectedSnapshots() throws IOException {
+        final FixedSizeHashMap<Long> map = new FixedSizeHashMap<>(16);
+        for (long i = 0; i < 10; i++) map.set("key" + i, i);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.writeTo(out, ValueCodec.LONG);
+        final byte[] bytes = out.toByteArray();
+        
+        try {
+            new FixedSizeHashMap<Long>(8).readFrom(new ByteArrayInputStream(bytes), ValueCodec.LONG);
+            fail("Expected map too small to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            map.readFrom(new ByteArrayInputStream(bytes), ValueCodec.LONG);
+            fail("Expected map not empty to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertReadFails(Arrays.copyOf(bytes, bytes.length - 10), ValueCodec.LONG);
+        assertReadFails(bytes, STRINGS);
+        assertReadFails("not a snapshot at all, but long enough".getBytes(), ValueCodec.LONG);
+        for (int index : new int[] {10, SnapshotFormat.HEADER_BYTES + 20}) {
+            final byte[] corrupted = bytes.clone();
+            corrupted[index] ^= 1;
+            assertReadFails(corrupted, ValueCodec.LONG);
+        }
+    }
+    
+    /**
+     * @return stream holding a snapshot of map
+     */
+    private static <V> ByteArrayInputStream snapshot(FixedSizeHashMap<V> map, ValueCodec<V> codec) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.writeTo(out, codec);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+    
+    /**
+     * Asserts that restoring bytes into a new map throws IOException.
+     */
+    private static <V> void assertReadFails(byte[] bytes, ValueCodec<V> codec) {
+        try {
+            new FixedSizeHashMap<V>(16).readFrom(new ByteArrayInputStream(bytes), codec);
+            fail("Expected restoring to fail");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed-sized hash map that associates string keys with arbitrary data object references,
+ * laid out as a Swiss table: slots are split into groups of 8, and each slot has a control
+ * byte holding either 7 bits of its key's hash or a marker for an empty, deleted or padding slot.
+ * A lookup reads the 8 control bytes of a group as one long and compares them to the hash
+ * fragment of its key all at once with SWAR (SIMD within a register) bit tricks, so it calls
+ * String.equals() only on the slots whose fragment matches, about 1 in 128 of the others.
+ * Groups are probed linearly from the group chosen by the high bits of the hash, and a lookup
+ * stops at the first group with an empty slot.
+ * A deleted slot becomes empty again if its group still has an empty slot, since no probe
+ * ever went past such a group. Otherwise it is left as a tombstone, and once too many of them
+ * have built up the keys are placed again in place.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public class SwissFixedSizeHashMap<V> {
+    
+    /** Number of slots per group, the number of control bytes in a long. */
+    static final int GROUP = 8;
+    
+    /** Tombstones are compacted away once they exceed 1/MAX_TOMBSTONE_FRACTION of the slots. */
+    private static final int MAX_TOMBSTONE_FRACTION = 4;
+    
+    /** A long with the lowest, or highest, bit of every byte set. */
+    private static final long LSB = 0x0101010101010101L;
+    private static final long MSB = 0x8080808080808080L;
+    
+    /** Reads the 8 control bytes of a group as one long, byte 0 in the lowest bits. */
+    private static final VarHandle GROUP_BYTES = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    
+    /**
+     * Control bytes. A slot holding a key has the low 7 bits of its hash, from 0 to 0x7f,
+     * and every other control byte has its high bit set.
+     */
+    static final byte EMPTY = (byte) 0x80; // slot has no key, and a probe may stop at its group
+    static final byte DELETED = (byte) 0xfe; // slot had a key, and probes go on past its group
+    static final byte PADDING = (byte) 0xff; // slot past the end of the map, never used
+    
+    /** Instance variables. */
+    private final int size; // fixed size of bucket
+    private final int groupCount; // number of groups, the last one padded out to GROUP slots
+    private final byte[] controls; // control byte of each slot
+    private final String[] keys; // key stored in each slot, null unless slot holds a key
+    private final Object[] values; // value stored in each slot, null unless slot holds a key
+    private final Hasher hasher; // computes the hashes of keys
+    private int itemCount; // number of key/value pairs currently present in map
+    private int tombstoneCount; // number of DELETED slots currently in map
+    
+    /**
+     * Make a new fixed-size hash map of the specified size.
+     * @param size fixed size of the map
+     */
+    public SwissFixedSizeHashMap(final int size) {
+        this(size, Hasher.MURMUR);
+    }
+    
+    /**
+     * Make a new fixed-size hash map of the specified size and hash function.
+     * Use Hasher.seeded() if keys may be chosen by an attacker.
+     * @param size fixed size of the map
+     * @param hasher computes the hashes of keys
+     */
+    public SwissFixedSizeHashMap(final int size, final Hasher hasher) {
+        if (size < 0)
+            throw new IllegalArgumentException("Size cannot be negative.");
+        if (hasher == null)
+            throw new IllegalArgumentException("Hasher cannot be null.");
+        
+        this.size = size;
+        this.hasher = hasher;
+        this.groupCount = (size + GROUP - 1) / GROUP;
+        this.controls = new byte[groupCount * GROUP];
+        this.keys = new String[controls.length];
+        this.values = new Object[controls.length];
+        for (int slot = 0; slot < controls.length; slot++) {
+            controls[slot] = slot < size ? EMPTY : PADDING;
+        }
+        this.itemCount = 0;
+        this.tombstoneCount = 0;
+    }
+    
+    /**
+     * Stores the specified value with the specified key in this fixed-size map.
+     * If the map previously contained a mapping for the key, the old value is replaced.
+     * @param key String key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return true if the given key/value pair is stored successfully, false otherwise
+     */
+    public boolean set(final String key, final V value) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        if (size == 0) return false; // operation always fails if map has size 0
+        
+        int hash = hasher.hash(key);
+        int fragment = hash & 0x7f;
+        int group = indexFor(hash);
+        int free = -1; // first EMPTY or DELETED slot on the probe sequence
+        for (int probed = 0; probed < groupCount; probed++) {
+            int base = group * GROUP;
+            long controlWord = groupAt(base);
+            for (long match = matchByte(controlWord, fragment); match != 0; match &= match - 1) {
+                int slot = base + (Long.numberOfTrailingZeros(match) >>> 3);
+                if (key.equals(keys[slot])) {
+                    values[slot] = value; // reset value if keys are the same
+                    return true;
+                }
+            }
+            if (free < 0) {
+                long available = matchAvailable(controlWord);
+                if (available != 0) free = base + (Long.numberOfTrailingZeros(available) >>> 3);
+            }
+            if (matchEmpty(controlWord) != 0) break; // key is absent
+            group = group + 1 == groupCount ? 0 : group + 1;
+        }
+        if (free < 0) return false; // every slot holds a key, so map is full, operation failure
+        
+        if (controls[free] == DELETED) tombstoneCount--;
+        controls[free] = (byte) fragment;
+        keys[free] = key;
+        values[free] = value;
+        itemCount++;
+        return true;
+    }
+    
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or null if this map contains no mapping for the key.
+     * @param key String key whose associated value is to be returned
+     * @return the value to which the specified key is mapped,
+     *         or null if this map contains no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+    
+    /**
+     * Deletes the value associated with the given key if present.
+     * @param key String key whose mapping is to be removed from the map
+     * @return the previous value associated with key, or null if there was no mapping for key
+     */
+    @SuppressWarnings("unchecked")
+    public V delete(final String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Key cannot be null.");
+        
+        int slot = find(key);
+        if (slot < 0) return null;
+        V value = (V) values[slot];
+        keys[slot] = null;
+        values[slot] = null;
+        itemCount--;
+        if (matchEmpty(groupAt(slot & -GROUP)) != 0) {
+            controls[slot] = EMPTY; // probes stop at this group anyway
+        }
+        else {
+            controls[slot] = DELETED;
+            if (++tombstoneCount > size / MAX_TOMBSTONE_FRACTION) compact();
+        }
+        return value;
+    }
+    
+    /**
+     * Returns the load factor (`(items in map)/(size of map)`).
+     * @return load factor.
+     *         Since the size of the map is fixed, this should never be greater than 1.
+     *         If map has size 0, this value is 1.
+     */
+    public double load() {
+        if (size == 0) return 1.0; // map of size 0 has load factor 1
+        return (double) itemCount / size;
+    }
+    
+    /**
+     * Returns the number of tombstones, slots whose key was deleted but that probes still
+     * have to go past.
+     * @return number of DELETED slots
+     */
+    public int tombstones() {
+        return tombstoneCount;
+    }
+    
+    /**
+     * Finds the slot holding the given key.
+     * @param key key to look for
+     * @return index of the slot holding key, or -1 if key is not in the map
+     */
+    private int find(String key) {
+        if (size == 0) return -1; // map of size 0 has no keys
+        
+        int hash = hasher.hash(key);
+        int fragment = hash & 0x7f;
+        int group = indexFor(hash);
+        for (int probed = 0; probed < groupCount; probed++) {
+            int base = group * GROUP;
+            long controlWord = groupAt(base);
+            for (long match = matchByte(controlWord, fragment); match != 0; match &= match - 1) {
+                int slot = base + (Long.numberOfTrailingZeros(match) >>> 3);
+                if (key.equals(keys[slot])) return slot;
+            }
+            if (matchEmpty(controlWord) != 0) return -1;
+            group = group + 1 == groupCount ? 0 : group + 1;
+        }
+        return -1; // if probe looped back to home, then key does not exist
+    }
+    
+    /**
+     * Places every key again without tombstones, in place, as the Swiss table of Abseil does.
+     * Every tombstone is made EMPTY and every key DELETED, then each DELETED key in turn is
+     * moved to the first EMPTY or DELETED slot of its probe sequence, swapping with the key
+     * there if that slot is DELETED, unless it is already in the same group.
+     */
+    private void compact() {
+        for (int slot = 0; slot < controls.length; slot++) {
+            if (controls[slot] == DELETED) controls[slot] = EMPTY;
+            else if (controls[slot] >= 0) controls[slot] = DELETED;
+        }
+        tombstoneCount = 0;
+        for (int slot = 0; slot < controls.length; slot++) {
+            if (controls[slot] != DELETED) continue;
+            int hash = hasher.hash(keys[slot]);
+            int home = indexFor(hash);
+            int target = firstAvailable(home);
+            if (groupDistance(home, target / GROUP) == groupDistance(home, slot / GROUP)) {
+                controls[slot] = (byte) (hash & 0x7f); // already in the right group
+                continue;
+            }
+            boolean swap = controls[target] == DELETED;
+            String key = keys[target];
+            Object value = values[target];
+            keys[target] = keys[slot];
+            values[target] = values[slot];
+            controls[target] = (byte) (hash & 0x7f);
+            keys[slot] = key;
+            values[slot] = value;
+            controls[slot] = swap ? DELETED : EMPTY;
+            if (swap) slot--; // place the key swapped in next
+        }
+    }
+    
+    /**
+     * @param group home group of a key
+     * @return first EMPTY or DELETED slot of the probe sequence starting at group
+     */
+    private int firstAvailable(int group) {
+        while (true) {
+            int base = group * GROUP;
+            long available = matchAvailable(groupAt(base));
+            if (available != 0) return base + (Long.numberOfTrailingZeros(available) >>> 3);
+            group = group + 1 == groupCount ? 0 : group + 1;
+        }
+    }
+    
+    /**
+     * @param home home group of a key
+     * @param group group on its probe sequence
+     * @return number of groups probed before group
+     */
+    private int groupDistance(int home, int group) {
+        return group >= home ? group - home : group + groupCount - home;
+    }
+    
+    /**
+     * @param base index of the first slot of a group
+     * @return control bytes of the group, the control byte of slot base in the lowest bits
+     */
+    private long groupAt(int base) {
+        return (long) GROUP_BYTES.get(controls, base);
+    }
+    
+    /**
+     * Finds the bytes of a group equal to a value. Each byte of x = controlWord ^ (value in
+     * every byte) is 0 where the control byte matches; adding 0x7f to its low 7 bits carries
+     * into the high bit unless they are all 0, and no carry crosses into the next byte.
+     * @param controlWord control bytes of a group
+     * @param value byte value to look for, from 0 to 0xff
+     * @return a long with the high bit of every matching byte set, and no other bit
+     */
+    private static long matchByte(long controlWord, int value) {
+        long x = controlWord ^ (LSB * value);
+        return ~(((x & ~MSB) + ~MSB) | x | ~MSB);
+    }
+    
+    /**
+     * @param controlWord control bytes of a group
+     * @return a long with the high bit of every EMPTY slot set
+     */
+    private static long matchEmpty(long controlWord) {
+        return matchByte(controlWord, EMPTY & 0xff);
+    }
+    
+    /**
+     * EMPTY and DELETED are the only control bytes with the high bit set and the low bit clear.
+     * @param controlWord control bytes of a group
+     * @return a long with the high bit of every EMPTY or DELETED slot set
+     */
+    private static long matchAvailable(long controlWord) {
+        return controlWord & ~(controlWord << 7) & MSB;
+    }
+    
+    /**
+     * Maps the hash of a key to the group at which probing for the key starts.
+     * @param keyHash hash of the key
+     * @return home group index
+     */
+    private int indexFor(int keyHash) {
+        return Hasher.indexFor(keyHash, groupCount);
+    }
+}
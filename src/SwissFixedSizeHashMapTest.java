@@ -0,0 +1,168 @@
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tester class for SwissFixedSizeHashMap.
+ * @author Yanlin Li
+ */
+public class SwissFixedSizeHashMapTest {
+    
+    /*
+     * Testing strategy for SwissFixedSizeHashMap
+     *
+     * constructor:
+     *     - map size = 0, a multiple of the group size, not a multiple, < 0
+     *
+     * set(), get(), delete():
+     *     - key present or absent, map full or not
+     *     - keys in one group or spilling over several, wrapping around the last group
+     *     - keys whose 7-bit hash fragments are equal, or whose whole hashes are equal
+     *     - deleted slot in a group with an EMPTY slot, or in a full group
+     *     - enough tombstones to compact the map, with keys moved to earlier groups
+     *     - random calls give the same results as FixedSizeHashMap
+     *
+     * load(), tombstones():
+     *     - map empty, partly full, full
+     *
+     * Each part of the partition above is covered by at least one test case.
+     */
+    
+    private static final double DELTA = 0.0001;
+    
+    /*
+     * Gives every key the same hash, so all keys share a home group and a hash fragment.
+     */
+    private static final Hasher SAME_HASHER = key -> 0x7fffffff;
+    
+    /*
+     * This test covers:
+     *     constructor: map size = 0, < 0
+     *     load(): map full
+     */
+    @Test
+    public void testSizeZeroMap() {
+        final SwissFixedSizeHashMap<String> map = new SwissFixedSizeHashMap<>(0);
+        assertFalse("Expected \"K\" to be added unsuccessfully", map.set("K", "Kleiner"));
+        assertEquals("Expected null for absent key \"K\"", null, map.get("K"));
+        assertEquals("Expected null value for key \"K\" not contained in map", null, map.delete("K"));
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        try {
+            new SwissFixedSizeHashMap<String>(-1);
+            fail("Expected negative size to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+    /*
+     * This test covers:
+     *     constructor: map size not a multiple of the group size
+     *     set(), get(), delete(): key present or absent, map full or not, keys spilling over
+     *         several groups and wrapping around, equal hashes, deleted slot in a full group
+     *     load(), tombstones(): map empty, partly full, full
+     */
+    @Test
+    public void testFullMapWithEqualHashes() {
+        final int size = 2 * SwissFixedSizeHashMap.GROUP + 3;
+        final SwissFixedSizeHashMap<Integer> map = new SwissFixedSizeHashMap<>(size, SAME_HASHER);
+        assertEquals("Expected load 0", 0.0, map.load(), DELTA);
+        for (int i = 0; i < size; i++) {
+            assertTrue("Expected key" + i + " to be added successfully", map.set("key" + i, i));
+        }
+        assertFalse("Expected \"extra\" to be added unsuccessfully", map.set("extra", -1));
+        assertTrue("Expected key0 to be reset successfully on a full map", map.set("key0", 100));
+        assertEquals("Expected load 1", 1.0, map.load(), DELTA);
+        for (int i = 1; i < size; i++) {
+            assertEquals("Expected key/value (key" + i + ": " + i + ")", Integer.valueOf(i), map.get("key" + i));
+        }
+        assertEquals("Expected key/value (key0: 100)", Integer.valueOf(100), map.get("key0"));
+        assertEquals("Expected null for absent key \"extra\" on a full map", null, map.get("extra"));
+        
+        assertEquals("Expected deleted value of key1", Integer.valueOf(1), map.delete("key1"));
+        assertEquals("Expected a tombstone in a full group", 1, map.tombstones());
+        assertEquals("Expected null for deleted key1", null, map.get("key1"));
+        assertEquals("Expected key/value (key" + (size - 1) + ")", Integer.valueOf(size - 1), map.get("key" + (size - 1)));
+        assertTrue("Expected \"extra\" to be added successfully", map.set("extra", -1));
+        assertEquals("Expected the tombstone reused", 0, map.tombstones());
+        assertEquals("Expected key/value (extra: -1)", Integer.valueOf(-1), map.get("extra"));
+    }
+    
+    /*
+     * This test covers:
+     *     constructor: map size a multiple of the group size
+     *     set(), get(), delete(): keys in one group, equal hash fragments, deleted slot in a
+     *         group with an EMPTY slot
+     *     tombstones(): map partly full
+     */
+    @Test
+    public void testOneGroup() {
+        // Hashes differ in their high bits only, so every key has hash fragment 0x15
+        final Hasher fragmentHasher = key -> (key.charAt(0) << 24) | 0x15;
+        final SwissFixedSizeHashMap<String> map = new SwissFixedSizeHashMap<>(SwissFixedSizeHashMap.GROUP, fragmentHasher);
+        assertTrue("Expected \"K\" to be added successfully", map.set("K", "Kleiner"));
+        assertTrue("Expected \"C\" to be added successfully", map.set("C", "Cruz"));
+        assertTrue("Expected \"P\" to be added successfully", map.set("P", "Pine"));
+        assertEquals("Expected key/value (C: Cruz)", "Cruz", map.get("C"));
+        assertEquals("Expected null for absent key \"Q\"", null, map.get("Q"));
+        assertEquals("Expected deleted value of \"C\"", "Cruz", map.delete("C"));
+        assertEquals("Expected no tombstone in a group with an EMPTY slot", 0, map.tombstones());
+        assertEquals("Expected null for deleted key \"C\"", null, map.delete("C"));
+        assertEquals("Expected key/value (P: Pine)", "Pine", map.get("P"));
+    }
+    
+    /*
+     * This test covers:
+     *     set(), delete(): enough tombstones to compact the map, keys moved to earlier groups
+     *     tombstones(): map partly full
+     */
+    @Test
+    public void testCompaction() {
+        final int size = 64;
+        final SwissFixedSizeHashMap<Integer> map = new SwissFixedSizeHashMap<>(size, SAME_HASHER);
+        for (int i = 0; i < size; i++) map.set("key" + i, i);
+        // Every group is full, so each deletion leaves a tombstone until they are compacted
+        for (int i = 0; i < size / 4; i++) {
+            map.delete("key" + i);
+        }
+        assertEquals("Expected tombstones up to a quarter of the slots", size / 4, map.tombstones());
+        map.delete("key" + size / 4);
+        assertEquals("Expected tombstones compacted away", 0, map.tombstones());
+        for (int i = 0; i < size; i++) {
+            final Integer expected = i <= size / 4 ? null : i;
+            assertEquals("Expected value of key" + i + " after compaction", expected, map.get("key" + i));
+        }
+        assertEquals("Expected load after compaction", (size - size / 4 - 1.0) / size, map.load(), DELTA);
+        assertTrue("Expected a new key to be added after compaction", map.set("new", 0));
+        assertEquals("Expected key/value (new: 0)", Integer.valueOf(0), map.get("new"));
+    }
+    
+    /*
+     * This test covers:
+     *     set(), get(), delete(): random calls match FixedSizeHashMap
+     */
+    @Test
+    public void testMatchesFixedSizeHashMap() {
+        for (int size : new int[] {5, 100, 1000}) {
+            final SwissFixedSizeHashMap<Integer> map = new SwissFixedSizeHashMap<>(size);
+            final FixedSizeHashMap<Integer> expected = new FixedSizeHashMap<>(size);
+            final Random random = new Random(size);
+            for (int i = 0; i < 200000; i++) {
+                final String key = "key" + random.nextInt(size * 2);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        assertEquals("Expected set to match", expected.set(key, i), map.set(key, i));
+                        break;
+                    case 1:
+                        assertEquals("Expected get to match", expected.get(key), map.get(key));
+                        break;
+                    default:
+                        assertEquals("Expected delete to match", expected.delete(key), map.delete(key));
+                }
+                assertEquals("Expected load to match", expected.load(), map.load(), DELTA);
+            }
+        }
+    }
+}
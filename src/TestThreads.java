@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the body of a concurrent test on several threads at once, for the tests of the maps
+ * that may be shared between threads.
+ * @author Yanlin Li
+ */
+final class TestThreads {
+    
+    /** Body of a test thread. */
+    interface Body {
+        void run(int thread) throws Exception;
+    }
+    
+    private TestThreads() {
+    }
+    
+    /**
+     * Runs body on the given number of threads started at the same time, and rethrows the
+     * first failure.
+     * @param count number of threads
+     * @param body body of each thread, given the index of its thread
+     * @throws InterruptedException if interrupted while waiting for the threads to finish
+     */
+    static void run(int count, Body body) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(thread);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+}
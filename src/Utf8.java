@@ -0,0 +1,118 @@
+/**
+ * UTF-8 encoding of character sequences into caller-supplied arrays, and decoding back, so
+ * keys given as Strings can be compared against stored key bytes, and keys given as bytes
+ * against stored Strings, without allocating.
+ * Unpaired surrogates are encoded as '?', as String.getBytes(UTF_8) does.
+ * @author Yanlin Li
+ */
+final class Utf8 {
+    
+    private Utf8() {
+    }
+    
+    /**
+     * Encodes a character sequence as UTF-8.
+     * @param chars characters to encode
+     * @param bytes array to encode into, starting at index 0
+     * @return number of bytes written, or -1 if the encoding does not fit in bytes
+     */
+    static int encode(CharSequence chars, byte[] bytes) {
+        int length = 0;
+        final int count = chars.length();
+        for (int i = 0; i < count; i++) {
+            int c = chars.charAt(i);
+            if (c < 0x80) {
+                if (length + 1 > bytes.length) return -1;
+                bytes[length++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                if (length + 2 > bytes.length) return -1;
+                bytes[length++] = (byte) (0xC0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            }
+            else if (Character.isSurrogate((char) c)) {
+                final char low = i + 1 < count ? chars.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate((char) c) && Character.isLowSurrogate(low)) {
+                    final int codePoint = Character.toCodePoint((char) c, low);
+                    i++;
+                    if (length + 4 > bytes.length) return -1;
+                    bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+                }
+                else {
+                    if (length + 1 > bytes.length) return -1;
+                    bytes[length++] = (byte) '?'; // unpaired surrogate
+                }
+            }
+            else {
+                if (length + 3 > bytes.length) return -1;
+                bytes[length++] = (byte) (0xE0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Decodes well-formed UTF-8 into UTF-16 chars. Overlong encodings, encoded surrogates,
+     * code points past U+10FFFF and truncated sequences are not well-formed.
+     * @param bytes array holding the encoding
+     * @param offset index in bytes of the first byte to decode
+     * @param length number of bytes to decode
+     * @param chars array to decode into, starting at index 0, at least length chars long
+     * @return number of chars written, or -1 if the bytes are not well-formed UTF-8
+     */
+    static int decode(byte[] bytes, int offset, int length, char[] chars) {
+        int count = 0;
+        final int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            final int b = bytes[i++];
+            if (b >= 0) {
+                chars[count++] = (char) b;
+                continue;
+            }
+            int codePoint;
+            int continuations;
+            int min; // smallest code point whose encoding is this long
+            if ((b & 0xE0) == 0xC0) {
+                codePoint = b & 0x1F;
+                continuations = 1;
+                min = 0x80;
+            }
+            else if ((b & 0xF0) == 0xE0) {
+                codePoint = b & 0x0F;
+                continuations = 2;
+                min = 0x800;
+            }
+            else if ((b & 0xF8) == 0xF0) {
+                codePoint = b & 0x07;
+                continuations = 3;
+                min = 0x10000;
+            }
+            else {
+                return -1; // continuation byte without a lead byte, or invalid lead byte
+            }
+            if (end - i < continuations) return -1;
+            for (int n = 0; n < continuations; n++) {
+                final int c = bytes[i++];
+                if ((c & 0xC0) != 0x80) return -1;
+                codePoint = codePoint << 6 | c & 0x3F;
+            }
+            if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+                return -1;
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[count++] = (char) codePoint;
+            }
+            else {
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts values to and from a fixed number of bytes, for maps that store values outside
+ * of Java objects.
+ * @author Yanlin Li
+ * @param <V> object type of values
+ */
+public interface ValueCodec<V> {
+    
+    /** Codec of Long values in 8 bytes. Null values are not supported. */
+    ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        public int width() { return Long.BYTES; }
+        public void write(ByteBuffer buffer, int offset, Long value) { buffer.putLong(offset, value); }
+        public Long read(ByteBuffer buffer, int offset) { return buffer.getLong(offset); }
+    };
+    
+    /** Codec of Integer values in 4 bytes. Null values are not supported. */
+    ValueCodec<Integer> INT = new ValueCodec<Integer>() {
+        public int width() { return Integer.BYTES; }
+        public void write(ByteBuffer buffer, int offset, Integer value) { buffer.putInt(offset, value); }
+        public Integer read(ByteBuffer buffer, int offset) { return buffer.getInt(offset); }
+    };
+    
+    /** Codec of Double values in 8 bytes. Null values are not supported. */
+    ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+        public int width() { return Double.BYTES; }
+        public void write(ByteBuffer buffer, int offset, Double value) { buffer.putDouble(offset, value); }
+        public Double read(ByteBuffer buffer, int offset) { return buffer.getDouble(offset); }
+    };
+    
+    /**
+     * @return number of bytes every value takes
+     */
+    int width();
+    
+    /**
+     * Writes a value into width() bytes of a buffer, without changing the buffer's position.
+     * @param buffer buffer to write into
+     * @param offset index in buffer of the first byte to write
+     * @param value value to write
+     */
+    void write(ByteBuffer buffer, int offset, V value);
+    
+    /**
+     * Reads a value written by write(), without changing the buffer's position.
+     * @param buffer buffer to read from
+     * @param offset index in buffer of the first byte to read
+     * @return value read
+     */
+    V read(ByteBuffer buffer, int offset);
+    
+    /**
+     * Makes a codec of String values in their UTF-8 encoding, prefixed by its length.
+     * Null values are supported.
+     * @param maxBytes maximum number of bytes of encoded values
+     * @return codec taking maxBytes + 2 bytes per value
+     */
+    static ValueCodec<String> utf8(final int maxBytes) {
+        if (maxBytes < 0 || maxBytes >= 0xFFFF)
+            throw new IllegalArgumentException("Maximum value length must be in [0, 65535).");
+        
+        return new ValueCodec<String>() {
+            private static final int NULL_LENGTH = 0xFFFF; // length stored for null values
+            
+            public int width() {
+                return maxBytes + 2;
+            }
+            
+            public void write(ByteBuffer buffer, int offset, String value) {
+                if (value == null) {
+                    buffer.putChar(offset, (char) NULL_LENGTH);
+                    return;
+                }
+                final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > maxBytes)
+                    throw new IllegalArgumentException("Value is longer than " + maxBytes + " bytes.");
+                buffer.putChar(offset, (char) bytes.length);
+                for (int i = 0; i < bytes.length; i++) buffer.put(offset + 2 + i, bytes[i]);
+            }
+            
+            public String read(ByteBuffer buffer, int offset) {
+                final int length = buffer.getChar(offset);
+                if (length == NULL_LENGTH) return null;
+                final byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) bytes[i] = buffer.get(offset + 2 + i);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}